@@ -20,18 +20,23 @@
  */
 package se.sics.kompics.timer.java;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.UUID;
+import java.util.List;
 import org.slf4j.Logger;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
 import se.sics.kompics.Negative;
+import se.sics.kompics.config.ConfigKey;
 import se.sics.kompics.timer.CancelPeriodicTimeout;
 import se.sics.kompics.timer.CancelTimeout;
 import se.sics.kompics.timer.SchedulePeriodicTimeout;
 import se.sics.kompics.timer.ScheduleTimeout;
 import se.sics.kompics.timer.Timeout;
 import se.sics.kompics.timer.Timer;
+import se.sics.kompics.util.Identifier;
 
 /**
  * The <code>JavaTimer</code> class.
@@ -42,15 +47,26 @@ import se.sics.kompics.timer.Timer;
  */
 public final class JavaTimer extends ComponentDefinition {
 
+    /**
+     * How late (in ms) a periodic timeout may fire so that it can share the
+     * ticks of an existing timer with the same period.
+     */
+    public static final String PHASE_TOLERANCE_KEY = "kompics.timer.java.phaseTolerance";
+    private static final ConfigKey<Long> PHASE_TOLERANCE = ConfigKey.of(PHASE_TOLERANCE_KEY, 10l);
+
     Negative<Timer> timer = negative(Timer.class);
     
     final Logger extLogger = this.logger;
 
     // set of active timers
-    private final HashMap<UUID, TimerSignalTask> activeTimers;
+    private final HashMap<Identifier, TimerSignalTask> activeTimers;
 
-    // set of active periodic timers
-    private final HashMap<UUID, PeriodicTimerSignalTask> activePeriodicTimers;
+    // set of active periodic timers, with the tick source each is subscribed to
+    private final HashMap<Identifier, PeriodicTickSource> activePeriodicTimers;
+
+    // shared tick sources by period
+    private final HashMap<Long, ArrayList<PeriodicTickSource>> tickSources;
+    private final long phaseTolerance;
 
     private final java.util.Timer javaTimer;
     private final JavaTimer timerComponent;
@@ -59,8 +75,10 @@ public final class JavaTimer extends ComponentDefinition {
      * Instantiates a new java timer.
      */
     public JavaTimer() {
-        this.activeTimers = new HashMap<UUID, TimerSignalTask>();
-        this.activePeriodicTimers = new HashMap<UUID, PeriodicTimerSignalTask>();
+        this.activeTimers = new HashMap<Identifier, TimerSignalTask>();
+        this.activePeriodicTimers = new HashMap<Identifier, PeriodicTickSource>();
+        this.tickSources = new HashMap<Long, ArrayList<PeriodicTickSource>>();
+        this.phaseTolerance = PHASE_TOLERANCE.get(config());
         this.javaTimer = new java.util.Timer("JavaTimer@"
                 + Integer.toHexString(this.hashCode()), true);
         timerComponent = this;
@@ -73,7 +91,7 @@ public final class JavaTimer extends ComponentDefinition {
 
     Handler<ScheduleTimeout> handleST = new Handler<ScheduleTimeout>() {
         public void handle(ScheduleTimeout event) {
-            UUID id = event.getTimeoutEvent().getTimeoutId();
+            Identifier id = event.getTimeoutEvent().getId();
 
             TimerSignalTask timeOutTask = new TimerSignalTask(timerComponent,
                     event.getTimeoutEvent(), id);
@@ -95,24 +113,40 @@ public final class JavaTimer extends ComponentDefinition {
 
     Handler<SchedulePeriodicTimeout> handleSPT = new Handler<SchedulePeriodicTimeout>() {
         public void handle(SchedulePeriodicTimeout event) {
-            UUID id = event.getTimeoutEvent().getTimeoutId();
-
-            PeriodicTimerSignalTask timeOutTask = new PeriodicTimerSignalTask(
-                    event.getTimeoutEvent(), timerComponent);
-
-            synchronized (activePeriodicTimers) {
-                activePeriodicTimers.put(id, timeOutTask);
+            Identifier id = event.getTimeoutEvent().getId();
+            long period = event.getPeriod();
+            long first = System.currentTimeMillis() + event.getDelay();
+
+            ArrayList<PeriodicTickSource> sources = tickSources.get(period);
+            if (sources == null) {
+                sources = new ArrayList<PeriodicTickSource>();
+                tickSources.put(period, sources);
+            }
+            PeriodicTickSource source = null;
+            long start = first;
+            for (PeriodicTickSource s : sources) {
+                long tick = s.nextTick(first);
+                if (tick - first <= phaseTolerance) {
+                    source = s;
+                    start = tick;
+                    break;
+                }
+            }
+            if (source == null) {
+                source = new PeriodicTickSource(period, first, timerComponent);
+                sources.add(source);
+                javaTimer.scheduleAtFixedRate(source, new Date(first), period);
             }
-            javaTimer.scheduleAtFixedRate(timeOutTask, event.getDelay(),
-                    event.getPeriod());
-            logger.debug("scheduled periodic timer({}, {}) {}", new Object[]{
-                event.getDelay(), event.getPeriod(), timeOutTask.timeout});
+            source.subscribe(event.getTimeoutEvent(), start);
+            activePeriodicTimers.put(id, source);
+            logger.debug("scheduled periodic timer({}, {}) {} ({} tick sources)", new Object[]{
+                event.getDelay(), period, event.getTimeoutEvent(), sources.size()});
         }
     };
 
     Handler<CancelTimeout> handleCT = new Handler<CancelTimeout>() {
         public void handle(CancelTimeout event) {
-            UUID id = event.getTimeoutId();
+            Identifier id = event.getId();
 
             TimerSignalTask task = null;
             synchronized (activeTimers) {
@@ -128,16 +162,21 @@ public final class JavaTimer extends ComponentDefinition {
 
     Handler<CancelPeriodicTimeout> handleCPT = new Handler<CancelPeriodicTimeout>() {
         public void handle(CancelPeriodicTimeout event) {
-            UUID id = event.getTimeoutId();
-
-            PeriodicTimerSignalTask task = null;
-            task = activePeriodicTimers.get(id);
-            if (task != null) {
-                task.cancel();
-                activePeriodicTimers.remove(id);
-                logger.debug("canceled periodic timer {}", task.timeout);
+            Identifier id = event.getId();
+
+            PeriodicTickSource source = activePeriodicTimers.remove(id);
+            if (source != null) {
+                Timeout timeout = source.unsubscribe(id);
+                if (source.isEmpty()) {
+                    source.cancel();
+                    ArrayList<PeriodicTickSource> sources = tickSources.get(source.period);
+                    sources.remove(source);
+                    if (sources.isEmpty()) {
+                        tickSources.remove(source.period);
+                    }
+                }
+                logger.debug("canceled periodic timer {}", timeout);
             }
-
         }
     };
 
@@ -150,7 +189,7 @@ public final class JavaTimer extends ComponentDefinition {
      * @param timeout
      * the timeout
      */
-    final void timeout(UUID timerId, Timeout timeout) {
+    final void timeout(Identifier timerId, Timeout timeout) {
         synchronized (activeTimers) {
             activeTimers.remove(timerId);
         }
@@ -158,7 +197,7 @@ public final class JavaTimer extends ComponentDefinition {
         trigger(timeout, timer);
     }
 
-    // called by the periodic timeout task
+    // called by the periodic tick sources
     /**
      * Periodic timeout.
      * <p>
@@ -169,6 +208,19 @@ public final class JavaTimer extends ComponentDefinition {
         logger.debug("trigger periodic timeout {}", timeout);
         trigger(timeout, timer);
     }
+
+    /**
+     * Not synchronised, so only call it from the handlers of this component.
+     *
+     * @return the tick sources currently running for {@code period}
+     */
+    List<PeriodicTickSource> tickSources(long period) {
+        ArrayList<PeriodicTickSource> sources = tickSources.get(period);
+        if (sources == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<PeriodicTickSource>(sources);
+    }
     
     @Override
     public void tearDown() {
@@ -178,9 +230,12 @@ public final class JavaTimer extends ComponentDefinition {
             }
             activeTimers.clear();
         }
-        for (PeriodicTimerSignalTask ptst : activePeriodicTimers.values()) {
-            ptst.cancel();
+        for (ArrayList<PeriodicTickSource> sources : tickSources.values()) {
+            for (PeriodicTickSource pts : sources) {
+                pts.cancel();
+            }
         }
+        tickSources.clear();
         activePeriodicTimers.clear();
         javaTimer.cancel();
     }
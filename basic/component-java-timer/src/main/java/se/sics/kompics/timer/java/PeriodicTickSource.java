@@ -0,0 +1,123 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ * 
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS)
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.java;
+
+import java.util.LinkedHashMap;
+import java.util.TimerTask;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.util.Identifier;
+
+/**
+ * A fixed rate timer task shared by all periodic timeouts with the same period
+ * and (nearly) the same phase.
+ * <p>
+ * Each run triggers a copy of every subscribed timeout, so a thousand
+ * components ticking every second cost one wakeup of the timer thread per
+ * second instead of a thousand. A timeout only joins a source whose ticks fall
+ * no earlier than its own first expiry, and is skipped until then.
+ */
+final class PeriodicTickSource extends TimerTask {
+
+	final long period;
+	private final long firstTick;
+	private final JavaTimer timerComponent;
+	// guarded by this; iterated by the timer thread, modified by handlers
+	private final LinkedHashMap<Identifier, Subscription> subscriptions = new LinkedHashMap<Identifier, Subscription>();
+
+	/**
+	 * Instantiates a new periodic tick source.
+	 * 
+	 * @param period
+	 *            the period in ms
+	 * @param firstTick
+	 *            the wall clock time of the first run in ms
+	 * @param timerComponent
+	 *            the timer component
+	 */
+	PeriodicTickSource(long period, long firstTick, JavaTimer timerComponent) {
+		this.period = period;
+		this.firstTick = firstTick;
+		this.timerComponent = timerComponent;
+	}
+
+	/**
+	 * Returns the first tick of this source at or after {@code time}.
+	 */
+	long nextTick(long time) {
+		if (time <= firstTick) {
+			return firstTick;
+		}
+		long periods = (time - firstTick + period - 1) / period;
+		return firstTick + periods * period;
+	}
+
+	synchronized void subscribe(Timeout timeout, long start) {
+		subscriptions.put(timeout.getId(), new Subscription(timeout, start));
+	}
+
+	/**
+	 * Removes the timeout with {@code id}.
+	 * 
+	 * @return the removed timeout, or {@code null}
+	 */
+	synchronized Timeout unsubscribe(Identifier id) {
+		Subscription s = subscriptions.remove(id);
+		return s == null ? null : s.timeout;
+	}
+
+	synchronized boolean isEmpty() {
+		return subscriptions.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.TimerTask#run()
+	 */
+	@Override
+	public final void run() {
+		long tick = scheduledExecutionTime();
+		synchronized (this) {
+			for (Subscription s : subscriptions.values()) {
+				if (s.start > tick) {
+					continue;
+				}
+				try {
+					timerComponent.periodicTimeout((Timeout) s.timeout.clone());
+				} catch (CloneNotSupportedException ex) {
+					// outside of JavaTimer thread...can't leak logger here
+					timerComponent.extLogger.warn("Error during PTS run", ex);
+				}
+			}
+		}
+	}
+
+	private static final class Subscription {
+
+		final Timeout timeout;
+		final long start;
+
+		Subscription(Timeout timeout, long start) {
+			this.timeout = timeout;
+			this.start = start;
+		}
+	}
+}
@@ -21,9 +21,9 @@
 package se.sics.kompics.timer.java;
 
 import java.util.TimerTask;
-import java.util.UUID;
 
 import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.util.Identifier;
 
 /**
  * The <code>TimerSignalTask</code> class.
@@ -36,7 +36,7 @@ final class TimerSignalTask extends TimerTask {
 
 	final Timeout timeout;
 
-	private final UUID timerId;
+	private final Identifier timerId;
 
 	private final JavaTimer timerComponent;
 	
@@ -51,7 +51,7 @@ final class TimerSignalTask extends TimerTask {
 	 *            the timer id
 	 */
 	TimerSignalTask(JavaTimer timerComponent, Timeout timeout,
-			UUID timerId) {
+			Identifier timerId) {
 		super();
 		this.timerComponent = timerComponent;
 		this.timeout = timeout;
@@ -0,0 +1,219 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.java;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.timer.CancelPeriodicTimeout;
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.timer.Timer;
+
+@RunWith(JUnit4.class)
+public class JavaTimerTest {
+
+    private static final long PERIOD = 200;
+    private static final long ONCE_DELAY = 50;
+    private static final long TOLERANCE = 50;
+    // A schedules the first source. B joins it if it is scheduled up to
+    // TOLERANCE - 5 ms after A, while C would only be within the tolerance of
+    // A's first tick if it was scheduled more than 80 ms after A.
+    private static final long A_DELAY = 150;
+    private static final long B_DELAY = A_DELAY - TOLERANCE + 5;
+    private static final long C_DELAY = A_DELAY - TOLERANCE - 80;
+    private static final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+    // taken by the timer's own thread after each (cancel) request it handled
+    private static final BlockingQueue<List<PeriodicTickSource>> snapshots = new LinkedBlockingQueue<List<PeriodicTickSource>>();
+
+    static class Once extends Timeout {
+
+        Once(ScheduleTimeout request) {
+            super(request);
+        }
+    }
+
+    static class Tick extends Timeout {
+
+        final String name;
+        final long delay;
+
+        Tick(SchedulePeriodicTimeout request, String name) {
+            super(request);
+            this.name = name;
+            this.delay = request.getDelay();
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        {
+            Config.Builder builder = config().modify(id());
+            builder.setValue(JavaTimer.PHASE_TOLERANCE_KEY, TOLERANCE);
+            Component timer = create(JavaTimer.class, Init.NONE, builder.finalise());
+            Component client = create(Client.class, Init.NONE);
+            connect(timer.getPositive(Timer.class), client.getNegative(Timer.class), Channel.TWO_WAY);
+            final JavaTimer javaTimer = (JavaTimer) timer.getComponent();
+            // subscribed after the timer's own handlers, so they run after them
+            javaTimer.timer.doSubscribe(new Handler<SchedulePeriodicTimeout>() {
+                @Override
+                public void handle(SchedulePeriodicTimeout event) {
+                    snapshots.offer(javaTimer.tickSources(PERIOD));
+                }
+            });
+            javaTimer.timer.doSubscribe(new Handler<CancelPeriodicTimeout>() {
+                @Override
+                public void handle(CancelPeriodicTimeout event) {
+                    snapshots.offer(javaTimer.tickSources(PERIOD));
+                }
+            });
+        }
+    }
+
+    public static class Client extends ComponentDefinition {
+
+        private final Positive<Timer> timer = requires(Timer.class);
+        private final HashMap<String, Integer> ticks = new HashMap<String, Integer>();
+        private long scheduledAt;
+        private int fired = 0;
+        private int step = 0;
+        private int bTicksWithoutA;
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+                @Override
+                public void handle(Start event) {
+                    scheduledAt = System.currentTimeMillis();
+                    ScheduleTimeout once = new ScheduleTimeout(ONCE_DELAY);
+                    once.setTimeoutEvent(new Once(once));
+                    trigger(once, timer);
+                    schedule("A", A_DELAY);
+                    schedule("B", B_DELAY);
+                    schedule("C", C_DELAY);
+                }
+            };
+            Handler<Once> onceHandler = new Handler<Once>() {
+                @Override
+                public void handle(Once event) {
+                    checkNotEarly("once", ONCE_DELAY);
+                }
+            };
+            Handler<Tick> tickHandler = new Handler<Tick>() {
+                @Override
+                public void handle(Tick event) {
+                    Integer n = ticks.get(event.name);
+                    n = (n == null) ? 1 : n + 1;
+                    ticks.put(event.name, n);
+                    if (n == 1) {
+                        checkNotEarly(event.name, event.delay);
+                    }
+                    if ((step == 0) && event.name.equals("C") && (n == 2)) {
+                        cancel(event);
+                    } else if ((step == 1) && event.name.equals("A")) {
+                        cancel(event);
+                        Integer b = ticks.get("B");
+                        bTicksWithoutA = (b == null) ? 0 : b;
+                    } else if ((step == 2) && event.name.equals("B") && (n >= bTicksWithoutA + 2)) {
+                        // the shared source kept ticking for B after A left
+                        cancel(event);
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+            subscribe(onceHandler, timer);
+            subscribe(tickHandler, timer);
+        }
+
+        private void schedule(String name, long delay) {
+            SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(delay, PERIOD);
+            spt.setTimeoutEvent(new Tick(spt, name));
+            trigger(spt, timer);
+        }
+
+        private void checkNotEarly(String name, long delay) {
+            long elapsed = System.currentTimeMillis() - scheduledAt;
+            if (elapsed < delay) {
+                events.offer(name + " fired early after " + elapsed + "ms");
+            }
+            fired++;
+            if (fired == 4) {
+                events.offer("fired");
+            }
+        }
+
+        private void cancel(Tick tick) {
+            trigger(new CancelPeriodicTimeout(tick.getId()), timer);
+            step++;
+            events.offer("cancelled " + tick.name);
+        }
+    }
+
+    private static List<PeriodicTickSource> nextSources(int count) throws InterruptedException {
+        List<PeriodicTickSource> sources = snapshots.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(sources);
+        Assert.assertEquals(count, sources.size());
+        return sources;
+    }
+
+    @Test
+    public void periodicTimeoutsShareTickSources() throws InterruptedException {
+        events.clear();
+        snapshots.clear();
+        Kompics.createAndStart(Root.class, 1);
+        try {
+            // A, then B joining it, then C on its own
+            PeriodicTickSource shared = nextSources(1).get(0);
+            Assert.assertSame(shared, nextSources(1).get(0));
+            List<PeriodicTickSource> sources = nextSources(2);
+            PeriodicTickSource own = (sources.get(0) == shared) ? sources.get(1) : sources.get(0);
+            Assert.assertEquals("fired", events.poll(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals("cancelled C", events.poll(5, TimeUnit.SECONDS));
+            Assert.assertSame(shared, nextSources(1).get(0));
+            // cancelling a TimerTask a second time returns false
+            Assert.assertFalse(own.cancel());
+
+            Assert.assertEquals("cancelled A", events.poll(5, TimeUnit.SECONDS));
+            Assert.assertSame(shared, nextSources(1).get(0));
+            Assert.assertEquals("cancelled B", events.poll(5, TimeUnit.SECONDS));
+            nextSources(0);
+            Assert.assertFalse(shared.cancel());
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+}
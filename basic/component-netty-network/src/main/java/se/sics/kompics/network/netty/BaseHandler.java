@@ -53,6 +53,9 @@ public abstract class BaseHandler<M> extends SimpleChannelInboundHandler<M> {
         component.setCustomMDC();
         try {
             component.extLog.trace("Channel connected: {} {} => {} ({})", new Object[]{protocol, ctx.channel().localAddress(), ctx.channel().remoteAddress(), ctx.channel()});
+            if (component.readsPaused) {
+                ctx.channel().config().setAutoRead(false); // consumers are backpressured
+            }
         } finally {
             MDC.clear();
         }
@@ -640,6 +640,17 @@ class ChannelManager {
         }
     }
 
+    void setAutoRead(boolean autoRead) {
+        synchronized (this) {
+            for (SocketChannel c : tcpChannels.values()) {
+                c.config().setAutoRead(autoRead);
+            }
+            for (UdtChannel c : udtChannels.values()) {
+                c.config().setAutoRead(autoRead);
+            }
+        }
+    }
+
     void clearConnections() {
         // clear these early to try avoid sending messages on them while closing
         tcpActiveChannels.clear();
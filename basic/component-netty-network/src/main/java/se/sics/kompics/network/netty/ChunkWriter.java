@@ -0,0 +1,143 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
+/**
+ * Writes {@link ChunkedMessage}s to the channel one chunk at a time.
+ * <p>
+ * Chunks of up to {@code maxInFlight} large messages are sent round-robin, and
+ * only while the channel is writable. Further large messages wait until one of
+ * those is done, since the {@link MessageDecoder} on the other side doesn't
+ * reassemble more at once. Every other write passes straight through, so small
+ * messages overtake the rest of a large transfer instead of waiting for it to
+ * finish, i.e. messages no longer arrive in the order they were sent.
+ */
+class ChunkWriter extends ChannelHandlerAdapter {
+
+    private final int chunkSize;
+    private final int maxInFlight;
+    // only accessed from the channel's event loop
+    private final ArrayDeque<ChunkedMessage> pending = new ArrayDeque<>();
+    private final ArrayDeque<ChunkedMessage> waiting = new ArrayDeque<>();
+    private int nextId = 0;
+
+    ChunkWriter(int chunkSize, int maxInFlight) {
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ChunkedMessage) {
+            ChunkedMessage cm = (ChunkedMessage) msg;
+            cm.id = nextId++;
+            cm.promise = promise;
+            waiting.add(cm);
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        writeChunks(ctx);
+        ctx.flush();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if ((!pending.isEmpty() || !waiting.isEmpty()) && ctx.channel().isWritable()) {
+            writeChunks(ctx);
+            ctx.flush();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discard(new ClosedChannelException());
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        discard(new ClosedChannelException());
+    }
+
+    private void writeChunks(ChannelHandlerContext ctx) {
+        start();
+        while (!pending.isEmpty() && ctx.channel().isWritable()) {
+            final ChunkedMessage cm = pending.poll();
+            ByteBuf chunk = cm.nextChunk(ctx.alloc(), chunkSize);
+            if (cm.isDone()) {
+                cm.content.release();
+                ctx.write(chunk, cm.promise);
+                start();
+            } else {
+                pending.add(cm);
+                ctx.write(chunk).addListener(new ChannelFutureListener() {
+
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (!future.isSuccess()) {
+                            fail(cm, future.cause());
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private void start() {
+        while ((pending.size() < maxInFlight) && !waiting.isEmpty()) {
+            pending.add(waiting.poll());
+        }
+    }
+
+    private void fail(ChunkedMessage cm, Throwable cause) {
+        if (pending.remove(cm)) {
+            cm.content.release();
+        }
+        cm.promise.tryFailure(cause);
+    }
+
+    private void discard(Throwable cause) {
+        discard(pending, cause);
+        discard(waiting, cause);
+    }
+
+    private static void discard(ArrayDeque<ChunkedMessage> messages, Throwable cause) {
+        ChunkedMessage cm;
+        while ((cm = messages.poll()) != null) {
+            cm.content.release();
+            cm.promise.tryFailure(cause);
+        }
+    }
+}
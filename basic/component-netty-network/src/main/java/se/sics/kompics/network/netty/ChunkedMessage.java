@@ -0,0 +1,86 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * An encoded message that is too large for a single frame, on its way from
+ * the {@link MessageEncoder} to the {@link ChunkWriter}.
+ * <p>
+ * Chunk frames start with {@link #MARKER} where a regular frame has its 2 byte
+ * length, which is never larger than 65532. The marker is followed by the 2
+ * byte length of the chunk, a 4 byte id of the message (unique among the
+ * messages in flight on the channel) and a flags byte. The first chunk
+ * additionally carries the 4 byte length of the whole message, so the
+ * receiver can bound its reassembly buffer before accepting any data.
+ */
+final class ChunkedMessage {
+
+    static final int MARKER = 0xFFFF;
+    static final int MAX_CHUNK_SIZE = 65532;
+    static final int FIRST = 1;
+    static final int LAST = 2;
+    static final int HEADER_SIZE = 2 + 2 + 4 + 1;
+    static final int FIRST_HEADER_SIZE = HEADER_SIZE + 4;
+
+    final ByteBuf content;
+    final int length;
+    // set by the ChunkWriter
+    int id;
+    ChannelPromise promise;
+
+    ChunkedMessage(ByteBuf content) {
+        this.content = content;
+        this.length = content.readableBytes();
+    }
+
+    /**
+     * Cuts the next chunk frame off the content.
+     * <p>
+     * The data is a retained slice of the content, not a copy.
+     *
+     * @param alloc allocator for the header
+     * @param chunkSize maximum number of content bytes in the chunk
+     * @return the frame
+     */
+    ByteBuf nextChunk(ByteBufAllocator alloc, int chunkSize) {
+        boolean first = content.readableBytes() == length;
+        int size = Math.min(chunkSize, content.readableBytes());
+        boolean last = size == content.readableBytes();
+        ByteBuf header = alloc.ioBuffer(first ? FIRST_HEADER_SIZE : HEADER_SIZE);
+        header.writeShort(MARKER);
+        header.writeShort(size);
+        header.writeInt(id);
+        header.writeByte((first ? FIRST : 0) | (last ? LAST : 0));
+        if (first) {
+            header.writeInt(length);
+        }
+        return Unpooled.wrappedBuffer(header, content.readSlice(size).retain());
+    }
+
+    boolean isDone() {
+        return !content.isReadable();
+    }
+}
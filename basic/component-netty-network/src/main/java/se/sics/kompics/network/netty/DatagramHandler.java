@@ -49,10 +49,10 @@ public class DatagramHandler extends BaseHandler<DatagramPacket> {
 
             if (o instanceof AckRequestMsg) {
                 AckRequestMsg arm = (AckRequestMsg) o;
-                ByteBuf buf = ctx.alloc().ioBuffer(NettyNetwork.INITIAL_BUFFER_SIZE, NettyNetwork.SEND_BUFFER_SIZE);
                 component.deliverMessage(arm.content, ctx.channel());
                 component.extLog.trace("Got AckRequest for {}. Replying...", arm.id);
                 NotifyAck ack = arm.reply();
+                ByteBuf buf = MessageEncoder.allocate(ctx.alloc(), Serializers.sizeHint(ack), false, NettyNetwork.SEND_BUFFER_SIZE);
                 Serializers.toBinary(ack, buf);
                 DatagramPacket pack = new DatagramPacket(buf, ack.getDestination().asSocket());
                 component.extLog.trace("Sending Datagram ACK {} ({}bytes)", ack, buf.readableBytes());
@@ -0,0 +1,133 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.udt.nio.NioUdtProvider;
+import io.netty.util.concurrent.Future;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import se.sics.kompics.config.Config;
+
+/**
+ * The event loop groups of a {@link NettyNetwork}.
+ * <p>
+ * Netty sizes every group it isn't told otherwise about at twice the number of
+ * cores, which next to the Kompics scheduler's workers badly oversubscribes the
+ * machine once a node has a handful of groups. Here the boss, worker and
+ * client groups are sized from config, with defaults that leave room for the
+ * scheduler, and the client group shares the worker loops unless it is given
+ * its own size. With {@value #SHARED_KEY} set, all instances in the JVM with
+ * the same settings use one reference counted set of groups.
+ */
+final class EventLoops {
+
+    public static final String BOSS_KEY = "netty.threads.boss";
+    public static final String WORKER_KEY = "netty.threads.worker";
+    public static final String CLIENT_KEY = "netty.threads.client";
+    public static final String SHARED_KEY = "netty.threads.shared";
+    private static final HashMap<String, EventLoops> SHARED = new HashMap<>();
+
+    final EventLoopGroup boss;
+    final EventLoopGroup worker;
+    final EventLoopGroup client;
+    final EventLoopGroup udp;
+    final NioEventLoopGroup udtBoss;
+    final NioEventLoopGroup udtWorker;
+    final NioEventLoopGroup udtClient;
+    private final String sharedKey; // null if not shared
+    private int references = 1; // guarded by SHARED
+
+    private EventLoops(String sharedKey, NettyTransport transport, int bossThreads, int workerThreads,
+            int clientThreads, int udpThreads) {
+        this.sharedKey = sharedKey;
+        this.boss = transport.group(bossThreads);
+        this.worker = transport.group(workerThreads);
+        this.client = (clientThreads > 0) ? transport.group(clientThreads) : worker;
+        this.udp = transport.group(udpThreads);
+        this.udtBoss = new NioEventLoopGroup(bossThreads, (Executor) null, NioUdtProvider.BYTE_PROVIDER);
+        this.udtWorker = new NioEventLoopGroup(workerThreads, (Executor) null, NioUdtProvider.BYTE_PROVIDER);
+        this.udtClient = (clientThreads > 0)
+                ? new NioEventLoopGroup(clientThreads, (Executor) null, NioUdtProvider.BYTE_PROVIDER)
+                : udtWorker;
+    }
+
+    /**
+     * Creates the groups for one {@link NettyNetwork} instance, or joins the
+     * shared ones if so configured. Must be paired with {@link #release()}.
+     *
+     * @param udpThreads number of UDP receive loops
+     */
+    static EventLoops acquire(Config conf, NettyTransport transport, int udpThreads) {
+        int bossThreads = Math.max(1, conf.getValueOrDefault(BOSS_KEY, 1));
+        int workerThreads = conf.getValueOrDefault(WORKER_KEY, 0);
+        if (workerThreads <= 0) {
+            workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        int clientThreads = conf.getValueOrDefault(CLIENT_KEY, 0);
+        udpThreads = Math.max(1, udpThreads);
+        if (!conf.getValueOrDefault(SHARED_KEY, false)) {
+            return new EventLoops(null, transport, bossThreads, workerThreads, clientThreads, udpThreads);
+        }
+        String key = transport + "/" + bossThreads + "/" + workerThreads + "/" + clientThreads + "/" + udpThreads;
+        synchronized (SHARED) {
+            EventLoops loops = SHARED.get(key);
+            if (loops == null) {
+                loops = new EventLoops(key, transport, bossThreads, workerThreads, clientThreads, udpThreads);
+                SHARED.put(key, loops);
+            } else {
+                loops.references++;
+            }
+            return loops;
+        }
+    }
+
+    /**
+     * Shuts the groups down once no instance uses them anymore.
+     *
+     * @return the shutdown futures, empty if the groups are still in use
+     */
+    List<Future<?>> release() {
+        if (sharedKey != null) {
+            synchronized (SHARED) {
+                references--;
+                if (references > 0) {
+                    return Collections.emptyList();
+                }
+                SHARED.remove(sharedKey);
+            }
+        }
+        Set<EventLoopGroup> groups = Collections.newSetFromMap(new IdentityHashMap<EventLoopGroup, Boolean>());
+        Collections.addAll(groups, boss, worker, client, udp, udtBoss, udtWorker, udtClient);
+        List<Future<?>> futures = new LinkedList<>();
+        for (EventLoopGroup group : groups) {
+            futures.add(group.shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
+        }
+        return futures;
+    }
+}
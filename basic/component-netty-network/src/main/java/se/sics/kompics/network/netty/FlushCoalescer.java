@@ -0,0 +1,117 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes messages to a channel without flushing each of them.
+ * <p>
+ * Every write is handed to the channel's event loop, and the first write after
+ * a flush schedules the next one behind it. All writes that reach the loop
+ * before that flush runs go out with a single syscall, while a lone message is
+ * still flushed right after it is written, so latency at low load is
+ * unaffected. A flush is forced early once the unflushed messages add up to
+ * {@code maxBytes}, and can be deferred by {@code delayMicros} to collect
+ * larger batches at the cost of latency.
+ */
+final class FlushCoalescer implements Runnable {
+
+    private static final AttributeKey<FlushCoalescer> KEY = AttributeKey.valueOf("kompics.flushCoalescer");
+
+    private final Channel channel;
+    private final int maxBytes;
+    private final long delayMicros;
+    // only accessed from the channel's event loop
+    private boolean flushPending = false;
+    private int pendingBytes = 0;
+
+    private FlushCoalescer(Channel channel, int maxBytes, long delayMicros) {
+        this.channel = channel;
+        this.maxBytes = maxBytes;
+        this.delayMicros = delayMicros;
+    }
+
+    static FlushCoalescer of(Channel c, int maxBytes, long delayMicros) {
+        Attribute<FlushCoalescer> attr = c.attr(KEY);
+        FlushCoalescer fc = attr.get();
+        if (fc == null) {
+            fc = new FlushCoalescer(c, maxBytes, delayMicros);
+            FlushCoalescer old = attr.setIfAbsent(fc);
+            if (old != null) {
+                fc = old;
+            }
+        }
+        return fc;
+    }
+
+    ChannelFuture write(final MessageWrapper msg) {
+        final ChannelPromise promise = channel.newPromise();
+        try {
+            channel.eventLoop().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    writeInLoop(msg, promise);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            promise.setFailure(ex);
+        }
+        return promise;
+    }
+
+    private void writeInLoop(MessageWrapper msg, ChannelPromise promise) {
+        channel.write(msg, promise);
+        pendingBytes += msg.size();
+        if (pendingBytes >= maxBytes) {
+            flush();
+            return;
+        }
+        if (!flushPending) {
+            flushPending = true;
+            EventLoop loop = channel.eventLoop();
+            if (delayMicros > 0) {
+                loop.schedule(this, delayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                loop.execute(this);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        flushPending = false;
+        flush();
+    }
+
+    private void flush() {
+        pendingBytes = 0;
+        channel.flush();
+    }
+}
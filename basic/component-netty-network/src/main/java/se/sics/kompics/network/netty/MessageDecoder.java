@@ -23,7 +23,10 @@ package se.sics.kompics.network.netty;
 import com.google.common.base.Optional;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import java.util.HashMap;
 import org.slf4j.MDC;
 import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.netty.serialization.Serializers;
@@ -35,18 +38,95 @@ import se.sics.kompics.network.netty.serialization.Serializers;
 public class MessageDecoder extends LengthFieldBasedFrameDecoder {
 
     private final NettyNetwork component;
+    private final int maxMessageSize;
+    private final int maxPendingChunked;
+    // messages arriving in chunks (see ChunkedMessage), by id
+    private final HashMap<Integer, ByteBuf> reassembly = new HashMap<>();
 
     public MessageDecoder(NettyNetwork component) {
+        this(component, component.maxMessageSize, component.maxPendingChunked);
+    }
+
+    MessageDecoder(NettyNetwork component, int maxMessageSize, int maxPendingChunked) {
         super(65532, 0, 2, 0, 2);
         this.component = component;
+        this.maxMessageSize = maxMessageSize;
+        this.maxPendingChunked = maxPendingChunked;
     }
 
     @Override
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (in.readableBytes() >= 2 && in.getUnsignedShort(in.readerIndex()) == ChunkedMessage.MARKER) {
+            return decodeChunk(ctx, in);
+        }
         ByteBuf frame = (ByteBuf) super.decode(ctx, in);
         if (frame == null) {
             return null;
         }
+        return decodeFrame(ctx, frame);
+    }
+
+    private Object decodeChunk(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (in.readableBytes() < ChunkedMessage.HEADER_SIZE) {
+            return null;
+        }
+        int idx = in.readerIndex();
+        int size = in.getUnsignedShort(idx + 2);
+        int id = in.getInt(idx + 4);
+        byte flags = in.getByte(idx + 8);
+        boolean first = (flags & ChunkedMessage.FIRST) != 0;
+        boolean last = (flags & ChunkedMessage.LAST) != 0;
+        int headerSize = first ? ChunkedMessage.FIRST_HEADER_SIZE : ChunkedMessage.HEADER_SIZE;
+        if (in.readableBytes() < headerSize + size) {
+            return null;
+        }
+        ByteBuf buf;
+        if (first) {
+            int length = in.getInt(idx + ChunkedMessage.HEADER_SIZE);
+            if (length < 0 || length > maxMessageSize) {
+                in.skipBytes(headerSize + size);
+                throw new TooLongFrameException("Chunked message length " + length + " exceeds " + maxMessageSize + " bytes!");
+            }
+            if (reassembly.size() >= maxPendingChunked) {
+                in.skipBytes(headerSize + size);
+                throw new TooLongFrameException("More than " + maxPendingChunked + " chunked messages in flight!");
+            }
+            if (reassembly.containsKey(id)) {
+                in.skipBytes(headerSize + size);
+                throw new CorruptedFrameException("Chunked message " + id + " started twice!");
+            }
+            buf = ctx.alloc().buffer(Math.min(length, NettyNetwork.STREAM_MAX), length);
+            reassembly.put(id, buf);
+        } else {
+            buf = reassembly.get(id);
+            if (buf == null) {
+                in.skipBytes(headerSize + size);
+                throw new CorruptedFrameException("Chunk for unknown message " + id + "!");
+            }
+        }
+        in.skipBytes(headerSize);
+        if (size > buf.maxWritableBytes()) {
+            in.skipBytes(size);
+            reassembly.remove(id).release();
+            throw new CorruptedFrameException("Chunked message " + id + " is longer than announced!");
+        }
+        buf.writeBytes(in, size);
+        if (!last) {
+            return null;
+        }
+        reassembly.remove(id);
+        try {
+            if (buf.writerIndex() != buf.maxCapacity()) {
+                throw new CorruptedFrameException("Chunked message " + id + " is shorter than announced!");
+            }
+            return decodeFrame(ctx, buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    // deserialises a complete message
+    Object decodeFrame(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
         component.setCustomMDC();
         try {
             component.extLog.trace("Trying to decode incoming {} bytes of data from {} to {}.", new Object[]{frame.readableBytes(), ctx.channel().remoteAddress(), ctx.channel().localAddress()});
@@ -69,6 +149,19 @@ public class MessageDecoder extends LengthFieldBasedFrameDecoder {
         }
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releaseReassembly();
+        super.channelInactive(ctx);
+    }
+
+    private void releaseReassembly() {
+        for (ByteBuf buf : reassembly.values()) {
+            buf.release();
+        }
+        reassembly.clear();
+    }
+
     @Override
     protected ByteBuf extractFrame(ChannelHandlerContext ctx, ByteBuf buffer, int index, int length) {
         return buffer.slice(index, length);
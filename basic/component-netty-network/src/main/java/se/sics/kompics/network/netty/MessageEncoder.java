@@ -21,12 +21,12 @@
 package se.sics.kompics.network.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import java.util.List;
 import org.slf4j.MDC;
 import se.sics.kompics.network.MessageNotify;
-import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.netty.serialization.Serializers;
 
 /**
@@ -43,6 +43,33 @@ public class MessageEncoder extends MessageToMessageEncoder<MessageWrapper> {
         this.component = component;
     }
 
+    /**
+     * Allocates a pooled buffer (direct where the platform supports it) sized
+     * for a message with the given size hint.
+     * <p>
+     * Messages whose serializer wraps a big {@code byte[]} payload get a
+     * composite buffer, so it can be appended as a component instead of
+     * copied. Everything else gets a contiguous buffer, which e.g. the
+     * {@link se.sics.kompics.network.netty.serialization.ProtobufSerializer}
+     * encodes into much faster.
+     *
+     * @param alloc the channel's allocator
+     * @param sizeHint the result of {@link Serializers#sizeHint(Object)} plus
+     * any framing, or a negative value if unknown
+     * @param wrapsArray the result of {@link Serializers#wrapsArray(Object)}
+     * @param maxCapacity the largest buffer that is allowed to be handed out
+     * @return a fresh buffer
+     */
+    static ByteBuf allocate(ByteBufAllocator alloc, int sizeHint, boolean wrapsArray, int maxCapacity) {
+        if (wrapsArray) {
+            return alloc.compositeBuffer();
+        }
+        if (sizeHint < 0) {
+            return alloc.ioBuffer(Math.min(NettyNetwork.INITIAL_BUFFER_SIZE, maxCapacity), maxCapacity);
+        }
+        return alloc.ioBuffer(Math.min(sizeHint, maxCapacity), maxCapacity);
+    }
+
 //    @Override
 //    protected void encode(ChannelHandlerContext ctx, Message msg, ByteBuf out) throws Exception {
 //        NettyNetwork.LOG.trace("Trying to encode outgoing data to {} from {}.", ctx.channel().remoteAddress(), ctx.channel().localAddress());
@@ -65,22 +92,26 @@ public class MessageEncoder extends MessageToMessageEncoder<MessageWrapper> {
         try {
 
             long startTS = System.nanoTime(); // start measuring here to avoid overestimating the throuhgput
-            Msg msg = msgw.msg;
-            ByteBuf out = ctx.alloc().buffer(NettyNetwork.INITIAL_BUFFER_SIZE, NettyNetwork.SEND_BUFFER_SIZE);
+            Object payload = msgw.msg;
+            if (msgw.notify.isPresent() && msgw.notify.get().notifyOfDelivery) {
+                MessageNotify.Req msgr = msgw.notify.get();
+                component.extLog.trace("Serialising message with AckRequest: {}", msgr.getMsgId());
+                payload = new AckRequestMsg(msgw.msg, msgr.getMsgId());
+            }
+            int hint = Serializers.sizeHint(payload);
+            if (hint >= 0) {
+                hint += LENGTH_PLACEHOLDER.length;
+            }
+            int maxCapacity = component.chunking ? component.maxMessageSize + LENGTH_PLACEHOLDER.length : NettyNetwork.SEND_BUFFER_SIZE;
+            ByteBuf out = allocate(ctx.alloc(), hint, Serializers.wrapsArray(payload), maxCapacity);
             component.extLog.trace("Trying to encode outgoing data to {} from {}: {}.", ctx.channel().remoteAddress(), ctx.channel().localAddress(), msgw.msg.getClass());
             int startIdx = out.writerIndex();
             out.writeBytes(LENGTH_PLACEHOLDER);
 
             try {
-                if (msgw.notify.isPresent() && msgw.notify.get().notifyOfDelivery) {
-                    MessageNotify.Req msgr = msgw.notify.get();
-                    component.extLog.trace("Serialising message with AckRequest: {}", msgr.getMsgId());
-                    AckRequestMsg arm = new AckRequestMsg(msgw.msg, msgr.getMsgId());
-                    Serializers.toBinary(arm, out);
-                } else {
-                    Serializers.toBinary(msgw.msg, out);
-                }
+                Serializers.toBinary(payload, out);
             } catch (Throwable e) {
+                out.release();
                 component.extLog.warn("There was a problem serialising {}: \n --> {}", msgw, e);
                 e.printStackTrace(System.err);
                 throw e;
@@ -88,7 +119,19 @@ public class MessageEncoder extends MessageToMessageEncoder<MessageWrapper> {
 
             int endIdx = out.writerIndex();
             int diff = endIdx - startIdx - LENGTH_PLACEHOLDER.length;
+            if (component.chunking && (diff > component.chunkSize)) {
+                if (diff > component.maxMessageSize) {
+                    out.release();
+                    throw new Exception("Can't encode message longer than " + component.maxMessageSize + " bytes!");
+                }
+                // leave the framing to the ChunkWriter
+                out.skipBytes(LENGTH_PLACEHOLDER.length);
+                msgw.injectSize(diff, startTS);
+                outL.add(new ChunkedMessage(out));
+                return;
+            }
             if (diff > 65532) { //2^16 - 2bytes for the length header (snappy wants no more than 65536 bytes uncompressed)
+                out.release();
                 throw new Exception("Can't encode message longer than 65532 bytes!");
             }
             out.setShort(startIdx, diff);
@@ -103,7 +103,7 @@ class MessageQueueManager {
             return;
         }
         component.extLog.debug("Sending message {}. Local {}, Remote {}", new Object[]{msg, c.localAddress(), c.remoteAddress()});
-        ChannelFuture cf = c.writeAndFlush(msg);
+        ChannelFuture cf = write(c, msg);
         if (msg.notify.isPresent()) {
             cf.addListener(new NotifyListener(msg.notify.get()));
         }
@@ -129,12 +129,19 @@ class MessageQueueManager {
             return;
         }
         component.extLog.debug("Sending message {}. Local {}, Remote {}", new Object[]{msg, c.localAddress(), c.remoteAddress()});
-        ChannelFuture cf = c.writeAndFlush(msg);
+        ChannelFuture cf = write(c, msg);
         if (msg.notify.isPresent()) {
             cf.addListener(new NotifyListener(msg.notify.get()));
         }
     }
 
+    private ChannelFuture write(Channel c, MessageWrapper msg) {
+        if (component.flushCoalescing) {
+            return FlushCoalescer.of(c, component.flushMaxBytes, component.flushDelayMicros).write(msg);
+        }
+        return c.writeAndFlush(msg);
+    }
+
     void retry(SendDelayed event) {
         component.extLog.info("Trying to send delayed messages: {} on {}", event.peer, event.protocol);
         Address peer = event.peer;
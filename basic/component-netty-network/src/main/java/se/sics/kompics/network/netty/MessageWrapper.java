@@ -32,6 +32,7 @@ class MessageWrapper {
 
     public final Msg msg;
     public final Optional<MessageNotify.Req> notify;
+    private int size = 0;
     
     MessageWrapper(MessageNotify.Req notify) {
         this.msg = notify.msg;
@@ -44,11 +45,19 @@ class MessageWrapper {
     }
 
     void injectSize(int diff, long startTS) {
+        size = diff;
         if (notify.isPresent()) {
             notify.get().injectSize(diff, startTS);
         }
     }
     
+    /**
+     * @return the serialised size in bytes, or 0 if not encoded yet
+     */
+    int size() {
+        return size;
+    }
+    
     @Override
     public String toString() {
         if (notify.isPresent()) {
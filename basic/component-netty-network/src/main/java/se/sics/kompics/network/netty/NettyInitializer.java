@@ -62,6 +62,9 @@ public class NettyInitializer<C extends Channel> extends ChannelInitializer<C> {
         //pipeline.addBefore("decoder", "decompressor", new SnappyFramedDecoder());
         // OUT
         pipeline.addLast("compressor", new SnappyFrameEncoder());
+        if (handler.component.chunking) {
+            pipeline.addLast("chunker", new ChunkWriter(handler.component.chunkSize, handler.component.maxPendingChunked));
+        }
         pipeline.addLast("encoder", new MessageEncoder(handler.component));
         //pipeline.addAfter("encoder", "encoderLogger", new LoggingHandler("encoderLogger"));
         //pipeline.addAfter("encoderLogger", "framer", new LengthFieldPrepender(2));
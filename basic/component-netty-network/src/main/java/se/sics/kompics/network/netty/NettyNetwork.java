@@ -28,28 +28,29 @@ import io.netty.channel.AdaptiveRecvByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.channel.udt.UdtChannel;
 import io.netty.channel.udt.UdtChannelOption;
 import io.netty.channel.udt.nio.NioUdtProvider;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.MDC;
+import se.sics.kompics.Backpressure;
+import se.sics.kompics.Component;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
 import se.sics.kompics.KompicsEvent;
@@ -93,6 +94,8 @@ public class NettyNetwork extends ComponentDefinition {
     final ChannelManager channels = new ChannelManager(this);
     final MessageQueueManager messages = new MessageQueueManager(this);
     private DatagramChannel udpChannel;
+    // all channels bound to the UDP port, udpChannel among them
+    private final List<DatagramChannel> udpChannels = new ArrayList<>();
     // Info
     final NettyAddress self;
     private final int boundPort;
@@ -105,6 +108,22 @@ public class NettyNetwork extends ComponentDefinition {
     private final long monitoringInterval = 1000; //1s
     final int udtBufferSizes;
     final int udtMSS;
+    final NettyTransport transport;
+    private final int udpReceivers;
+    private final EventLoops loops;
+    // flush coalescing for stream transports
+    final boolean flushCoalescing;
+    final int flushMaxBytes;
+    final long flushDelayMicros;
+    // fragmentation of large messages on stream transports
+    final boolean chunking;
+    final int chunkSize;
+    final int maxMessageSize;
+    final int maxPendingChunked;
+    private final List<ScheduledFuture<?>> udtMonitors = new LinkedList<>();
+    // Backpressure, consumers are released again when disconnected or destroyed while engaged
+    private final Set<Component> backpressuredConsumers = new HashSet<>();
+    volatile boolean readsPaused = false;
     // LOGGING
     public static final String MDC_KEY_PORT = "knet-port";
     public static final String MDC_KEY_IF = "knet-if";
@@ -151,6 +170,25 @@ public class NettyNetwork extends ComponentDefinition {
         udtBufferSizes = config().getValueOrDefault("netty.udt.buffer", -1);
         udtMSS = config().getValueOrDefault("netty.udt.mss", -1);
 
+        transport = NettyTransport.fromConfig(config(), logger);
+        int receivers = config().getValueOrDefault("netty.udp.receivers", 1);
+        if (receivers > 1 && !transport.supportsReusePort()) {
+            logger.warn("{} UDP receivers requested, but SO_REUSEPORT needs the epoll transport. Using 1.", receivers);
+            receivers = 1;
+        }
+        udpReceivers = Math.max(1, receivers);
+        logger.info("Using {} transport for TCP and UDP", transport);
+        loops = EventLoops.acquire(config(), transport, udpReceivers);
+
+        flushCoalescing = config().getValueOrDefault("netty.flush.coalesce", true);
+        flushMaxBytes = config().getValueOrDefault("netty.flush.maxBytes", STREAM_MAX);
+        flushDelayMicros = config().getValueOrDefault("netty.flush.delay", 0l);
+        chunking = config().getValueOrDefault("netty.chunking.enabled", false);
+        int chunk = config().getValueOrDefault("netty.chunking.size", 16384);
+        chunkSize = Math.max(1, Math.min(chunk, ChunkedMessage.MAX_CHUNK_SIZE));
+        maxMessageSize = config().getValueOrDefault("netty.chunking.maxMessageSize", 16777216);
+        maxPendingChunked = config().getValueOrDefault("netty.chunking.maxPending", 16);
+
 //        if (!self.equals(init.self)) {
 //            LOG.error("Do NOT bind Netty to a virtual address!");
 //            System.exit(1);
@@ -164,14 +202,12 @@ public class NettyNetwork extends ComponentDefinition {
 
         // Prepare Bootstraps
         bootstrapTCPClient = new Bootstrap();
-        bootstrapTCPClient.group(new NioEventLoopGroup()).channel(NioSocketChannel.class)
+        bootstrapTCPClient.group(loops.client).channel(transport.socketChannel())
                 .handler(new NettyInitializer<SocketChannel>(new StreamHandler(this, Transport.TCP)))
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
                 .option(ChannelOption.SO_REUSEADDR, true);
         bootstrapUDTClient = new Bootstrap();
-        NioEventLoopGroup groupUDT = new NioEventLoopGroup(0, (Executor) null,
-                NioUdtProvider.BYTE_PROVIDER);
-        bootstrapUDTClient.group(groupUDT).channelFactory(NioUdtProvider.BYTE_CONNECTOR)
+        bootstrapUDTClient.group(loops.udtClient).channelFactory(NioUdtProvider.BYTE_CONNECTOR)
                 .handler(new NettyInitializer<SocketChannel>(new StreamHandler(this, Transport.UDT)))
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
                 .option(ChannelOption.SO_REUSEADDR, true);
@@ -181,7 +217,7 @@ public class NettyNetwork extends ComponentDefinition {
         }
         if (udtMonitoring) {
             logger.info("Activating UDT monitoring (client).");
-            bootstrapUDTClient.group().scheduleAtFixedRate(new Runnable() {
+            udtMonitors.add(bootstrapUDTClient.group().scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -193,13 +229,14 @@ public class NettyNetwork extends ComponentDefinition {
                     }
                 }
             }, monitoringInterval, monitoringInterval, TimeUnit.MILLISECONDS
-            );
+            ));
         }
 
         subscribe(startHandler, control);
         subscribe(stopHandler, control);
         subscribe(msgHandler, net);
         subscribe(notifyHandler, net);
+        subscribe(backpressureHandler, control);
         subscribe(delayedHandler, loopback);
         subscribe(dropHandler, loopback);
     }
@@ -263,6 +300,32 @@ public class NettyNetwork extends ComponentDefinition {
         }
     };
 
+    Handler<Backpressure> backpressureHandler = new Handler<Backpressure>() {
+
+        @Override
+        public void handle(Backpressure event) {
+            if (event.engaged) {
+                backpressuredConsumers.add(event.component);
+            } else {
+                backpressuredConsumers.remove(event.component);
+            }
+            boolean pause = !backpressuredConsumers.isEmpty();
+            if (pause != readsPaused) {
+                logger.debug("{} reading from channels ({} consumers over their high watermark)",
+                        pause ? "Pausing" : "Resuming", backpressuredConsumers.size());
+                readsPaused = pause;
+                setAutoRead(!pause);
+            }
+        }
+    };
+
+    private void setAutoRead(boolean autoRead) {
+        channels.setAutoRead(autoRead);
+        for (DatagramChannel c : udpChannels) {
+            c.config().setAutoRead(autoRead);
+        }
+    }
+
     Handler<SendDelayed> delayedHandler = new Handler<SendDelayed>() {
 
         @Override
@@ -294,9 +357,13 @@ public class NettyNetwork extends ComponentDefinition {
 
     private boolean bindUdpPort(final InetAddress addr, final int port) {
 
-        EventLoopGroup group = new NioEventLoopGroup();
+        int receivers = udpReceivers;
         bootstrapUDP = new Bootstrap();
-        bootstrapUDP.group(group).channel(NioDatagramChannel.class)
+        if (receivers > 1) { // only ever with a transport that supportsReusePort()
+            bootstrapUDP.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        // one event loop per receiving channel, so datagrams are spread across cores
+        bootstrapUDP.group(loops.udp).channel(transport.datagramChannel())
                 .handler(new DatagramHandler(this, Transport.UDP));
 
         bootstrapUDP.option(ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(1500, 1500, RECV_BUFFER_SIZE));
@@ -310,10 +377,13 @@ public class NettyNetwork extends ComponentDefinition {
 
         try {
             InetSocketAddress iAddr = new InetSocketAddress(addr, port);
-            udpChannel = (DatagramChannel) bootstrapUDP.bind(iAddr).sync().channel();
+            for (int i = 0; i < receivers; i++) {
+                udpChannels.add((DatagramChannel) bootstrapUDP.bind(iAddr).sync().channel());
+            }
+            udpChannel = udpChannels.get(0);
 
             //addLocalSocket(iAddr, c);
-            logger.info("Successfully bound to ip:port {}:{}", addr, port);
+            logger.info("Successfully bound to ip:port {}:{} with {} UDP receiver(s)", new Object[]{addr, port, receivers});
         } catch (InterruptedException e) {
             logger.error("Problem when trying to bind to {}:{}", addr.getHostAddress(), port);
             return false;
@@ -324,11 +394,9 @@ public class NettyNetwork extends ComponentDefinition {
 
     private boolean bindTcpPort(final InetAddress addr, int port) {
 
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
         TCPServerHandler handler = new TCPServerHandler(this);
         bootstrapTCP = new ServerBootstrap();
-        bootstrapTCP.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+        bootstrapTCP.group(loops.boss, loops.worker).channel(transport.serverSocketChannel())
                 .childHandler((new NettyInitializer<SocketChannel>(handler)))
                 .option(ChannelOption.SO_REUSEADDR, true);
 
@@ -346,13 +414,9 @@ public class NettyNetwork extends ComponentDefinition {
     }
 
     private boolean bindUdtPort(final InetAddress addr) {
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup(0, (Executor) null,
-                NioUdtProvider.BYTE_PROVIDER);
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup(0, (Executor) null,
-                NioUdtProvider.BYTE_PROVIDER);
         UDTServerHandler handler = new UDTServerHandler(this);
         bootstrapUDT = new ServerBootstrap();
-        bootstrapUDT.group(bossGroup, workerGroup).channelFactory(NioUdtProvider.BYTE_ACCEPTOR)
+        bootstrapUDT.group(loops.udtBoss, loops.udtWorker).channelFactory(NioUdtProvider.BYTE_ACCEPTOR)
                 .childHandler(new NettyInitializer<UdtChannel>(handler))
                 .option(ChannelOption.SO_REUSEADDR, true);
         if (this.udtBufferSizes > 0) {
@@ -363,7 +427,7 @@ public class NettyNetwork extends ComponentDefinition {
         }
         if (udtMonitoring) {
             logger.info("Activating UDT monitoring (server).");
-            bootstrapUDT.childGroup().scheduleAtFixedRate(new Runnable() {
+            udtMonitors.add(bootstrapUDT.childGroup().scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -374,7 +438,7 @@ public class NettyNetwork extends ComponentDefinition {
                         MDC.clear();
                     }
                 }
-            }, monitoringInterval, monitoringInterval, TimeUnit.MILLISECONDS);
+            }, monitoringInterval, monitoringInterval, TimeUnit.MILLISECONDS));
         }
         try {
             Channel c = bootstrapUDT.bind(addr, boundUDTPort).sync().channel();
@@ -431,21 +495,22 @@ public class NettyNetwork extends ComponentDefinition {
     }
 
     ChannelFuture sendUdpMessage(MessageWrapper msgw) {
-        ByteBuf buf = udpChannel.alloc().ioBuffer(INITIAL_BUFFER_SIZE, SEND_BUFFER_SIZE);
+        Object payload = msgw.msg;
+        if (msgw.notify.isPresent() && msgw.notify.get().notifyOfDelivery) {
+            MessageNotify.Req msgr = msgw.notify.get();
+            payload = new AckRequestMsg(msgw.msg, msgr.getMsgId());
+        }
+        int hint = Serializers.sizeHint(payload);
+        ByteBuf buf = udpChannel.alloc().ioBuffer(hint < 0 ? INITIAL_BUFFER_SIZE : Math.min(hint, SEND_BUFFER_SIZE), SEND_BUFFER_SIZE);
         try {
-            if (msgw.notify.isPresent() && msgw.notify.get().notifyOfDelivery) {
-                MessageNotify.Req msgr = msgw.notify.get();
-                AckRequestMsg arm = new AckRequestMsg(msgw.msg, msgr.getMsgId());
-                Serializers.toBinary(arm, buf);
-            } else {
-                Serializers.toBinary(msgw.msg, buf);
-            }
+            Serializers.toBinary(payload, buf);
             msgw.injectSize(buf.readableBytes(), System.nanoTime());
             DatagramPacket pack = new DatagramPacket(buf, msgw.msg.getDestination().asSocket());
             logger.debug("Sending Datagram message {} ({}bytes)", msgw.msg, buf.readableBytes());
             return udpChannel.writeAndFlush(pack);
         } catch (Exception e) { // serialization might fail horribly with size bounded buff
             logger.warn("Could not send Datagram message {}, error was: {}", msgw, e);
+            buf.release();
             return null;
         }
     }
@@ -457,10 +522,12 @@ public class NettyNetwork extends ComponentDefinition {
         channels.clearConnections();
 
         if (bindUDP) {
-            try {
-                udpChannel.close().syncUninterruptibly();
-            } catch (Exception ex) {
-                logger.warn("Error during Netty shutdown. Messages might have been lost! \n {}", ex);
+            for (DatagramChannel c : udpChannels) {
+                try {
+                    c.close().syncUninterruptibly();
+                } catch (Exception ex) {
+                    logger.warn("Error during Netty shutdown. Messages might have been lost! \n {}", ex);
+                }
             }
         }
 
@@ -478,21 +545,13 @@ public class NettyNetwork extends ComponentDefinition {
         clearConnections();
 
         logger.info("Shutting down handler groups...");
-        List<Future> gfutures = new LinkedList<>();
-        gfutures.add(bootstrapUDTClient.group().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-        if (bindTCP) {
-            gfutures.add(bootstrapTCP.childGroup().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-            gfutures.add(bootstrapTCP.group().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-        }
-        gfutures.add(bootstrapTCPClient.group().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-        if (bindUDP) {
-            gfutures.add(bootstrapUDP.group().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-        }
-        if (bindUDT) {
-            gfutures.add(bootstrapUDT.childGroup().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
-            gfutures.add(bootstrapUDT.group().shutdownGracefully(1, 5, TimeUnit.MILLISECONDS));
+        // the groups may be shared, so stop what this instance scheduled on them
+        for (ScheduledFuture<?> monitor : udtMonitors) {
+            monitor.cancel(false);
         }
-        for (Future f : gfutures) {
+        udtMonitors.clear();
+        List<Future<?>> gfutures = loops.release();
+        for (Future<?> f : gfutures) {
             f.syncUninterruptibly();
         }
         //bootstrapUDTClient = null;
@@ -29,13 +29,14 @@ import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.Transport;
 import se.sics.kompics.network.netty.serialization.DatagramSerializer;
 import se.sics.kompics.network.netty.serialization.Serializers;
+import se.sics.kompics.network.netty.serialization.SizeHintSerializer;
 import se.sics.kompics.network.netty.serialization.SpecialSerializers;
 
 /**
  *
  * @author lkroll
  */
-public class NettySerializer implements DatagramSerializer {
+public class NettySerializer implements DatagramSerializer, SizeHintSerializer {
 
     private static final byte DIS = 0;
     private static final byte ACK = 1;
@@ -49,6 +50,27 @@ public class NettySerializer implements DatagramSerializer {
         return 5;
     }
 
+    @Override
+    public int sizeHint(Object o) {
+        final int header = 1 + SpecialSerializers.MessageSerializationUtil.HEADER_SIZE;
+        if (o instanceof DisambiguateConnection) {
+            return header + 2;
+        }
+        if (o instanceof NotifyAck) {
+            return header + 16;
+        }
+        if (o instanceof AckRequestMsg) {
+            int content = Serializers.sizeHint(((AckRequestMsg) o).content);
+            return (content < 0) ? -1 : 1 + 16 + content;
+        }
+        return header;
+    }
+
+    @Override
+    public boolean wrapsArray(Object o) {
+        return (o instanceof AckRequestMsg) && Serializers.wrapsArray(((AckRequestMsg) o).content);
+    }
+
     @Override
     public void toBinary(Object o, ByteBuf buf) {
         if (o instanceof DisambiguateConnection) {
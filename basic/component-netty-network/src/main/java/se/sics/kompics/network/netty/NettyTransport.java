@@ -0,0 +1,141 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import se.sics.kompics.config.Config;
+
+/**
+ * The socket implementation used for TCP and UDP, selected with
+ * {@value #TRANSPORT_KEY}.
+ * <p>
+ * {@code nio} (the default) works everywhere. {@code epoll} uses Netty's native
+ * Linux transport, which saves syscalls and supports {@code SO_REUSEPORT}, and
+ * falls back to {@code nio} if the native library can't be loaded. UDT always
+ * goes through its own NIO provider.
+ */
+enum NettyTransport {
+
+    NIO {
+
+        @Override
+        EventLoopGroup group(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends SocketChannel> socketChannel() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverSocketChannel() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends DatagramChannel> datagramChannel() {
+            return NioDatagramChannel.class;
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return false;
+        }
+    },
+    EPOLL {
+
+        @Override
+        EventLoopGroup group(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends SocketChannel> socketChannel() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverSocketChannel() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends DatagramChannel> datagramChannel() {
+            return EpollDatagramChannel.class;
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return true;
+        }
+    };
+
+    public static final String TRANSPORT_KEY = "netty.transport";
+
+    /**
+     * @param threads number of event loops, or 0 for Netty's default
+     */
+    abstract EventLoopGroup group(int threads);
+
+    abstract Class<? extends SocketChannel> socketChannel();
+
+    abstract Class<? extends ServerSocketChannel> serverSocketChannel();
+
+    abstract Class<? extends DatagramChannel> datagramChannel();
+
+    /**
+     * Whether several channels may bind the same port with
+     * {@link EpollChannelOption#SO_REUSEPORT}.
+     */
+    abstract boolean supportsReusePort();
+
+    static NettyTransport fromConfig(Config conf, Logger logger) {
+        String name = conf.getValueOrDefault(TRANSPORT_KEY, "nio");
+        switch (name.toLowerCase()) {
+            case "nio":
+                return NIO;
+            case "epoll":
+                if (Epoll.isAvailable()) {
+                    return EPOLL;
+                }
+                logger.warn("Native epoll transport is not available, falling back to NIO. Cause: {}",
+                        Epoll.unavailabilityCause());
+                return NIO;
+            default:
+                throw new IllegalArgumentException("Unknown " + TRANSPORT_KEY + ": " + name);
+        }
+    }
+}
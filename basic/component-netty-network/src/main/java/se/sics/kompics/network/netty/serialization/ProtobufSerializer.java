@@ -21,16 +21,19 @@
 package se.sics.kompics.network.netty.serialization;
 
 import com.google.common.base.Optional;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import java.io.IOException;
 
 /**
  *
  * @author Lars Kroll <lkroll@kth.se>
  */
-public class ProtobufSerializer implements Serializer {
+public class ProtobufSerializer implements SizeHintSerializer {
     
     private static final boolean HAS_PARSER;
     
@@ -68,16 +71,47 @@ public class ProtobufSerializer implements Serializer {
     }
     
     @Override
-    public void toBinary(Object msg, ByteBuf buf) {
+    public int sizeHint(Object msg) {
         if (msg instanceof MessageLite) {
-            byte[] bytes = ((MessageLite) msg).toByteArray();
-            buf.writeBytes(bytes);
-            return;
+            return ((MessageLite) msg).getSerializedSize(); // memoized, so toBinary doesn't pay for it again
         }
-        if (msg instanceof MessageLite.Builder) {
-            byte[] bytes = ((MessageLite.Builder) msg).build().toByteArray();
-            buf.writeBytes(bytes);
-            return;
+        return -1;
+    }
+    
+    @Override
+    public boolean wrapsArray(Object msg) {
+        return false; // copies into the buffer in any case
+    }
+    
+    @Override
+    public void toBinary(Object msg, ByteBuf buf) {
+        try {
+            if (msg instanceof MessageLite) {
+                writeTo((MessageLite) msg, buf);
+                return;
+            }
+            if (msg instanceof MessageLite.Builder) {
+                writeTo(((MessageLite.Builder) msg).build(), buf);
+                return;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("ProtobufSerializer: Couldn't serialize object.", ex);
+        }
+    }
+    
+    private static void writeTo(MessageLite msg, ByteBuf buf) throws IOException {
+        final int size = msg.getSerializedSize();
+        buf.ensureWritable(size);
+        if (buf.hasArray()) {
+            // encode right into the backing array
+            final int writerIndex = buf.writerIndex();
+            CodedOutputStream out = CodedOutputStream.newInstance(buf.array(), buf.arrayOffset() + writerIndex, size);
+            msg.writeTo(out);
+            out.checkNoSpaceLeft();
+            buf.writerIndex(writerIndex + size);
+        } else {
+            // protobuf 2.x can't target a ByteBuffer, so stream through its small internal block buffer
+            msg.writeTo(new ByteBufOutputStream(buf));
         }
     }
     
@@ -173,15 +173,53 @@ public abstract class Serializers {
             LOG.error("Object {} of type {} has no serialization rule!", o, o.getClass());
             return;
         }
-        Integer sId = s.identifier();
-        byte[] unserializedId = Ints.toByteArray(sId);
-        LOG.trace("ID: {} ({}, {})", new Object[]{unserializedId, BYTES - idSerializationBytes.getBytes(), BYTES});
-        byte[] serializedId = Arrays.copyOfRange(Ints.toByteArray(sId), BYTES - idSerializationBytes.getBytes(), BYTES);
-        buf.writeBytes(serializedId);
-        LOG.debug("Using serializer {} for object {} (sID : {}) .", new Object[]{s, o, serializedId});
+        int sId = s.identifier();
+        // write the lowest idSerializationBytes bytes of the id, big-endian, without a temporary array
+        for (int i = idSerializationBytes.getBytes() - 1; i >= 0; i--) {
+            buf.writeByte(sId >>> (8 * i));
+        }
+        LOG.debug("Using serializer {} for object {} (sID : {}) .", new Object[]{s, o, sId});
         s.toBinary(o, buf);
     }
 
+    /**
+     * Estimates the number of bytes {@link #toBinary(Object, ByteBuf)} will
+     * write for {@code o}, including the serializer id.
+     *
+     * @param o the object to be serialised
+     * @return the estimate, or -1 if the responsible serializer is not a
+     * {@link SizeHintSerializer} or can't tell
+     */
+    public static int sizeHint(Object o) {
+        Serializer s;
+        if (o == null) {
+            s = nullS;
+        } else {
+            s = lookupSerializer(o.getClass());
+        }
+        if (s instanceof SizeHintSerializer) {
+            int hint = ((SizeHintSerializer) s).sizeHint(o);
+            if (hint >= 0) {
+                return idSerializationBytes.getBytes() + hint;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param o the object to be serialised
+     * @return true if the {@link SizeHintSerializer} responsible for
+     * {@code o} appends a wrapped {@code byte[]} of it to a
+     * {@link io.netty.buffer.CompositeByteBuf} instead of copying it
+     */
+    public static boolean wrapsArray(Object o) {
+        if (o == null) {
+            return false;
+        }
+        Serializer s = lookupSerializer(o.getClass());
+        return (s instanceof SizeHintSerializer) && ((SizeHintSerializer) s).wrapsArray(o);
+    }
+
     // this SHOULD be an Optional<Class> but java6 is moronic and doesn't read generics
     // from method declarations correctly. This is fixed in java8.
     public static Object fromBinary(ByteBuf buf, Optional<Object> hint) {
@@ -0,0 +1,49 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty.serialization;
+
+/**
+ * A {@link Serializer} that can tell in advance roughly how many bytes an
+ * object will take, so the encoder can allocate a buffer of the right size
+ * up front instead of growing it while serialising.
+ * <p>
+ * Implementing this is optional; serializers without it fall back to the
+ * default initial buffer size.
+ */
+public interface SizeHintSerializer extends Serializer {
+
+    /**
+     * @param o the object that is about to be passed to
+     * {@link #toBinary(Object, io.netty.buffer.ByteBuf)}
+     * @return the expected number of bytes written for {@code o}, or -1 if
+     * unknown
+     */
+    public int sizeHint(Object o);
+
+    /**
+     * @param o the object that is about to be passed to
+     * {@link #toBinary(Object, io.netty.buffer.ByteBuf)}
+     * @return true if a {@code byte[]} of {@code o} would be appended to an
+     * {@link io.netty.buffer.CompositeByteBuf} as a wrapped component instead
+     * of being copied, so the encoder should allocate one
+     */
+    public boolean wrapsArray(Object o);
+}
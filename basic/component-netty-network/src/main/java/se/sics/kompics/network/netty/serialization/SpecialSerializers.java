@@ -24,6 +24,8 @@ import com.google.common.base.Optional;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.UnsignedBytes;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -41,13 +43,23 @@ import se.sics.kompics.network.netty.NettyAddress;
  */
 public abstract class SpecialSerializers {
 
-    public static class NullSerializer implements Serializer {
+    public static class NullSerializer implements SizeHintSerializer {
 
         @Override
         public int identifier() {
             return 0;
         }
 
+        @Override
+        public int sizeHint(Object o) {
+            return 0;
+        }
+
+        @Override
+        public boolean wrapsArray(Object o) {
+            return false;
+        }
+
         @Override
         public void toBinary(Object o, ByteBuf buf) {
             // simply ignore input
@@ -60,16 +72,43 @@ public abstract class SpecialSerializers {
 
     }
 
-    public static class ByteSerializer implements Serializer {
+    public static class ByteSerializer implements SizeHintSerializer {
+
+        /**
+         * Arrays of at least this many bytes are appended to a
+         * {@link CompositeByteBuf} as a wrapped component instead of being
+         * copied. The array must not be modified after it was handed to the
+         * network, since it is read only when the buffer is flushed.
+         */
+        public static final int WRAP_THRESHOLD = 1024;
 
         @Override
         public int identifier() {
             return 1;
         }
 
+        @Override
+        public int sizeHint(Object o) {
+            return ((byte[]) o).length + 4;
+        }
+
+        @Override
+        public boolean wrapsArray(Object o) {
+            return ((byte[]) o).length >= WRAP_THRESHOLD;
+        }
+
         @Override
         public void toBinary(Object o, ByteBuf buf) {
             byte[] bytes = (byte[]) o;
+            if ((bytes.length >= WRAP_THRESHOLD) && (buf instanceof CompositeByteBuf)) {
+                CompositeByteBuf cbuf = (CompositeByteBuf) buf;
+                cbuf.writeInt(bytes.length);
+                // drop unused capacity, so the new component directly follows the written bytes
+                cbuf.capacity(cbuf.writerIndex());
+                cbuf.addComponent(Unpooled.wrappedBuffer(bytes));
+                cbuf.writerIndex(cbuf.writerIndex() + bytes.length);
+                return;
+            }
             int code = buf.ensureWritable(bytes.length + 4, true);
             if (code == 1 || code == 3) {
                 Serializers.LOG.error("ByteSerializer: Not enough space left on buffer to serialize " + bytes.length + " bytes.");
@@ -89,10 +128,11 @@ public abstract class SpecialSerializers {
 
     }
 
-    public static class AddressSerializer implements Serializer {
+    public static class AddressSerializer implements SizeHintSerializer {
 
         public static final int BYTE_KEY_SIZE = 255;
         public static final int INT_BYTE_SIZE = Integer.SIZE / 8;
+        public static final int SOCKET_SIZE = 6; // IPv4 + 2 byte port
         public static final AddressSerializer INSTANCE = new AddressSerializer();
 
         @Override
@@ -100,6 +140,16 @@ public abstract class SpecialSerializers {
             return 2;
         }
 
+        @Override
+        public int sizeHint(Object o) {
+            return (o == null) ? 4 : SOCKET_SIZE;
+        }
+
+        @Override
+        public boolean wrapsArray(Object o) {
+            return false;
+        }
+
         @Override
         public void toBinary(Object o, ByteBuf buf) {
             Address addr = (Address) o;
@@ -159,7 +209,7 @@ public abstract class SpecialSerializers {
 
     }
 
-    public static class UUIDSerializer implements Serializer {
+    public static class UUIDSerializer implements SizeHintSerializer {
 
         public static final UUIDSerializer INSTANCE = new UUIDSerializer();
 
@@ -168,6 +218,16 @@ public abstract class SpecialSerializers {
             return 6;
         }
 
+        @Override
+        public int sizeHint(Object o) {
+            return 16;
+        }
+
+        @Override
+        public boolean wrapsArray(Object o) {
+            return false;
+        }
+
         @Override
         public void toBinary(Object o, ByteBuf buf) {
             if (o instanceof UUID) {
@@ -186,6 +246,11 @@ public abstract class SpecialSerializers {
 
     public static abstract class MessageSerializationUtil {
 
+        /**
+         * Bytes written by {@link #msgToBinary} for non-null addresses.
+         */
+        public static final int HEADER_SIZE = 1 + 2 * AddressSerializer.SOCKET_SIZE;
+
         public static void msgToBinary(DirectMessage msg, ByteBuf buf, boolean flag1, boolean flag2) {
             BitBuffer bbuf = BitBuffer.create(flag1, flag2, // good that a byte has so many bits... can compress it more if more protocols are necessary
                     msg.getProtocol() == Transport.UDP,
@@ -0,0 +1,163 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChunkWriterTest {
+
+    private static final int CHUNK = 10;
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private static ByteBuf content(int length) {
+        ByteBuf buf = Unpooled.buffer(length);
+        for (int i = 0; i < length; i++) {
+            buf.writeByte(i);
+        }
+        return buf;
+    }
+
+    private static List<ByteBuf> outbound(EmbeddedChannel ch) {
+        List<ByteBuf> frames = new ArrayList<ByteBuf>();
+        Object o;
+        while ((o = ch.readOutbound()) != null) {
+            frames.add((ByteBuf) o);
+        }
+        return frames;
+    }
+
+    private static void release(List<ByteBuf> frames) {
+        for (ByteBuf frame : frames) {
+            frame.release();
+        }
+    }
+
+    private static int id(ByteBuf frame) {
+        return frame.getInt(frame.readerIndex() + 4);
+    }
+
+    @Test
+    public void messageIsCutIntoFrames() {
+        EmbeddedChannel ch = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_IN_FLIGHT));
+        ChunkedMessage cm = new ChunkedMessage(content(25));
+        ChannelFuture f = ch.writeAndFlush(cm);
+        List<ByteBuf> frames = outbound(ch);
+        assertEquals(3, frames.size());
+        assertTrue(f.isSuccess());
+
+        ByteBuf data = Unpooled.buffer(25);
+        int[] sizes = {10, 10, 5};
+        int[] flags = {ChunkedMessage.FIRST, 0, ChunkedMessage.LAST};
+        for (int i = 0; i < frames.size(); i++) {
+            ByteBuf frame = frames.get(i);
+            assertEquals(ChunkedMessage.MARKER, frame.readUnsignedShort());
+            assertEquals(sizes[i], frame.readUnsignedShort());
+            assertEquals(0, frame.readInt());
+            assertEquals(flags[i], frame.readByte());
+            if (i == 0) {
+                assertEquals(25, frame.readInt());
+            }
+            assertEquals(sizes[i], frame.readableBytes());
+            data.writeBytes(frame);
+        }
+        assertEquals(content(25), data);
+
+        release(frames);
+        assertEquals(0, cm.content.refCnt());
+        ch.finish();
+    }
+
+    @Test
+    public void messagesAreInterleaved() {
+        EmbeddedChannel ch = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_IN_FLIGHT));
+        ch.write(new ChunkedMessage(content(20)));
+        ch.write(new ChunkedMessage(content(30)));
+        ch.flush();
+        List<ByteBuf> frames = outbound(ch);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (ByteBuf frame : frames) {
+            ids.add(id(frame));
+        }
+        assertEquals(Arrays.asList(0, 1, 0, 1, 1), ids);
+        release(frames);
+        ch.finish();
+    }
+
+    @Test
+    public void messagesInFlightAreCapped() {
+        EmbeddedChannel ch = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_IN_FLIGHT));
+        ch.write(new ChunkedMessage(content(20)));
+        ch.write(new ChunkedMessage(content(20)));
+        ch.write(new ChunkedMessage(content(20)));
+        ch.flush();
+        List<ByteBuf> frames = outbound(ch);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (ByteBuf frame : frames) {
+            ids.add(id(frame));
+        }
+        // the third only starts once the first one is done
+        assertEquals(Arrays.asList(0, 1, 0, 1, 2, 2), ids);
+        release(frames);
+        ch.finish();
+    }
+
+    @Test
+    public void smallWritesOvertake() {
+        EmbeddedChannel ch = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_IN_FLIGHT));
+        ch.write(new ChunkedMessage(content(30)));
+        ByteBuf small = content(5);
+        ch.write(small);
+        ch.flush();
+        List<ByteBuf> frames = outbound(ch);
+        assertEquals(4, frames.size());
+        assertSame(small, frames.get(0));
+        release(frames);
+        ch.finish();
+    }
+
+    @Test
+    public void closeFailsPendingMessages() {
+        EmbeddedChannel ch = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_IN_FLIGHT));
+        ChunkedMessage cm = new ChunkedMessage(content(30));
+        ChannelFuture f = ch.write(cm);
+        assertFalse(f.isDone());
+        ch.close();
+        ch.runPendingTasks(); // channelInactive is fired from a task
+        assertTrue(f.cause() instanceof ClosedChannelException);
+        assertEquals(0, cm.content.refCnt());
+        ch.finish();
+    }
+}
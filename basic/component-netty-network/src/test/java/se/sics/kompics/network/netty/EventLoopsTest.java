@@ -0,0 +1,92 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.util.concurrent.Future;
+import java.util.List;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.config.Config;
+
+@RunWith(JUnit4.class)
+public class EventLoopsTest {
+
+    private static Config config(boolean shared, int workers, int clients) {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(EventLoops.SHARED_KEY, shared);
+        cb.setValue(EventLoops.WORKER_KEY, workers);
+        cb.setValue(EventLoops.CLIENT_KEY, clients);
+        return cb;
+    }
+
+    private static void awaitShutdown(List<Future<?>> futures) {
+        for (Future<?> f : futures) {
+            f.syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void privateGroups() {
+        EventLoops a = EventLoops.acquire(config(false, 1, 0), NettyTransport.NIO, 1);
+        EventLoops b = EventLoops.acquire(config(false, 1, 0), NettyTransport.NIO, 1);
+        assertNotSame(a.worker, b.worker);
+        // without a client size the client loops are the worker loops
+        assertSame(a.worker, a.client);
+        assertSame(a.udtWorker, a.udtClient);
+        List<Future<?>> futures = a.release();
+        assertEquals(5, futures.size()); // every distinct group once
+        awaitShutdown(futures);
+        assertTrue(a.worker.isShutdown());
+        assertFalse(b.worker.isShutdown());
+        awaitShutdown(b.release());
+    }
+
+    @Test
+    public void sharedGroupsAreReferenceCounted() {
+        EventLoops a = EventLoops.acquire(config(true, 1, 1), NettyTransport.NIO, 2);
+        EventLoops b = EventLoops.acquire(config(true, 1, 1), NettyTransport.NIO, 2);
+        EventLoops other = EventLoops.acquire(config(true, 2, 1), NettyTransport.NIO, 2);
+        assertSame(a, b);
+        assertNotSame(a, other);
+        assertNotSame(a.worker, a.client);
+        assertTrue(a.release().isEmpty());
+        assertFalse(a.worker.isShutdown());
+        List<Future<?>> futures = b.release();
+        assertEquals(7, futures.size());
+        awaitShutdown(futures);
+        assertTrue(a.worker.isShutdown());
+        assertTrue(a.udp.isShutdown());
+        assertFalse(other.worker.isShutdown());
+        // the next instance with the same settings gets fresh groups
+        EventLoops c = EventLoops.acquire(config(true, 1, 1), NettyTransport.NIO, 2);
+        assertNotSame(a, c);
+        awaitShutdown(c.release());
+        awaitShutdown(other.release());
+    }
+}
@@ -0,0 +1,124 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.network.Msg;
+
+@RunWith(JUnit4.class)
+public class FlushCoalescerTest {
+
+    private static final int SIZE = 100;
+
+    /**
+     * Stands in for the encoder, and records how many messages had been
+     * written at each flush.
+     */
+    static class Recorder extends ChannelHandlerAdapter {
+
+        int writes = 0;
+        final List<Integer> flushes = new ArrayList<Integer>();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            ((MessageWrapper) msg).injectSize(SIZE, 0);
+            writes++;
+            ctx.write(msg, promise);
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.add(writes);
+            ctx.flush();
+        }
+    }
+
+    private static void write(FlushCoalescer fc, int count) {
+        for (int i = 0; i < count; i++) {
+            fc.write(new MessageWrapper((Msg) null));
+        }
+    }
+
+    @Test
+    public void oneCoalescerPerChannel() {
+        EmbeddedChannel ch = new EmbeddedChannel(new Recorder());
+        assertSame(FlushCoalescer.of(ch, 1000, 0), FlushCoalescer.of(ch, 1000, 0));
+        ch.finish();
+    }
+
+    @Test
+    public void loneMessageIsFlushed() {
+        Recorder r = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(r);
+        write(FlushCoalescer.of(ch, 1000, 0), 1);
+        ch.runPendingTasks();
+        assertEquals(Arrays.asList(1), r.flushes);
+        assertEquals(1, ch.outboundMessages().size());
+        ch.finish();
+    }
+
+    @Test
+    public void burstIsFlushedOnce() {
+        Recorder r = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(r);
+        write(FlushCoalescer.of(ch, 1000, 0), 5);
+        ch.runPendingTasks();
+        assertEquals(Arrays.asList(5), r.flushes);
+        assertEquals(5, ch.outboundMessages().size());
+        ch.finish();
+    }
+
+    @Test
+    public void maxBytesForcesEarlyFlush() {
+        Recorder r = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(r);
+        write(FlushCoalescer.of(ch, 3 * SIZE - 50, 0), 5);
+        ch.runPendingTasks();
+        assertEquals(Arrays.asList(3, 5), r.flushes);
+        ch.finish();
+    }
+
+    @Test
+    public void delayedFlush() throws InterruptedException {
+        Recorder r = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(r);
+        write(FlushCoalescer.of(ch, 1000, 50000), 2);
+        ch.runPendingTasks();
+        assertEquals(2, r.writes);
+        assertTrue(r.flushes.isEmpty());
+        Thread.sleep(100);
+        ch.runPendingTasks();
+        assertEquals(Arrays.asList(2), r.flushes);
+        ch.finish();
+    }
+}
@@ -0,0 +1,159 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MessageDecoderTest {
+
+    private static final int CHUNK = 10;
+    private static final int MAX_SIZE = 100;
+    private static final int MAX_PENDING = 2;
+
+    private static ByteBuf content(int length) {
+        ByteBuf buf = Unpooled.buffer(length);
+        for (int i = 0; i < length; i++) {
+            buf.writeByte(i);
+        }
+        return buf;
+    }
+
+    // hands out a copy of every complete message instead of deserialising it
+    private static EmbeddedChannel decoder() {
+        return new EmbeddedChannel(new MessageDecoder(null, MAX_SIZE, MAX_PENDING) {
+
+            @Override
+            Object decodeFrame(ChannelHandlerContext ctx, ByteBuf frame) {
+                return Unpooled.copiedBuffer(frame);
+            }
+        });
+    }
+
+    private static ByteBuf chunk(int id, int flags, int length, int size) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeShort(ChunkedMessage.MARKER);
+        frame.writeShort(size);
+        frame.writeInt(id);
+        frame.writeByte(flags);
+        if ((flags & ChunkedMessage.FIRST) != 0) {
+            frame.writeInt(length);
+        }
+        frame.writeBytes(content(size));
+        return frame;
+    }
+
+    private static void assertRejected(EmbeddedChannel ch, ByteBuf frame, Class<? extends Exception> type) {
+        try {
+            ch.writeInbound(frame);
+            fail("Chunk was accepted");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.toString(), type.isInstance(ex));
+        }
+    }
+
+    private static void assertMessage(EmbeddedChannel ch, ByteBuf expected) {
+        ByteBuf msg = (ByteBuf) ch.readInbound();
+        assertEquals(expected, msg);
+        msg.release();
+    }
+
+    @Test
+    public void roundTrip() {
+        EmbeddedChannel writer = new EmbeddedChannel(new ChunkWriter(CHUNK, MAX_PENDING));
+        writer.write(new ChunkedMessage(content(25)));
+        writer.write(new ChunkedMessage(content(30)));
+        ByteBuf small = Unpooled.buffer();
+        small.writeShort(5);
+        small.writeBytes(content(5));
+        writer.write(small);
+        writer.flush();
+
+        EmbeddedChannel ch = decoder();
+        Object frame;
+        while ((frame = writer.readOutbound()) != null) {
+            ch.writeInbound(frame);
+        }
+        // the small message overtook both, and the shorter one finished first
+        assertMessage(ch, content(5));
+        assertMessage(ch, content(25));
+        assertMessage(ch, content(30));
+        assertNull(ch.readInbound());
+        writer.finish();
+        ch.finish();
+    }
+
+    @Test
+    public void tooLong() {
+        EmbeddedChannel ch = decoder();
+        assertRejected(ch, chunk(0, ChunkedMessage.FIRST, MAX_SIZE + 1, CHUNK), TooLongFrameException.class);
+        // announced 15 bytes, but sends 20
+        ch.writeInbound(chunk(1, ChunkedMessage.FIRST, 15, CHUNK));
+        assertRejected(ch, chunk(1, ChunkedMessage.LAST, 0, CHUNK), CorruptedFrameException.class);
+        ch.finish();
+    }
+
+    @Test
+    public void tooShort() {
+        EmbeddedChannel ch = decoder();
+        ch.writeInbound(chunk(0, ChunkedMessage.FIRST, 25, CHUNK));
+        assertRejected(ch, chunk(0, ChunkedMessage.LAST, 0, CHUNK), CorruptedFrameException.class);
+        ch.finish();
+    }
+
+    @Test
+    public void unknownId() {
+        EmbeddedChannel ch = decoder();
+        assertRejected(ch, chunk(7, ChunkedMessage.LAST, 0, CHUNK), CorruptedFrameException.class);
+        ch.writeInbound(chunk(0, ChunkedMessage.FIRST, 20, CHUNK));
+        assertRejected(ch, chunk(0, ChunkedMessage.FIRST, 20, CHUNK), CorruptedFrameException.class);
+        ch.finish();
+    }
+
+    @Test
+    public void pendingLimit() {
+        EmbeddedChannel ch = decoder();
+        ch.writeInbound(chunk(0, ChunkedMessage.FIRST, 20, CHUNK));
+        ch.writeInbound(chunk(1, ChunkedMessage.FIRST, 20, CHUNK));
+        assertRejected(ch, chunk(2, ChunkedMessage.FIRST, 20, CHUNK), TooLongFrameException.class);
+        // room for another one once a message is complete
+        ByteBuf data = Unpooled.buffer();
+        data.writeBytes(content(CHUNK));
+        data.writeBytes(content(CHUNK));
+        ch.writeInbound(chunk(0, ChunkedMessage.LAST, 0, CHUNK));
+        assertMessage(ch, data);
+        ch.writeInbound(chunk(3, ChunkedMessage.FIRST | ChunkedMessage.LAST, CHUNK, CHUNK));
+        assertMessage(ch, content(CHUNK));
+        ch.finish();
+    }
+}
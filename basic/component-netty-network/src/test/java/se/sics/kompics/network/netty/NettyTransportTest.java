@@ -0,0 +1,75 @@
+/* 
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network.netty;
+
+import io.netty.channel.epoll.Epoll;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.config.Config;
+
+@RunWith(JUnit4.class)
+public class NettyTransportTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyTransportTest.class);
+
+    private static Config transport(String name) {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(NettyTransport.TRANSPORT_KEY, name);
+        return cb;
+    }
+
+    @Test
+    public void nioByDefault() {
+        assertEquals(NettyTransport.NIO, NettyTransport.fromConfig(Kompics.getConfig(), LOG));
+        assertEquals(NettyTransport.NIO, NettyTransport.fromConfig(transport("NIO"), LOG));
+        assertFalse(NettyTransport.NIO.supportsReusePort());
+    }
+
+    @Test
+    public void epollFallsBackToNio() {
+        NettyTransport t = NettyTransport.fromConfig(transport("epoll"), LOG);
+        if (Epoll.isAvailable()) {
+            assertEquals(NettyTransport.EPOLL, t);
+            assertTrue(t.supportsReusePort());
+        } else {
+            assertEquals(NettyTransport.NIO, t);
+        }
+    }
+
+    @Test
+    public void unknownTransport() {
+        try {
+            NettyTransport.fromConfig(transport("carrier-pigeon"), LOG);
+            fail("accepted an unknown transport");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -21,8 +21,10 @@
 package se.sics.kompics.network.netty.serialization;
 
 import com.google.common.base.Optional;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import java.io.Serializable;
 import java.net.InetAddress;
@@ -31,6 +33,9 @@ import java.util.UUID;
 import junit.framework.Assert;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -64,6 +69,31 @@ public class SerializationTest {
         assertArrayEquals(some, someRes);
     }
 
+    @Test
+    public void byteWrapTest() {
+        byte[] some = new byte[SpecialSerializers.ByteSerializer.WRAP_THRESHOLD];
+        for (int i = 0; i < some.length; i++) {
+            some[i] = (byte) i;
+        }
+        CompositeByteBuf buf = Unpooled.compositeBuffer();
+        Serializers.toBinary(some, buf);
+        // appended as is, behind the serializer id and the length
+        assertSame(some, buf.component(buf.numComponents() - 1).array());
+        assertEquals(Serializers.sizeHint(some), buf.readableBytes());
+        byte[] someRes = (byte[]) Serializers.fromBinary(buf, Optional.absent());
+        assertArrayEquals(some, someRes);
+        assertEquals(0, buf.readableBytes());
+        buf.release();
+
+        // smaller arrays are copied, even into a composite buffer
+        byte[] small = new byte[]{1, 2, 3, 4};
+        buf = Unpooled.compositeBuffer();
+        Serializers.toBinary(small, buf);
+        small[0] = 5;
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, (byte[]) Serializers.fromBinary(buf, Optional.absent()));
+        buf.release();
+    }
+
     @Test
     public void nullTest() {
         Object some = null;
@@ -191,6 +221,69 @@ public class SerializationTest {
         buf.release();
     }
 
+    @Test
+    public void protobufTest() {
+        Serializers.register(new ProtobufSerializer(FileDescriptorProto.getDefaultInstance()), "protoS");
+        Serializers.register(FileDescriptorProto.class, "protoS");
+        FileDescriptorProto some = FileDescriptorProto.newBuilder()
+                .setName("some.proto").setPackage("se.sics.kompics").addDependency("other.proto").build();
+        // encoded right into the backing array
+        ByteBuf buf = Unpooled.buffer();
+        Serializers.toBinary(some, buf);
+        assertEquals(Serializers.sizeHint(some), buf.readableBytes());
+        assertEquals(some, Serializers.fromBinary(buf, Optional.absent()));
+        // streamed into a direct buffer
+        buf = Unpooled.directBuffer();
+        Serializers.toBinary(some, buf);
+        assertEquals(Serializers.sizeHint(some), buf.readableBytes());
+        assertEquals(some, Serializers.fromBinary(buf, Optional.absent()));
+        buf.release();
+    }
+
+    @Test
+    public void serializerIdTest() {
+        UUID orig = UUID.randomUUID();
+        int sId = SpecialSerializers.UUIDSerializer.INSTANCE.identifier();
+        ByteBuf buf = Unpooled.directBuffer();
+        Serializers.toBinary(orig, buf);
+        assertEquals(1 + 16, buf.readableBytes());
+        assertEquals(sId, buf.getUnsignedByte(0));
+        assertEquals(orig, Serializers.fromBinary(buf, Optional.absent()));
+        buf.clear();
+        Serializers.resize(Serializers.IdBytes.THREE);
+        try {
+            Serializers.toBinary(orig, buf);
+            assertEquals(3 + 16, buf.readableBytes());
+            assertEquals(sId, buf.getUnsignedMedium(0));
+            assertEquals(orig, Serializers.fromBinary(buf, Optional.absent()));
+        } finally {
+            Serializers.resize(Serializers.IdBytes.ONE);
+            buf.release();
+        }
+    }
+
+    @Test
+    public void sizeHintTest() throws UnknownHostException {
+        Address src = new NettyAddress(InetAddress.getByName("127.0.0.1"), 1234);
+        Address dst = new NettyAddress(InetAddress.getByName("127.0.0.1"), 5678);
+        Object[] hinted = new Object[]{null, new byte[]{1, 2, 3}, new byte[4096], UUID.randomUUID(), src,
+            new DisambiguateConnection(src, dst, Transport.TCP, 1234, false)};
+        for (Object o : hinted) {
+            ByteBuf buf = Unpooled.directBuffer();
+            Serializers.toBinary(o, buf);
+            assertEquals(buf.readableBytes(), Serializers.sizeHint(o));
+            buf.release();
+        }
+        assertEquals(1 + 4 + 3, Serializers.sizeHint(new byte[]{1, 2, 3}));
+        assertEquals(-1, Serializers.sizeHint(new SomeSerializable()));
+
+        assertTrue(Serializers.wrapsArray(new byte[SpecialSerializers.ByteSerializer.WRAP_THRESHOLD]));
+        assertFalse(Serializers.wrapsArray(new byte[SpecialSerializers.ByteSerializer.WRAP_THRESHOLD - 1]));
+        assertFalse(Serializers.wrapsArray(null));
+        assertFalse(Serializers.wrapsArray(src));
+        assertFalse(Serializers.wrapsArray(new SomeSerializable()));
+    }
+
     public static class SomeSerializable implements Serializable {
 
         private int someField = 12345;
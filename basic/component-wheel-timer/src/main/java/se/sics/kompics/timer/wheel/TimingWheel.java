@@ -0,0 +1,137 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.wheel;
+
+import java.util.List;
+
+/**
+ * A hierarchical hashed timing wheel.
+ * <p>
+ * Four levels of 256 slots each cover 2^32 ticks. A timeout is hashed into the
+ * lowest level whose span contains its deadline and moves down one level each
+ * time the wheel below it completes a revolution, so scheduling, cancelling
+ * and advancing by one tick are all constant time. Timeouts further away than
+ * the top level spans are parked in its last slot and re-hashed when they come
+ * around.
+ * <p>
+ * Not thread-safe; owned by the ticker thread of a {@link WheelTimer}.
+ */
+final class TimingWheel {
+
+    static final int LEVELS = 4;
+    static final int BITS = 8;
+    static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private final WheelTimeout.Bucket[][] wheels;
+    private long currentTick;
+
+    TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        this.wheels = new WheelTimeout.Bucket[LEVELS][SLOTS];
+        for (WheelTimeout.Bucket[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new WheelTimeout.Bucket();
+            }
+        }
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Adds {@code t} to the wheel, or to {@code expired} if its deadline has
+     * already been reached.
+     */
+    void add(WheelTimeout t, List<WheelTimeout> expired) {
+        long ticks = t.deadline - currentTick;
+        if (ticks <= 0) {
+            expired.add(t);
+            return;
+        }
+        long slotTick = t.deadline;
+        if (ticks >= SPAN) {
+            slotTick = currentTick + SPAN - 1;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((slotTick >>> (BITS * level)) & MASK);
+        wheels[level][slot].add(t);
+    }
+
+    /**
+     * Re-adds a periodic timeout that has just expired at its first deadline
+     * after the current tick, skipping the periods that were missed while the
+     * wheel was behind but keeping the phase.
+     */
+    void addNextPeriod(WheelTimeout t, List<WheelTimeout> expired) {
+        do {
+            t.deadline += t.period;
+        } while (t.deadline <= currentTick);
+        add(t, expired);
+    }
+
+    void remove(WheelTimeout t) {
+        if (t.bucket != null) {
+            t.bucket.remove(t);
+        }
+    }
+
+    /**
+     * Advances the wheel tick by tick up to {@code tick}, collecting every
+     * timeout that falls due on the way into {@code expired}.
+     */
+    void advanceTo(long tick, List<WheelTimeout> expired) {
+        while (currentTick < tick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS
+                    && (currentTick & ((1L << (BITS * level)) - 1)) == 0; level++) {
+                int slot = (int) ((currentTick >>> (BITS * level)) & MASK);
+                cascade(wheels[level][slot], expired);
+            }
+            WheelTimeout t = wheels[0][(int) (currentTick & MASK)].clear();
+            while (t != null) {
+                WheelTimeout next = t.next;
+                t.bucket = null;
+                t.prev = null;
+                t.next = null;
+                expired.add(t);
+                t = next;
+            }
+        }
+    }
+
+    private void cascade(WheelTimeout.Bucket bucket, List<WheelTimeout> expired) {
+        WheelTimeout t = bucket.clear();
+        while (t != null) {
+            WheelTimeout next = t.next;
+            t.bucket = null;
+            t.prev = null;
+            t.next = null;
+            add(t, expired);
+            t = next;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.wheel;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.util.Identifier;
+
+/**
+ * A timeout scheduled on a {@link TimingWheel}.
+ * <p>
+ * The links and the deadline are only touched by the ticker thread. The state
+ * is shared with the handlers that cancel timeouts, so that a timeout is either
+ * cancelled or expired, never both.
+ */
+final class WheelTimeout {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE
+            = AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+    final Timeout timeout;
+    final Identifier id;
+    /**
+     * Period in ticks, or {@code 0} for one-shot timeouts.
+     */
+    final long period;
+    long deadline;
+    Bucket bucket;
+    WheelTimeout prev;
+    WheelTimeout next;
+    private volatile int state = PENDING;
+
+    WheelTimeout(Timeout timeout, long deadline, long period) {
+        this.timeout = timeout;
+        this.id = timeout.getId();
+        this.deadline = deadline;
+        this.period = period;
+    }
+
+    boolean isPeriodic() {
+        return period > 0;
+    }
+
+    boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    boolean cancel() {
+        return STATE.compareAndSet(this, PENDING, CANCELLED);
+    }
+
+    boolean expire() {
+        return STATE.compareAndSet(this, PENDING, EXPIRED);
+    }
+
+    /**
+     * An intrusive doubly linked list of timeouts in one wheel slot.
+     */
+    static final class Bucket {
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout t) {
+            t.bucket = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) {
+                head = t;
+            } else {
+                tail.next = t;
+            }
+            tail = t;
+        }
+
+        void remove(WheelTimeout t) {
+            if (t.prev == null) {
+                head = t.next;
+            } else {
+                t.prev.next = t.next;
+            }
+            if (t.next == null) {
+                tail = t.prev;
+            } else {
+                t.next.prev = t.prev;
+            }
+            t.bucket = null;
+            t.prev = null;
+            t.next = null;
+        }
+
+        /**
+         * Empties the bucket and returns its former head. The returned chain
+         * stays linked through {@code next} until its entries are re-added.
+         */
+        WheelTimeout clear() {
+            WheelTimeout first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.wheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Negative;
+import se.sics.kompics.config.ConfigKey;
+import se.sics.kompics.timer.CancelPeriodicTimeout;
+import se.sics.kompics.timer.CancelTimeout;
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.timer.Timer;
+import se.sics.kompics.util.Identifier;
+
+/**
+ * A {@link Timer} implementation backed by a hierarchical hashed timing wheel.
+ * <p>
+ * Handlers only allocate an entry and hand it to the ticker thread through a
+ * lock-free queue, and cancelling marks the entry and queues it for unlinking,
+ * so neither depends on the number of outstanding timeouts. The ticker thread
+ * wakes once per tick, advances the wheel and triggers everything that expired
+ * in that tick in one batch. Timeouts never fire early, but may fire up to one
+ * tick late; the tick resolution is set in milliseconds via {@value #TICK_KEY}.
+ */
+public final class WheelTimer extends ComponentDefinition {
+
+    public static final String TICK_KEY = "kompics.timer.wheel.tick";
+    private static final ConfigKey<Long> TICK = ConfigKey.of(TICK_KEY, 10l);
+
+    Negative<Timer> timer = negative(Timer.class);
+
+    private final ConcurrentHashMap<Identifier, WheelTimeout> activeTimers = new ConcurrentHashMap<>();
+    private final Queue<WheelTimeout> additions = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final long tickNanos;
+    private final long startNanos;
+    private final Thread ticker;
+    private volatile boolean running = true;
+
+    public WheelTimer() {
+        long tickMillis = TICK.get(config());
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException(TICK_KEY + " must be positive, was " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(new Ticker(), "WheelTimer@" + Integer.toHexString(this.hashCode()));
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+
+        subscribe(handleST, timer);
+        subscribe(handleSPT, timer);
+        subscribe(handleCT, timer);
+        subscribe(handleCPT, timer);
+    }
+
+    Handler<ScheduleTimeout> handleST = new Handler<ScheduleTimeout>() {
+        @Override
+        public void handle(ScheduleTimeout event) {
+            schedule(event.getTimeoutEvent(), event.getDelay(), 0);
+            logger.debug("scheduled timer({}) {}", event.getDelay(), event.getTimeoutEvent());
+        }
+    };
+
+    Handler<SchedulePeriodicTimeout> handleSPT = new Handler<SchedulePeriodicTimeout>() {
+        @Override
+        public void handle(SchedulePeriodicTimeout event) {
+            schedule(event.getTimeoutEvent(), event.getDelay(), Math.max(1, ticksFor(event.getPeriod())));
+            logger.debug("scheduled periodic timer({}, {}) {}", new Object[]{
+                event.getDelay(), event.getPeriod(), event.getTimeoutEvent()});
+        }
+    };
+
+    Handler<CancelTimeout> handleCT = new Handler<CancelTimeout>() {
+        @Override
+        public void handle(CancelTimeout event) {
+            WheelTimeout t = cancel(event.getId());
+            if (t != null) {
+                logger.debug("canceled timer {}", t.timeout);
+            }
+        }
+    };
+
+    Handler<CancelPeriodicTimeout> handleCPT = new Handler<CancelPeriodicTimeout>() {
+        @Override
+        public void handle(CancelPeriodicTimeout event) {
+            WheelTimeout t = cancel(event.getId());
+            if (t != null) {
+                logger.debug("canceled periodic timer {}", t.timeout);
+            }
+        }
+    };
+
+    private void schedule(Timeout timeout, long delayMillis, long periodTicks) {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        // round up, so that a timeout never fires before its delay has passed
+        long deadline = (elapsed + tickNanos - 1) / tickNanos;
+        WheelTimeout t = new WheelTimeout(timeout, deadline, periodTicks);
+        activeTimers.put(t.id, t);
+        additions.offer(t);
+    }
+
+    private WheelTimeout cancel(Identifier id) {
+        WheelTimeout t = activeTimers.remove(id);
+        if (t != null && t.cancel()) {
+            cancellations.offer(t);
+            return t;
+        }
+        return null;
+    }
+
+    private long ticksFor(long millis) {
+        return (TimeUnit.MILLISECONDS.toNanos(millis) + tickNanos - 1) / tickNanos;
+    }
+
+    @Override
+    public void tearDown() {
+        running = false;
+        ticker.interrupt();
+        for (WheelTimeout t : activeTimers.values()) {
+            t.cancel();
+        }
+        activeTimers.clear();
+        additions.clear();
+        cancellations.clear();
+    }
+
+    private final class Ticker implements Runnable {
+
+        private final TimingWheel wheel = new TimingWheel(0);
+        private final List<WheelTimeout> expired = new ArrayList<>();
+
+        @Override
+        public void run() {
+            long tick = 0;
+            while (running) {
+                tick = awaitTick(tick + 1);
+                if (!running) {
+                    return;
+                }
+                WheelTimeout t;
+                while ((t = cancellations.poll()) != null) {
+                    wheel.remove(t);
+                }
+                while ((t = additions.poll()) != null) {
+                    if (!t.isCancelled()) {
+                        wheel.add(t, expired);
+                    }
+                }
+                wheel.advanceTo(tick, expired);
+                fire();
+            }
+        }
+
+        /**
+         * Sleeps until {@code tick} has started and returns the current tick,
+         * which may be later if the thread overslept.
+         */
+        private long awaitTick(long tick) {
+            long deadline = startNanos + tick * tickNanos;
+            long wait;
+            while (running && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+            return (System.nanoTime() - startNanos) / tickNanos;
+        }
+
+        private void fire() {
+            for (int i = 0; i < expired.size(); i++) {
+                WheelTimeout t = expired.get(i);
+                if (t.isPeriodic()) {
+                    if (t.isCancelled()) {
+                        continue;
+                    }
+                    try {
+                        logger.debug("trigger periodic timeout {}", t.timeout);
+                        trigger((Timeout) t.timeout.clone(), timer);
+                    } catch (CloneNotSupportedException ex) {
+                        logger.warn("Could not clone periodic timeout " + t.timeout, ex);
+                    }
+                    wheel.addNextPeriod(t, expired);
+                } else if (t.expire()) {
+                    activeTimers.remove(t.id, t);
+                    logger.debug("trigger timeout {}", t.timeout);
+                    trigger(t.timeout, timer);
+                }
+            }
+            expired.clear();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.wheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+
+@RunWith(JUnit4.class)
+public class TimingWheelTest {
+
+    private static final long SPAN = 1L << (TimingWheel.BITS * TimingWheel.LEVELS);
+
+    static class TestTimeout extends Timeout {
+
+        TestTimeout() {
+            super(new ScheduleTimeout(0));
+        }
+    }
+
+    private static WheelTimeout timeout(long deadline, long period) {
+        return new WheelTimeout(new TestTimeout(), deadline, period);
+    }
+
+    // the timeout must not expire a tick early, nor be late
+    private static void assertExpiresAt(TimingWheel wheel, WheelTimeout t, List<WheelTimeout> expired) {
+        wheel.advanceTo(t.deadline - 1, expired);
+        Assert.assertTrue("expired early at " + wheel.currentTick(), expired.isEmpty());
+        wheel.advanceTo(t.deadline, expired);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertSame(t, expired.get(0));
+        expired.clear();
+    }
+
+    @Test
+    public void levelBoundaries() {
+        long[] delays = {1, 255, 256, 257, 65535, 65536, 65537, (1L << 24) - 1, 1L << 24};
+        for (long start : new long[]{0, 100, 65500}) {
+            for (long delay : delays) {
+                TimingWheel wheel = new TimingWheel(start);
+                List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+                WheelTimeout t = timeout(start + delay, 0);
+                wheel.add(t, expired);
+                Assert.assertTrue(expired.isEmpty());
+                assertExpiresAt(wheel, t, expired);
+            }
+        }
+    }
+
+    @Test
+    public void dueTimeoutsExpireRightAway() {
+        TimingWheel wheel = new TimingWheel(10);
+        List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+        WheelTimeout now = timeout(10, 0);
+        WheelTimeout past = timeout(3, 0);
+        wheel.add(now, expired);
+        wheel.add(past, expired);
+        Assert.assertEquals(2, expired.size());
+        Assert.assertNull(now.bucket);
+        Assert.assertNull(past.bucket);
+    }
+
+    @Test
+    public void beyondSpan() {
+        TimingWheel wheel = new TimingWheel(7);
+        List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+        // parked in the top level and re-hashed when it comes around
+        WheelTimeout t = timeout(7 + SPAN + 300, 0);
+        wheel.add(t, expired);
+        Assert.assertTrue(expired.isEmpty());
+        assertExpiresAt(wheel, t, expired);
+    }
+
+    @Test
+    public void removedTimeoutsDontExpire() {
+        TimingWheel wheel = new TimingWheel(0);
+        List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+        WheelTimeout a = timeout(300, 0);
+        WheelTimeout b = timeout(300, 0);
+        WheelTimeout c = timeout(300, 0);
+        wheel.add(a, expired);
+        wheel.add(b, expired);
+        wheel.add(c, expired);
+        wheel.remove(b);
+        Assert.assertNull(b.bucket);
+        wheel.advanceTo(300, expired);
+        Assert.assertEquals(2, expired.size());
+        Assert.assertSame(a, expired.get(0));
+        Assert.assertSame(c, expired.get(1));
+    }
+
+    @Test
+    public void cancelBeforeAdd() {
+        // the ticker unlinks cancellations before it adds new timeouts,
+        // so a timeout can be removed before it was ever added
+        TimingWheel wheel = new TimingWheel(0);
+        List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+        WheelTimeout other = timeout(5, 0);
+        wheel.add(other, expired);
+        WheelTimeout t = timeout(5, 0);
+        Assert.assertTrue(t.cancel());
+        wheel.remove(t);
+        Assert.assertNull(t.bucket);
+        Assert.assertFalse(t.expire());
+        assertExpiresAt(wheel, other, expired);
+    }
+
+    @Test
+    public void periodicCatchesUp() {
+        TimingWheel wheel = new TimingWheel(0);
+        List<WheelTimeout> expired = new ArrayList<WheelTimeout>();
+        WheelTimeout t = timeout(10, 10);
+        wheel.add(t, expired);
+        assertExpiresAt(wheel, t, expired);
+        wheel.addNextPeriod(t, expired);
+        Assert.assertEquals(20, t.deadline);
+        // the ticker falls behind by a few periods: it expires once
+        wheel.advanceTo(45, expired);
+        Assert.assertEquals(1, expired.size());
+        expired.clear();
+        // and the missed periods are skipped without losing the phase
+        wheel.addNextPeriod(t, expired);
+        Assert.assertTrue(expired.isEmpty());
+        Assert.assertEquals(50, t.deadline);
+        assertExpiresAt(wheel, t, expired);
+        // a deadline that falls on the current tick is skipped as well
+        wheel.addNextPeriod(t, expired);
+        wheel.advanceTo(60, expired);
+        expired.clear();
+        wheel.addNextPeriod(t, expired);
+        Assert.assertEquals(70, t.deadline);
+        Assert.assertTrue(expired.isEmpty());
+    }
+}
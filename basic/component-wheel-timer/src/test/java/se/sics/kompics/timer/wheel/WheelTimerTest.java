@@ -0,0 +1,152 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.timer.wheel;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+import se.sics.kompics.timer.CancelPeriodicTimeout;
+import se.sics.kompics.timer.CancelTimeout;
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.timer.Timer;
+
+@RunWith(JUnit4.class)
+public class WheelTimerTest {
+
+    private static final long DELAY = 100;
+    private static final long PERIOD = 20;
+    private static final int TICKS = 3;
+    private static final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    static class Fired extends Timeout {
+
+        final long scheduledAt = System.nanoTime();
+
+        Fired(ScheduleTimeout request) {
+            super(request);
+        }
+    }
+
+    static class Cancelled extends Timeout {
+
+        Cancelled(ScheduleTimeout request) {
+            super(request);
+        }
+    }
+
+    static class Tick extends Timeout {
+
+        Tick(SchedulePeriodicTimeout request) {
+            super(request);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        {
+            Component timer = create(WheelTimer.class, Init.NONE);
+            Component client = create(Client.class, Init.NONE);
+            connect(timer.getPositive(Timer.class), client.getNegative(Timer.class), Channel.TWO_WAY);
+        }
+    }
+
+    public static class Client extends ComponentDefinition {
+
+        private final Positive<Timer> timer = requires(Timer.class);
+        private int ticks = 0;
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+                @Override
+                public void handle(Start event) {
+                    ScheduleTimeout fired = new ScheduleTimeout(DELAY);
+                    fired.setTimeoutEvent(new Fired(fired));
+                    trigger(fired, timer);
+                    ScheduleTimeout cancelled = new ScheduleTimeout(DELAY / 2);
+                    Cancelled c = new Cancelled(cancelled);
+                    cancelled.setTimeoutEvent(c);
+                    trigger(cancelled, timer);
+                    trigger(new CancelTimeout(c.getId()), timer);
+                    SchedulePeriodicTimeout periodic = new SchedulePeriodicTimeout(0, PERIOD);
+                    periodic.setTimeoutEvent(new Tick(periodic));
+                    trigger(periodic, timer);
+                }
+            };
+            Handler<Fired> firedHandler = new Handler<Fired>() {
+                @Override
+                public void handle(Fired event) {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - event.scheduledAt);
+                    events.offer((elapsed >= DELAY) ? "fired" : ("fired early after " + elapsed + "ms"));
+                }
+            };
+            Handler<Cancelled> cancelledHandler = new Handler<Cancelled>() {
+                @Override
+                public void handle(Cancelled event) {
+                    events.offer("cancelled");
+                }
+            };
+            Handler<Tick> tickHandler = new Handler<Tick>() {
+                @Override
+                public void handle(Tick event) {
+                    ticks++;
+                    if (ticks == TICKS) {
+                        trigger(new CancelPeriodicTimeout(event.getId()), timer);
+                        events.offer("ticked");
+                    } else if (ticks > TICKS) {
+                        events.offer("ticked after cancel");
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+            subscribe(firedHandler, timer);
+            subscribe(cancelledHandler, timer);
+            subscribe(tickHandler, timer);
+        }
+    }
+
+    @Test
+    public void scheduleAndCancel() throws InterruptedException {
+        events.clear();
+        Kompics.createAndStart(Root.class, 1);
+        try {
+            Assert.assertEquals("ticked", events.poll(5, TimeUnit.SECONDS));
+            Assert.assertEquals("fired", events.poll(5, TimeUnit.SECONDS));
+            // give the cancelled timeout and further ticks a chance to show up
+            Assert.assertNull(events.poll(5 * PERIOD + DELAY, TimeUnit.MILLISECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+}
@@ -43,6 +43,7 @@ import se.sics.kompics.timer.SchedulePeriodicTimeout;
 import se.sics.kompics.timer.ScheduleTimeout;
 import se.sics.kompics.timer.Timeout;
 import se.sics.kompics.timer.Timer;
+import se.sics.kompics.util.Identifier;
 
 /**
  *
@@ -55,7 +56,7 @@ public class DataStreamInterceptor extends ComponentDefinition {
     final Negative<Network> netUp = provides(Network.class);
 
     private final Map<UUID, TrackedMessage> outstanding = new HashMap<>();
-    private UUID timeoutId = null;
+    private Identifier timeoutId = null;
     private final ConnectionFactory factory;
     private final HashMap<InetSocketAddress, ConnectionTracker> connections = new HashMap<>();
     private final long maxQueueLength;
@@ -83,7 +84,7 @@ public class DataStreamInterceptor extends ComponentDefinition {
             StatsTimeout st = new StatsTimeout(spt);
             spt.setTimeoutEvent(st);
             trigger(spt, timer);
-            timeoutId = st.getTimeoutId();
+            timeoutId = st.getId();
         }
     };
     Handler<Msg> msgHandler = new Handler<Msg>() {
@@ -7,6 +7,11 @@ package se.sics.kompics.network;
 
 import java.util.UUID;
 import se.sics.kompics.Direct;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.util.Identifier;
+import se.sics.kompics.util.IdentifierFactory;
+import se.sics.kompics.util.SequentialIdentifierFactory;
+import se.sics.kompics.util.UUIDIdentifier;
 
 /**
  *
@@ -91,15 +96,28 @@ public class MessageNotify {
 
     public static class Resp implements Direct.Response, Cloneable {
 
+        // message ids travel as UUIDs, so ids from other schemes are replaced by these
+        private static final IdentifierFactory WIRE_IDS = new SequentialIdentifierFactory();
+
         private long time;
         private long sendTime;
         private long deliveryTime;
         private int size;
         public final UUID msgId;
+        private final Identifier id;
         private State state = State.IN_PROGRESS;
 
         public Resp() {
-            msgId = UUID.randomUUID();
+            Identifier newId = Kompics.getIdentifierFactory().newId();
+            if (!(newId instanceof UUIDIdentifier)) {
+                newId = WIRE_IDS.newId();
+            }
+            id = newId;
+            msgId = UUIDIdentifier.toUUID(newId);
+        }
+
+        public Identifier getId() {
+            return id;
         }
 
         void setTime(long time) {
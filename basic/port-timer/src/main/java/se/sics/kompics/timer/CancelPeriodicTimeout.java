@@ -23,6 +23,8 @@ package se.sics.kompics.timer;
 import java.util.UUID;
 
 import se.sics.kompics.Event;
+import se.sics.kompics.util.Identifier;
+import se.sics.kompics.util.UUIDIdentifier;
 
 /**
  * The <code>CancelPeriodicTimeout</code> class.
@@ -33,7 +35,7 @@ import se.sics.kompics.Event;
  */
 public final class CancelPeriodicTimeout extends Event {
 
-	private UUID timeoutId;
+	private final Identifier timeoutId;
 
 	/**
 	 * Instantiates a new cancel periodic timeout.
@@ -42,6 +44,16 @@ public final class CancelPeriodicTimeout extends Event {
 	 *            the timeout id
 	 */
 	public CancelPeriodicTimeout(UUID timeoutId) {
+		this(new UUIDIdentifier(timeoutId));
+	}
+
+	/**
+	 * Instantiates a new cancel periodic timeout.
+	 * 
+	 * @param timeoutId
+	 *            the timeout id, as returned by {@link Timeout#getId()}
+	 */
+	public CancelPeriodicTimeout(Identifier timeoutId) {
 		this.timeoutId = timeoutId;
 	}
 
@@ -50,7 +62,18 @@ public final class CancelPeriodicTimeout extends Event {
 	 * 
 	 * @return the timeout id
 	 */
-	public final UUID getTimeoutId() {
+	public final Identifier getId() {
 		return timeoutId;
 	}
+
+	/**
+	 * Gets the timeout id as a UUID.
+	 * 
+	 * @return the timeout id
+	 * @throws IllegalArgumentException
+	 *             if the id is not UUID based
+	 */
+	public final UUID getTimeoutId() {
+		return UUIDIdentifier.toUUID(timeoutId);
+	}
 }
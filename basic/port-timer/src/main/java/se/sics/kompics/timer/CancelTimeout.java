@@ -23,6 +23,8 @@ package se.sics.kompics.timer;
 import java.util.UUID;
 
 import se.sics.kompics.Event;
+import se.sics.kompics.util.Identifier;
+import se.sics.kompics.util.UUIDIdentifier;
 
 /**
  * The <code>CancelTimeout</code> class.
@@ -33,7 +35,7 @@ import se.sics.kompics.Event;
  */
 public class CancelTimeout extends Event {
 
-	private UUID timeoutId;
+	private final Identifier timeoutId;
 
 	public StackTraceElement[] stackTrace;
 	
@@ -44,6 +46,16 @@ public class CancelTimeout extends Event {
 	 *            the timeout id
 	 */
 	public CancelTimeout(UUID timeoutId) {
+		this(new UUIDIdentifier(timeoutId));
+	}
+
+	/**
+	 * Instantiates a new cancel timeout.
+	 * 
+	 * @param timeoutId
+	 *            the timeout id, as returned by {@link Timeout#getId()}
+	 */
+	public CancelTimeout(Identifier timeoutId) {
 		this.timeoutId = timeoutId;
 		stackTrace = Thread.currentThread().getStackTrace();
 	}
@@ -53,9 +65,20 @@ public class CancelTimeout extends Event {
 	 * 
 	 * @return the timeout id
 	 */
-	public final UUID getTimeoutId() {
+	public final Identifier getId() {
 		return timeoutId;
 	}
+
+	/**
+	 * Gets the timeout id as a UUID.
+	 * 
+	 * @return the timeout id
+	 * @throws IllegalArgumentException
+	 *             if the id is not UUID based
+	 */
+	public final UUID getTimeoutId() {
+		return UUIDIdentifier.toUUID(timeoutId);
+	}
 	
 	public StackTraceElement[] getStackTrace() {
 		return stackTrace;
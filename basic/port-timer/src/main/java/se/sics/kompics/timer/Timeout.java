@@ -22,7 +22,11 @@ package se.sics.kompics.timer;
 
 import java.util.UUID;
 
+import se.sics.kompics.Kompics;
 import se.sics.kompics.Response;
+import se.sics.kompics.util.Identifiable;
+import se.sics.kompics.util.Identifier;
+import se.sics.kompics.util.UUIDIdentifier;
 
 /**
  * The <code>Timeout</code> class.
@@ -31,9 +35,9 @@ import se.sics.kompics.Response;
  * @author Jim Dowling <jdowling@sics.se>
  * @version $Id$
  */
-public abstract class Timeout extends Response implements Cloneable {
+public abstract class Timeout extends Response implements Cloneable, Identifiable<Identifier> {
 
-	private UUID timeoutId;
+	private Identifier timeoutId;
 
 	/**
 	 * Instantiates a new timeout.
@@ -43,7 +47,7 @@ public abstract class Timeout extends Response implements Cloneable {
 	 */
 	protected Timeout(ScheduleTimeout request) {
 		super(request);
-		timeoutId = UUID.randomUUID();
+		timeoutId = Kompics.getIdentifierFactory().newId();
 	}
 
 	/**
@@ -54,7 +58,7 @@ public abstract class Timeout extends Response implements Cloneable {
 	 */
 	protected Timeout(SchedulePeriodicTimeout request) {
 		super(request);
-		timeoutId = UUID.randomUUID();
+		timeoutId = Kompics.getIdentifierFactory().newId();
 	}
 
 	/**
@@ -62,9 +66,21 @@ public abstract class Timeout extends Response implements Cloneable {
 	 * 
 	 * @return the timeout id
 	 */
-	public final UUID getTimeoutId() {
+	@Override
+	public final Identifier getId() {
 		return timeoutId;
 	}
+
+	/**
+	 * Gets the timeout id as a UUID, for code that predates {@link #getId()}.
+	 * 
+	 * @return the timeout id
+	 * @throws IllegalArgumentException
+	 *             if the configured identifier factory is not UUID based
+	 */
+	public final UUID getTimeoutId() {
+		return UUIDIdentifier.toUUID(timeoutId);
+	}
 	
 	/* (non-Javadoc)
 	 * @see se.sics.kompics.Response#clone()
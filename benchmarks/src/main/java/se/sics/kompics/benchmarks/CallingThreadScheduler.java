@@ -0,0 +1,55 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import se.sics.kompics.Component;
+import se.sics.kompics.Scheduler;
+
+/**
+ * Executes components directly on the thread that schedules them.
+ * <p>
+ * This takes thread hand-offs out of the picture, so single threaded
+ * benchmarks measure only the cost of the runtime itself.
+ * Nested triggers execute recursively, so only use it for shallow
+ * component graphs.
+ */
+public class CallingThreadScheduler extends Scheduler {
+
+    @Override
+    public void schedule(Component c, int w) {
+        executeComponent(c, w);
+    }
+
+    @Override
+    public void proceed() {
+        // Do nothing
+    }
+
+    @Override
+    public void shutdown() {
+        // Do nothing
+    }
+
+    @Override
+    public void asyncShutdown() {
+        // Do nothing
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.ChannelCore;
+import se.sics.kompics.ChannelSelector;
+import se.sics.kompics.ChannelSelectorSet;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Port;
+
+/**
+ * Measures {@code ChannelSelectorSet.get} with a varying number of
+ * selector-connected channels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChannelSelectorBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int channels;
+
+    private ChannelSelectorSet set;
+    private BenchEvent hit;
+    private BenchEvent.Sub subHit;
+    private BenchEvent miss;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        set = new ChannelSelectorSet();
+        for (int i = 0; i < channels; i++) {
+            set.addChannelSelector(new NullChannel(), new TargetSelector(i));
+        }
+        hit = new BenchEvent(channels / 2);
+        subHit = new BenchEvent.Sub(channels / 2);
+        miss = new BenchEvent(-1);
+    }
+
+    @Benchmark
+    public Object get() {
+        return set.get(hit);
+    }
+
+    @Benchmark
+    public Object getSubtype() {
+        return set.get(subHit);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        return set.get(miss);
+    }
+
+    public static class TargetSelector extends ChannelSelector<BenchEvent, Integer> {
+
+        public TargetSelector(int target) {
+            super(BenchEvent.class, target, true);
+        }
+
+        @Override
+        public Integer getValue(BenchEvent event) {
+            return event.target;
+        }
+    }
+
+    static class NullChannel implements ChannelCore<BenchPort> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<BenchPort> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<BenchPort> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+            // Do nothing
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+            // Do nothing
+        }
+
+        @Override
+        public void disconnect() {
+            // Do nothing
+        }
+
+        @Override
+        public BenchPort getPortType() {
+            return null;
+        }
+    }
+}
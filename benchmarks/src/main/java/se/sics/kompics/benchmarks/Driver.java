@@ -0,0 +1,45 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Positive;
+
+/**
+ * Root component that owns a {@link Sink} and triggers events on it on
+ * behalf of the benchmark thread.
+ */
+public class Driver extends ComponentDefinition {
+
+    final Component sink;
+    private final Positive<BenchPort> port;
+
+    public Driver(Sink.Init init) {
+        sink = create(Sink.class, init);
+        port = sink.getPositive(BenchPort.class);
+    }
+
+    public void send(KompicsEvent event) {
+        trigger(event, port);
+    }
+}
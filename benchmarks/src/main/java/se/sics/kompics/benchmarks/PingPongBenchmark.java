@@ -0,0 +1,192 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Negative;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.Start;
+import se.sics.kompics.scheduler.ElasticScheduler;
+import se.sics.kompics.scheduler.ForkJoinScheduler;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
+/**
+ * Ping-pong between two components under each {@link Scheduler}
+ * implementation.
+ * <p>
+ * {@link #roundTrip()} measures a single request/reply cycle as seen from
+ * outside the runtime, {@link #burst()} measures back-to-back exchanges
+ * that never leave the runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PingPongBenchmark {
+
+    public static final int BURST = 1000;
+    private static final BenchEvent PING = new BenchEvent(1);
+
+    static volatile Pinger pinger;
+    static volatile CountDownLatch started;
+
+    @Param({"ForkJoin", "ThreadPool", "WorkStealing", "Elastic"})
+    public String scheduler;
+
+    @Param({"2"})
+    public int workers;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        started = new CountDownLatch(1);
+        Kompics.setScheduler(createScheduler(scheduler, workers));
+        Kompics.createAndStart(PingPongRoot.class, workers);
+        if (!started.await(Kompics.SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Ping-pong components did not start");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void roundTrip() throws InterruptedException {
+        exchange(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        exchange(BURST);
+    }
+
+    private static void exchange(int rounds) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        pinger.run(rounds, done);
+        done.await();
+    }
+
+    static Scheduler createScheduler(String name, int workers) {
+        switch (name) {
+            case "ForkJoin":
+                return new ForkJoinScheduler(workers);
+            case "ThreadPool":
+                return new ThreadPoolScheduler(workers);
+            case "WorkStealing":
+                return new WorkStealingScheduler(workers);
+            case "Elastic":
+                return new ElasticScheduler(workers);
+            default:
+                throw new IllegalArgumentException("Unknown scheduler: " + name);
+        }
+    }
+
+    public static class PingPongRoot extends ComponentDefinition {
+
+        public PingPongRoot() {
+            Component pi = create(Pinger.class, Init.NONE);
+            Component po = create(Ponger.class, Init.NONE);
+            connect(po.getPositive(BenchPort.class), pi.getNegative(BenchPort.class));
+            pinger = (Pinger) pi.getComponent();
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        final Positive<BenchPort> port = requires(BenchPort.class);
+        private int remaining;
+        private CountDownLatch done;
+
+        public Pinger() {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, port);
+        }
+
+        void run(int rounds, CountDownLatch done) {
+            this.remaining = rounds;
+            this.done = done;
+            trigger(PING, port);
+        }
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                started.countDown();
+            }
+        };
+        Handler<BenchEvent> pongHandler = new Handler<BenchEvent>() {
+
+            @Override
+            public void handle(BenchEvent event) {
+                remaining--;
+                if (remaining > 0) {
+                    trigger(PING, port);
+                } else {
+                    done.countDown();
+                }
+            }
+        };
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        final Negative<BenchPort> port = provides(BenchPort.class);
+
+        public Ponger() {
+            subscribe(pingHandler, port);
+        }
+
+        Handler<BenchEvent> pingHandler = new Handler<BenchEvent>() {
+
+            @Override
+            public void handle(BenchEvent event) {
+                trigger(event, port);
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import com.google.common.base.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.ControlPort;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.PortCore;
+import se.sics.kompics.Start;
+import se.sics.kompics.config.ConfigUpdate;
+
+/**
+ * Measures a single event travelling
+ * {@code JavaPort.doTrigger -> deliver -> ComponentCore.eventReceived}
+ * and then being executed by the receiving component.
+ * <p>
+ * Everything runs on the benchmark thread via the
+ * {@link CallingThreadScheduler}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PortPipelineBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int handlers;
+
+    private Driver driver;
+    private Sink sink;
+    private BenchEvent event;
+    private BenchEvent.Sub subEvent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Kompics.setScheduler(new CallingThreadScheduler());
+        Optional<ConfigUpdate> noUpdate = Optional.absent();
+        ComponentCore.childUpdate.set(noUpdate);
+        driver = new Driver(new Sink.Init(handlers));
+        sink = (Sink) driver.sink.getComponent();
+        ComponentCore core = driver.getComponentCore();
+        ((PortCore<ControlPort>) core.getControl()).doTrigger(Start.event, 0, core);
+        event = new BenchEvent(1);
+        subEvent = new BenchEvent.Sub(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Kompics.setScheduler(null);
+    }
+
+    @Benchmark
+    public long trigger() {
+        driver.send(event);
+        return sink.handled;
+    }
+
+    @Benchmark
+    public long triggerSubtype() {
+        driver.send(subEvent);
+        return sink.handled;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import com.google.common.base.Optional;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.network.netty.NettyAddress;
+import se.sics.kompics.network.netty.serialization.Serializers;
+
+/**
+ * Measures {@code Serializers.toBinary} and {@code Serializers.fromBinary}
+ * for raw byte payloads and addresses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    private static final Optional<Object> NO_HINT = Optional.absent();
+
+    @Param({"16", "1024", "16384"})
+    public int payloadSize;
+
+    private byte[] payload;
+    private NettyAddress address;
+    private ByteBuf buf;
+    private ByteBuf encodedPayload;
+    private ByteBuf encodedAddress;
+
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        address = new NettyAddress(InetAddress.getByName("127.0.0.1"), 45678);
+        buf = PooledByteBufAllocator.DEFAULT.directBuffer(2 * payloadSize + 64);
+        encodedPayload = PooledByteBufAllocator.DEFAULT.directBuffer(2 * payloadSize + 64);
+        Serializers.toBinary(payload, encodedPayload);
+        encodedAddress = PooledByteBufAllocator.DEFAULT.directBuffer(64);
+        Serializers.toBinary(address, encodedAddress);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buf.release();
+        encodedPayload.release();
+        encodedAddress.release();
+    }
+
+    @Benchmark
+    public ByteBuf toBinaryBytes() {
+        buf.clear();
+        Serializers.toBinary(payload, buf);
+        return buf;
+    }
+
+    @Benchmark
+    public Object fromBinaryBytes() {
+        encodedPayload.readerIndex(0);
+        return Serializers.fromBinary(encodedPayload, NO_HINT);
+    }
+
+    @Benchmark
+    public ByteBuf toBinaryAddress() {
+        buf.clear();
+        Serializers.toBinary(address, buf);
+        return buf;
+    }
+
+    @Benchmark
+    public Object fromBinaryAddress() {
+        encodedAddress.readerIndex(0);
+        return Serializers.fromBinary(encodedAddress, NO_HINT);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Negative;
+
+/**
+ * Provides {@link BenchPort} and subscribes a configurable number of
+ * handlers to {@link BenchEvent}.
+ */
+public class Sink extends ComponentDefinition {
+
+    final Negative<BenchPort> port = provides(BenchPort.class);
+    long handled = 0;
+
+    public Sink(Init init) {
+        for (int i = 0; i < init.handlers; i++) {
+            subscribe(new Handler<BenchEvent>() {
+
+                @Override
+                public void handle(BenchEvent event) {
+                    handled += event.target;
+                }
+            }, port);
+        }
+    }
+
+    public static class Init extends se.sics.kompics.Init<Sink> {
+
+        public final int handlers;
+
+        public Init(int handlers) {
+            this.handlers = handlers;
+        }
+    }
+}
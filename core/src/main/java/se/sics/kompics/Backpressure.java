@@ -0,0 +1,63 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * Sent to the control ports of the producers of a port when its queue
+ * crosses the high or low watermark of its {@link QueuePolicy}.
+ * <p>
+ * Producers are the components triggering into the port through channels
+ * of this package, including the ones passing a port through for a child.
+ * They are released, too, when they are disconnected from the port or its
+ * owner is destroyed. Components that feed events from outside of Kompics,
+ * e.g. a network component, should stop reading while any of their
+ * consumers is {@link #engaged}.
+ */
+public final class Backpressure implements KompicsEvent {
+
+    /**
+     * The component whose queue crossed the watermark.
+     */
+    public final Component component;
+    public final PortType portType;
+    /**
+     * True if the high watermark was reached, false if the queue drained to
+     * the low watermark again.
+     */
+    public final boolean engaged;
+    /**
+     * The queue length when the watermark was crossed.
+     */
+    public final int queued;
+
+    Backpressure(Component component, PortType portType, boolean engaged, int queued) {
+        this.component = component;
+        this.portType = portType;
+        this.engaged = engaged;
+        this.queued = queued;
+    }
+
+    @Override
+    public String toString() {
+        return "Backpressure(" + (engaged ? "engaged" : "released") + ", queued=" + queued
+                + ", port=" + portType.getClass().getName() + ")";
+    }
+}
@@ -21,212 +21,286 @@
 package se.sics.kompics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The channels connected to a port through a {@link ChannelSelector}.
+ * <p>
+ * Adding and removing channels is not thread-safe and replaces an immutable
+ * index (event type &rarr; selector types &rarr; value &rarr; channels) with
+ * an updated copy, which shares everything but the affected event type.
+ * {@link #get(KompicsEvent)} only reads that index and may be called
+ * concurrently with other lookups. An event class is selected by the
+ * selectors declared for it and for all of its supertypes. Classes are
+ * resolved on first use and cached in a concurrent map of the index.
+ */
 public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
 
-    private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>> filterTypesByEventType;
-    private HashMap<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>> filtersByFilterType;
-    private HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>> channelsByFilterType;
+    private static final ChannelCore<?>[] NO_CHANNELS = new ChannelCore<?>[0];
 
-    // for removal
-    private HashMap<ChannelCore<?>, ChannelSelector<?, ?>> filtersByChannel;
-    private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>> inheritedFilters;
+    // for removal, in insertion order
+    private final LinkedHashMap<ChannelCore<?>, ChannelSelector<?, ?>> filtersByChannel;
+    private volatile Index index = Index.EMPTY;
 
     public ChannelSelectorSet() {
-        filterTypesByEventType = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>>();
-        filtersByFilterType = new HashMap<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>>();
-        channelsByFilterType = new HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>>();
+        filtersByChannel = new LinkedHashMap<ChannelCore<?>, ChannelSelector<?, ?>>();
+    }
+
+    /**
+     * Creates a copy of {@code other}, which can be modified without
+     * affecting the original.
+     */
+    public ChannelSelectorSet(ChannelSelectorSet other) {
+        filtersByChannel = new LinkedHashMap<ChannelCore<?>, ChannelSelector<?, ?>>(other.filtersByChannel);
+        index = other.index; // immutable
+    }
 
-        filtersByChannel = new HashMap<ChannelCore<?>, ChannelSelector<?, ?>>();
-        inheritedFilters = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>>();
+    public boolean contains(ChannelCore<?> channel) {
+        return filtersByChannel.containsKey(channel);
     }
 
-	// public boolean containsChannel(ChannelCore<?> channel) {
-    // return filtersByChannel.containsKey(channel);
-    // }
-    @SuppressWarnings("unchecked")
     public void addChannelSelector(ChannelCore<?> channel, ChannelSelector<?, ?> filter) {
-        Class<? extends KompicsEvent> eventType = filter.getEventType();
-        Class<? extends ChannelSelector<?, ?>> filterType = (Class<? extends ChannelSelector<?, ?>>) filter
-                .getClass();
-
-        // add filter type if not already there
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
-        if (filterTypes == null) {
-            filterTypes = new ArrayList<Class<? extends ChannelSelector<?, ?>>>();
-            filterTypesByEventType.put(eventType, filterTypes);
-        }
-        if (!filterTypes.contains(filterType)) {
-            filterTypes.add(filterType);
-        }
-
-        // add filter
-        ArrayList<ChannelSelector<?, ?>> filters = filtersByFilterType
-                .get(filterType);
-        if (filters == null) {
-            filters = new ArrayList<ChannelSelector<?, ?>>();
-            filtersByFilterType.put(filterType, filters);
-        }
-        filters.add(filter);
-
-        // add filter value
-        HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                .get(filterType);
-        if (channelsByValue == null) {
-            channelsByValue = new HashMap<Object, ArrayList<ChannelCore<?>>>();
-            channelsByFilterType.put(filterType, channelsByValue);
-        }
-        // add channel
-        ArrayList<ChannelCore<?>> channels = channelsByValue.get(filter
-                .getValue());
-        if (channels == null) {
-            channels = new ArrayList<ChannelCore<?>>();
-            channelsByValue.put(filter.getValue(), channels);
-        }
-        channels.add(channel);
-
-        // keep it in filtersByChannel for removal
-        filtersByChannel.put(channel, filter);
+        ChannelSelector<?, ?> old = filtersByChannel.put(channel, filter);
+        Index idx = index;
+        if (old != null) {
+            idx = idx.without(channel, old);
+        }
+        index = idx.with(channel, filter);
     }
 
-    @SuppressWarnings("unchecked")
     public void removeChannel(ChannelCore<?> channel) {
-        ChannelSelector<?, ?> filter = filtersByChannel.get(channel);
-        if (filter == null) {
-            // not a filtered channel
-            return;
-        }
-
-        filtersByChannel.remove(channel);
-
-        // undo add
-        Class<? extends KompicsEvent> eventType = filter.getEventType();
-        Class<? extends ChannelSelector<?, ?>> filterType = (Class<? extends ChannelSelector<?, ?>>) filter
-                .getClass();
-
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
-
-        // remove filter
-        ArrayList<ChannelSelector<?, ?>> filters = filtersByFilterType
-                .get(filterType);
-        filters.remove(filter);
-        if (filters.isEmpty()) {
-            filtersByFilterType.remove(filterType);
-        }
-
-        // remove channel
-        HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                .get(filterType);
-        ArrayList<ChannelCore<?>> channels = channelsByValue.get(filter
-                .getValue());
-
-        channels.remove(channel);
-        if (channels.isEmpty()) {
-            channelsByValue.remove(filter.getValue());
-            if (channelsByValue.isEmpty()) {
-                channelsByFilterType.remove(filterType);
-                filterTypes.remove(filterType);
-                if (filterTypes.isEmpty()) {
-                    filterTypesByEventType.remove(eventType);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eventType);
-                    if (inheritants != null) {
-                        for (Class<? extends KompicsEvent> eType : inheritants) {
-                            filterTypesByEventType.remove(eType);
-                        }
-                        inheritedFilters.remove(eventType);
-                    }
-                }
-            }
+        ChannelSelector<?, ?> filter = filtersByChannel.remove(channel);
+        if (filter != null) {
+            index = filtersByChannel.isEmpty() ? Index.EMPTY : index.without(channel, filter);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    public ArrayList<ChannelCore<?>> get(KompicsEvent event) {
+    /**
+     * Finds the channels whose selectors select {@code event}.
+     * <p>
+     * @param event the event
+     * @return the distinct selected channels; the array is shared and must
+     * not be modified
+     */
+    public ChannelCore<?>[] get(KompicsEvent event) {
+        SelectorType[] types = index.resolve(event.getClass());
+        if (types.length == 0) {
+            return NO_CHANNELS;
+        }
+        if (types.length == 1) {
+            return types[0].select(event);
+        }
         ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        Class<? extends KompicsEvent> eventType = event.getClass();
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
-
-        if (filterTypes == null) {
-			// no filter types found for this event type. we try to add this
-            // event type since it may be a sub-type of a filtered event type.
-            for (Class<? extends KompicsEvent> eType : filterTypesByEventType.keySet()) {
-                if (eType.isAssignableFrom(eventType)) {
-					// I have a filter for a super-type, so I copy the filter
-                    // structure for the super-type to this event type
-                    filterTypes = new ArrayList<Class<? extends ChannelSelector<?, ?>>>(
-                            filterTypesByEventType.get(eType));
-                    filterTypesByEventType.put(eventType, filterTypes);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eType);
-                    if (inheritants == null) {
-                        inheritants = new ArrayList<Class<? extends KompicsEvent>>();
-                        inheritedFilters.put(eType, inheritants);
-                    }
-                    inheritants.add(eventType);
-                    break;
+        for (int i = 0; i < types.length; i++) {
+            ChannelCore<?>[] chans = types[i].select(event);
+            for (int j = 0; j < chans.length; j++) {
+                if (!result.contains(chans[j])) {
+                    result.add(chans[j]);
                 }
             }
         }
+        return result.toArray(new ChannelCore<?>[result.size()]);
+    }
+
+    public boolean isEmpty() {
+        return filtersByChannel.isEmpty();
+    }
+
+    public void clear() {
+        this.filtersByChannel.clear();
+        this.index = Index.EMPTY;
+    }
+
+    @Override
+    public Iterator<ChannelCore<?>> iterator() {
+        return Collections.unmodifiableSet(filtersByChannel.keySet()).iterator();
+    }
+
+    /**
+     * All channels selected by one selector class, by selected value.
+     * <p>
+     * Immutable, updates return a modified copy.
+     */
+    private static final class SelectorType {
+
+        // selectors of the same class all extract the value the same way
+        private final ChannelSelector<KompicsEvent, ?> sample;
+        private final HashMap<Object, ChannelCore<?>[]> channelsByValue;
+
+        private SelectorType(ChannelSelector<KompicsEvent, ?> sample, HashMap<Object, ChannelCore<?>[]> channelsByValue) {
+            this.sample = sample;
+            this.channelsByValue = channelsByValue;
+        }
 
-        if (filterTypes != null) {
-            // filterTypes may still be null for unfiltered event types
-            for (int i = 0; i < filterTypes.size(); i++) {
-                // for each type of filter
-                ChannelSelector<?, ?> f = filtersByFilterType.get(
-                        filterTypes.get(i)).get(0);
-                Object attValue = ((ChannelSelector<KompicsEvent, ?>) f).getValue(event);
+        @SuppressWarnings("unchecked")
+        static SelectorType of(ChannelCore<?> channel, ChannelSelector<?, ?> filter) {
+            HashMap<Object, ChannelCore<?>[]> channelsByValue = new HashMap<Object, ChannelCore<?>[]>();
+            channelsByValue.put(filter.getValue(), new ChannelCore<?>[]{channel});
+            return new SelectorType((ChannelSelector<KompicsEvent, ?>) filter, channelsByValue);
+        }
 
-                HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                        .get(filterTypes.get(i));
+        boolean isFor(ChannelSelector<?, ?> filter) {
+            return sample.getClass() == filter.getClass();
+        }
 
-                ArrayList<ChannelCore<?>> chans = channelsByValue.get(attValue);
-                if (chans != null) {
-                    result.addAll(chans);
+        SelectorType with(ChannelCore<?> channel, Object value) {
+            HashMap<Object, ChannelCore<?>[]> newChannels = new HashMap<Object, ChannelCore<?>[]>(channelsByValue);
+            ChannelCore<?>[] chans = newChannels.get(value);
+            if (chans == null) {
+                newChannels.put(value, new ChannelCore<?>[]{channel});
+            } else {
+                ChannelCore<?>[] newChans = Arrays.copyOf(chans, chans.length + 1);
+                newChans[chans.length] = channel;
+                newChannels.put(value, newChans);
+            }
+            return new SelectorType(sample, newChannels);
+        }
+
+        /**
+         * @return the copy without {@code channel}, or {@code null} if it
+         * selects no channels any more
+         */
+        SelectorType without(ChannelCore<?> channel, Object value) {
+            ChannelCore<?>[] chans = channelsByValue.get(value);
+            if (chans == null) {
+                return this;
+            }
+            ArrayList<ChannelCore<?>> rest = new ArrayList<ChannelCore<?>>(chans.length);
+            for (int i = 0; i < chans.length; i++) {
+                if (chans[i] != channel) {
+                    rest.add(chans[i]);
+                }
+            }
+            if (rest.size() == chans.length) {
+                return this;
+            }
+            HashMap<Object, ChannelCore<?>[]> newChannels = new HashMap<Object, ChannelCore<?>[]>(channelsByValue);
+            if (rest.isEmpty()) {
+                newChannels.remove(value);
+                if (newChannels.isEmpty()) {
+                    return null;
                 }
+            } else {
+                newChannels.put(value, rest.toArray(new ChannelCore<?>[rest.size()]));
             }
+            return new SelectorType(sample, newChannels);
         }
 
-		// if (result.size() > 0)
-        // System.err.println("SIZE= " + result.size() + " FOR " + event);
-        if (result.size() > 1) {
-            return distinct(result);
+        ChannelCore<?>[] select(KompicsEvent event) {
+            ChannelCore<?>[] chans = channelsByValue.get(sample.getValue(event));
+            return (chans != null) ? chans : NO_CHANNELS;
         }
-        return result;
     }
 
-    private ArrayList<ChannelCore<?>> distinct(ArrayList<ChannelCore<?>> array) {
-        ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        for (int i = 0; i < array.size(); i++) {
-            ChannelCore<?> c = array.get(i);
-            if (!result.contains(c)) {
-                result.add(c);
+    private static final class Index {
+
+        static final Index EMPTY = new Index(new HashMap<Class<?>, SelectorType[]>());
+        private static final SelectorType[] NO_TYPES = new SelectorType[0];
+
+        // selector types by the event type they were declared for
+        private final HashMap<Class<?>, SelectorType[]> byEventType;
+        // selector types by concrete event class, including subtypes
+        private final ConcurrentHashMap<Class<?>, SelectorType[]> resolved;
+
+        private Index(HashMap<Class<?>, SelectorType[]> byEventType) {
+            this.byEventType = byEventType;
+            // not seeded from byEventType: declared types inherit their supertypes' selectors, too
+            this.resolved = new ConcurrentHashMap<Class<?>, SelectorType[]>();
+        }
+
+        Index with(ChannelCore<?> channel, ChannelSelector<?, ?> filter) {
+            SelectorType[] types = byEventType.get(filter.getEventType());
+            if (types == null) {
+                types = NO_TYPES;
+            }
+            SelectorType[] newTypes;
+            int pos = find(types, filter);
+            if (pos < 0) {
+                newTypes = Arrays.copyOf(types, types.length + 1);
+                newTypes[types.length] = SelectorType.of(channel, filter);
+            } else {
+                newTypes = types.clone();
+                newTypes[pos] = types[pos].with(channel, filter.getValue());
             }
+            return replace(filter.getEventType(), newTypes);
         }
-        return result;
-    }
 
-    public boolean isEmpty() {
-        return filtersByChannel.isEmpty();
-    }
+        Index without(ChannelCore<?> channel, ChannelSelector<?, ?> filter) {
+            SelectorType[] types = byEventType.get(filter.getEventType());
+            int pos = (types == null) ? -1 : find(types, filter);
+            if (pos < 0) {
+                return this;
+            }
+            SelectorType updated = types[pos].without(channel, filter.getValue());
+            if (updated == types[pos]) {
+                return this;
+            }
+            SelectorType[] newTypes;
+            if (updated == null) {
+                newTypes = new SelectorType[types.length - 1];
+                System.arraycopy(types, 0, newTypes, 0, pos);
+                System.arraycopy(types, pos + 1, newTypes, pos, types.length - pos - 1);
+            } else {
+                newTypes = types.clone();
+                newTypes[pos] = updated;
+            }
+            return replace(filter.getEventType(), newTypes);
+        }
 
-    public void clear() {
-        this.filterTypesByEventType.clear();
-        this.filtersByChannel.clear();
-        this.filtersByFilterType.clear();
-        this.channelsByFilterType.clear();
-        this.inheritedFilters.clear();
-    }
+        private static int find(SelectorType[] types, ChannelSelector<?, ?> filter) {
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isFor(filter)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
 
-    @Override
-    public Iterator<ChannelCore<?>> iterator() {
-        return filtersByChannel.keySet().iterator();
+        /**
+         * Copies this index with new selector types for {@code eventType}.
+         * Resolutions of classes that are no subtypes of it are carried over.
+         */
+        private Index replace(Class<?> eventType, SelectorType[] types) {
+            HashMap<Class<?>, SelectorType[]> newByEventType = new HashMap<Class<?>, SelectorType[]>(byEventType);
+            if (types.length == 0) {
+                newByEventType.remove(eventType);
+            } else {
+                newByEventType.put(eventType, types);
+            }
+            if (newByEventType.isEmpty()) {
+                return EMPTY;
+            }
+            Index idx = new Index(newByEventType);
+            for (Map.Entry<Class<?>, SelectorType[]> e : resolved.entrySet()) {
+                if (!eventType.isAssignableFrom(e.getKey())) {
+                    idx.resolved.putIfAbsent(e.getKey(), e.getValue());
+                }
+            }
+            return idx;
+        }
+
+        SelectorType[] resolve(Class<?> eventType) {
+            SelectorType[] types = resolved.get(eventType);
+            if ((types == null) && byEventType.isEmpty()) {
+                return NO_TYPES; // don't cache anything in the shared EMPTY index
+            }
+            if (types == null) {
+                ArrayList<SelectorType> inherited = new ArrayList<SelectorType>();
+                for (Map.Entry<Class<?>, SelectorType[]> e : byEventType.entrySet()) {
+                    if (e.getKey().isAssignableFrom(eventType)) {
+                        Collections.addAll(inherited, e.getValue());
+                    }
+                }
+                types = inherited.isEmpty() ? NO_TYPES : inherited.toArray(new SelectorType[inherited.size()]);
+                resolved.putIfAbsent(eventType, types);
+            }
+            return types;
+        }
     }
 }
@@ -26,10 +26,13 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
+import se.sics.kompics.metrics.ComponentMetrics;
 
 /**
  * The <code>ComponentCore</code> class.
@@ -41,7 +44,12 @@ import se.sics.kompics.config.ConfigUpdate;
  */
 public abstract class ComponentCore extends ForkJoinTask<Void> implements Component {
 
-    private final UUID id = UUID.randomUUID();
+    // UUID.randomUUID() goes to SecureRandom for every component, so ids
+    // are a random per-JVM base with a counter mixed into the low bits
+    private static final UUID ID_BASE = UUID.randomUUID();
+    private static final AtomicLong ID_COUNTER = new AtomicLong(0);
+    private final UUID id = new UUID(ID_BASE.getMostSignificantBits(),
+            ID_BASE.getLeastSignificantBits() ^ ID_COUNTER.incrementAndGet());
     protected ComponentCore parent;
     protected Config conf;
     public static final ThreadLocal<ComponentCore> parentThreadLocal = new ThreadLocal();
@@ -56,7 +64,10 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
 
     protected final ReentrantReadWriteLock childrenLock = new ReentrantReadWriteLock();
     protected Scheduler scheduler;
-    protected int wid;
+    protected int wid = -1; // worker that executed the component last, -1 before its first execution
+    ComponentMetrics metrics = ComponentMetrics.NONE;
+    QueuePolicy queuePolicy = QueuePolicy.UNBOUNDED;
+    volatile long pathId = 0; // see RequestPathRegistry
 
     protected abstract Logger logger();
 
@@ -79,6 +90,9 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
             logger().warn("Destroying a component before it has been stopped is not a good idea: {}", child.getComponent());
         }
         child.state = State.DESTROYED;
+        child.metrics.destroyed();
+        releaseDescendants(child);
+        RequestPathRegistry.unregister(child.pathId);
         try {
             childrenLock.writeLock().lock();
 
@@ -88,6 +102,25 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
         }
     }
 
+    /**
+     * Drops the metrics and request path ids of the descendants of a
+     * destroyed component, and those of their channels, which would
+     * otherwise keep the whole subtree reachable.
+     */
+    private static void releaseDescendants(ComponentCore component) {
+        try {
+            component.childrenLock.readLock().lock();
+            for (ComponentCore descendant : component.children) {
+                descendant.cleanPorts();
+                descendant.metrics.destroyed();
+                RequestPathRegistry.unregister(descendant.pathId);
+                releaseDescendants(descendant);
+            }
+        } finally {
+            component.childrenLock.readLock().unlock();
+        }
+    }
+
     protected void destroyTree(ComponentCore child) {
         try {
             childrenLock.writeLock().lock();
@@ -124,6 +157,49 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
 
     abstract void doConfigUpdate(ConfigUpdate update);
 
+    // the config update waiting to be handled, see offerUpdate
+    final AtomicReference<Update> pendingUpdate = new AtomicReference<Update>(null);
+
+    /**
+     * Sends a config update to this component.
+     * <p>
+     * While an update from the same forwarder is still waiting to be handled,
+     * later ones are merged into it instead of being queued as events of
+     * their own, so a burst of updates is applied once per component.
+     * An update that can't be merged is queued on its own, and nothing is
+     * merged into the pending update after it, so updates apply in the order
+     * they were sent.
+     */
+    @SuppressWarnings("unchecked")
+    void offerUpdate(Update update, int wid, ComponentCore sender) {
+        if (!update.coalesced) {
+            update = Update.forwarded(update.update, update.forwarder);
+        }
+        while (true) {
+            Update pending = pendingUpdate.get();
+            if (pending == null) {
+                if (pendingUpdate.compareAndSet(null, update)) {
+                    ((PortCore<ControlPort>) getControl()).doTrigger(update, wid, sender);
+                    return;
+                }
+            } else {
+                Update merged = pending.mergedWith(update);
+                if (merged == null) { // deliver it on its own
+                    // and keep later ones from overtaking it by merging into the pending one
+                    if (!pending.sealed && !pendingUpdate.compareAndSet(pending, pending.sealed())) {
+                        continue;
+                    }
+                    ((PortCore<ControlPort>) getControl()).doTrigger(
+                            new Update(update.update, update.forwarder), wid, sender);
+                    return;
+                }
+                if (pendingUpdate.compareAndSet(pending, merged)) {
+                    return;
+                }
+            }
+        }
+    }
+
     public abstract <T extends ComponentDefinition> Component doCreate(Class<T> definition, Optional<Init<T>> initEvent);
 
     public abstract <T extends ComponentDefinition> Component doCreate(Class<T> definition, Optional<Init<T>> initEvent, Optional<ConfigUpdate> update);
@@ -135,7 +211,12 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
      * === SCHEDULING ===
      */
     public AtomicInteger workCount = new AtomicInteger(0);
-    protected SpinlockQueue<PortCore<?>> readyPorts = new SpinlockQueue<PortCore<?>>();
+    protected SpinlockQueue<PortCore<?>> readyPorts = EventQueueConfig.current().readyQueue();
+    /**
+     * One entry per event on priority ports, if the component uses lanes.
+     * {@link #readyPorts} then holds each data port with queued events once.
+     */
+    protected SpinlockQueue<PortCore<?>> priorityPorts = null;
 
     /**
      * Sets the scheduler.
@@ -146,10 +227,30 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
         this.scheduler = scheduler;
     }
 
+    /**
+     * Gets the id of the worker that executed this component last.
+     * <p>
+     * This is only a hint for schedulers, as it is not read under any
+     * synchronisation.
+     * <p>
+     * @return the worker id
+     */
+    public int getWid() {
+        return wid;
+    }
+
     public void eventReceived(PortCore<?> port, KompicsEvent event, int wid) {
         //System.err.println("Received event " + event + " on " + port.getPortType().portTypeClass + " work " + workCount.get());
-        port.enqueue(event);
-        readyPorts.offer(port);
+        if (!port.offer(event)) {
+            return; // dropped under the port's queue policy
+        }
+        if (priorityPorts == null) {
+            readyPorts.offer(port);
+        } else if (port.isPriority) {
+            priorityPorts.offer(port);
+        } else if (port.ready.compareAndSet(false, true)) {
+            readyPorts.offer(port);
+        }
         int wc = workCount.getAndIncrement();
         if (wc == 0) {
             schedule(wid);
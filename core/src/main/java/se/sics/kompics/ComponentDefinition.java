@@ -365,6 +365,38 @@ public abstract class ComponentDefinition {
         c.disconnect();
     }
 
+    /**
+     * Replaces the queue policy of a port this component handles events on,
+     * i.e. one of its own ports or the outside of a child's port.
+     * <p>
+     * Call it in the constructor, before any events arrive.
+     * <p>
+     * @param port the port
+     * @param policy the new policy
+     */
+    protected final <P extends PortType> void setQueuePolicy(Port<P> port, QueuePolicy policy) {
+        if (!(port instanceof JavaPort) || (port.getOwner() != core)) {
+            throw new ConfigurationException("Can only set the queue policy of ports owned by " + this);
+        }
+        ((JavaPort<P>) port).setQueuePolicy(policy);
+    }
+
+    /**
+     * Sets the share of this component's execution slices a port gets
+     * relative to its other data ports, when the component executes events
+     * in lanes ({@code kompics.execution.lanes}). Each turn, a port may run
+     * up to {@code weight * kompics.execution.portBatch} events.
+     * <p>
+     * @param port a port this component handles events on
+     * @param weight the weight, 1 by default
+     */
+    protected final <P extends PortType> void setPortWeight(Port<P> port, int weight) {
+        if (!(port instanceof JavaPort) || (port.getOwner() != core)) {
+            throw new ConfigurationException("Can only set the weight of ports owned by " + this);
+        }
+        ((JavaPort<P>) port).setWeight(weight);
+    }
+
     protected Negative<ControlPort> control;
     // different sides of the same port...naming is for readability in usage
     protected Negative<LoopbackPort> loopback;
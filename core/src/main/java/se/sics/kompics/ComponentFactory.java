@@ -0,0 +1,111 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instantiates component definitions through constructors that are looked up
+ * once per definition and init type.
+ * <p>
+ * Behaves like {@code Class.newInstance()} and
+ * {@code getConstructor(init.getClass()).newInstance(init)}, including the
+ * access checks, but without the lookup and argument copying on every
+ * {@code create}.
+ */
+final class ComponentFactory {
+
+    private static final MethodType NO_ARG = MethodType.methodType(ComponentDefinition.class);
+    private static final MethodType WITH_INIT = MethodType.methodType(ComponentDefinition.class, Init.class);
+
+    private static final ClassValue<ComponentFactory> FACTORIES = new ClassValue<ComponentFactory>() {
+
+        @Override
+        protected ComponentFactory computeValue(Class<?> definition) {
+            return new ComponentFactory(definition);
+        }
+    };
+
+    private final Class<?> definition;
+    private volatile MethodHandle noArg = null;
+    private final ConcurrentHashMap<Class<?>, MethodHandle> withInit = new ConcurrentHashMap<Class<?>, MethodHandle>(2);
+
+    private ComponentFactory(Class<?> definition) {
+        this.definition = definition;
+    }
+
+    /**
+     * Creates an instance of {@code definition}, using its no-arg
+     * constructor if {@code init} is null or {@link Init.None}.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ComponentDefinition> T create(Class<T> definition, Init<?> init) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        ComponentFactory factory = FACTORIES.get(definition);
+        if ((init == null) || (init instanceof Init.None)) {
+            return (T) factory.newInstance();
+        }
+        return (T) factory.newInstance(init);
+    }
+
+    private ComponentDefinition newInstance() throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        MethodHandle mh = noArg;
+        if (mh == null) {
+            checkInstantiable();
+            mh = MethodHandles.lookup().unreflectConstructor(definition.getDeclaredConstructor()).asType(NO_ARG);
+            noArg = mh;
+        }
+        try {
+            return (ComponentDefinition) mh.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e; // like Class.newInstance()
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private ComponentDefinition newInstance(Init<?> init) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        Class<?> initType = init.getClass();
+        MethodHandle mh = withInit.get(initType);
+        if (mh == null) {
+            checkInstantiable();
+            // look for a constructor that takes a single parameter
+            // and is assigment compatible with the given init event
+            mh = MethodHandles.lookup().unreflectConstructor(definition.getConstructor(initType)).asType(WITH_INIT);
+            withInit.put(initType, mh);
+        }
+        try {
+            return (ComponentDefinition) mh.invokeExact((Init) init);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t); // like Constructor.newInstance()
+        }
+    }
+
+    private void checkInstantiable() throws InstantiationException {
+        if (Modifier.isAbstract(definition.getModifiers())) {
+            throw new InstantiationException(definition.getName());
+        }
+    }
+}
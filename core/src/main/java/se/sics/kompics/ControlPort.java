@@ -38,5 +38,6 @@ public class ControlPort extends PortType {
 		negative(Started.class);
                 negative(Killed.class);
                 negative(Update.class);
+                negative(Backpressure.class);
 	}
 }
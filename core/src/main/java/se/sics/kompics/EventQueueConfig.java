@@ -0,0 +1,133 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import se.sics.kompics.config.Config;
+
+/**
+ * Decides which {@link SpinlockQueue} implementation port event queues and
+ * component ready queues use, based on the {@code kompics.queue} section of
+ * the global {@link Kompics#getConfig() config}, and which port types are
+ * serviced in the priority lane ({@code kompics.execution.priorityPorts}).
+ * <p>
+ * Values are read once per config instance.
+ */
+final class EventQueueConfig {
+
+    static final String TYPE_KEY = "kompics.queue.type";
+    static final String CAPACITY_KEY = "kompics.queue.capacity";
+    static final String GROWABLE_KEY = "kompics.queue.growable";
+    static final String ARRAY_PORTS_KEY = "kompics.queue.arrayPorts";
+    static final String LINKED_PORTS_KEY = "kompics.queue.linkedPorts";
+    static final String PRIORITY_PORTS_KEY = "kompics.execution.priorityPorts";
+
+    static final String ARRAY = "array";
+    static final String LINKED = "linked";
+
+    private static volatile EventQueueConfig current;
+
+    private final Config source;
+    private final boolean arrayByDefault;
+    private final int capacity;
+    private final boolean growable;
+    private final Set<String> arrayPorts;
+    private final Set<String> linkedPorts;
+    private final Set<String> priorityPorts;
+
+    private EventQueueConfig(Config conf) {
+        this.source = conf;
+        String type = conf.getValueOrDefault(TYPE_KEY, ARRAY);
+        if (ARRAY.equalsIgnoreCase(type)) {
+            this.arrayByDefault = true;
+        } else if (LINKED.equalsIgnoreCase(type)) {
+            this.arrayByDefault = false;
+        } else {
+            throw new ConfigurationException("Unknown queue type '" + type + "' for " + TYPE_KEY
+                    + ". Expected '" + ARRAY + "' or '" + LINKED + "'.");
+        }
+        this.capacity = conf.getValueOrDefault(CAPACITY_KEY, 16);
+        this.growable = conf.getValueOrDefault(GROWABLE_KEY, true);
+        this.arrayPorts = portTypes(conf, ARRAY_PORTS_KEY);
+        this.linkedPorts = portTypes(conf, LINKED_PORTS_KEY);
+        this.priorityPorts = portTypes(conf, PRIORITY_PORTS_KEY);
+    }
+
+    private static Set<String> portTypes(Config conf, String key) {
+        List<String> names = conf.getValues(key, String.class);
+        if ((names == null) || names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<String>(names);
+    }
+
+    /**
+     * Forgets the cached values, e.g. after the global config was changed
+     * in place.
+     */
+    static void invalidate() {
+        current = null;
+    }
+
+    static EventQueueConfig current() {
+        Config conf = Kompics.getConfig();
+        EventQueueConfig qc = current;
+        if ((qc == null) || (qc.source != conf)) {
+            qc = new EventQueueConfig(conf);
+            current = qc;
+        }
+        return qc;
+    }
+
+    <E> SpinlockQueue<E> eventQueue(PortType portType) {
+        String name = portType.getClass().getName();
+        boolean array;
+        if (arrayPorts.contains(name)) {
+            array = true;
+        } else if (linkedPorts.contains(name)) {
+            array = false;
+        } else {
+            array = arrayByDefault;
+        }
+        if (array) {
+            return new SpinlockQueue<E>(capacity, growable);
+        }
+        return new SpinlockQueue<E>();
+    }
+
+    boolean isPriority(PortType portType) {
+        return (portType instanceof ControlPort) || priorityPorts.contains(portType.getClass().getName());
+    }
+
+    /**
+     * Ready queues hold one entry per queued event across all of a
+     * component's ports, so they always grow, whatever the port bounds are.
+     */
+    <E> SpinlockQueue<E> readyQueue() {
+        if (arrayByDefault) {
+            return new SpinlockQueue<E>(capacity, true);
+        }
+        return new SpinlockQueue<E>();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * Handler metadata generated at compile time by the
+ * <code>kompics-handler-processor</code> annotation processor.
+ * <p>
+ * For a named handler class <code>pkg.Outer$MyHandler</code> the processor
+ * generates <code>pkg.Outer$MyHandler$$HandlerTypes</code>, which lets the
+ * runtime find the handler's event type without reflecting on its methods.
+ * There is no need to implement this by hand.
+ */
+public interface GeneratedHandlerTypes {
+
+    /**
+     * The suffix the processor appends to the binary name of the handler.
+     */
+    public static final String SUFFIX = "$$HandlerTypes";
+
+    /**
+     * @return the erased parameter types of the handler's
+     * <code>handle</code> method, in declaration order
+     */
+    public Class<?>[] parameterTypes();
+}
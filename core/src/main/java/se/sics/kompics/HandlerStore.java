@@ -20,7 +20,10 @@
  */
 package se.sics.kompics;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -28,17 +31,32 @@ import java.util.HashMap;
  */
 class HandlerStore {
 
-    private HandlerEntry[] handlers = new HandlerEntry[0];
-    private int totalSubscriptions = 0;
-    private MatchedHandlerEntry[] matchers = new MatchedHandlerEntry[0];
-    private int totalMatchers = 0;
+    private static final HandlerList EMPTY = new HandlerList(new Handler[0], 0);
+    private static final MatchedHandler[] NO_MATCHERS = new MatchedHandler[0];
+
+    private volatile HandlerEntry[] handlers = new HandlerEntry[0];
+    /*
+     * Flattened handler arrays per concrete event class. Resolved lazily on
+     * the first delivery of each class and dropped on every
+     * (un)subscription. Writers replace the map after updating the
+     * handlers, so a reader that sees the new map also sees the new
+     * handlers, while resolutions against the old handlers end up in the
+     * discarded map.
+     */
+    private volatile ConcurrentHashMap<Class<?>, HandlerList> dispatch = new ConcurrentHashMap<>();
+    private volatile int generation = 0;
+    /*
+     * Like the handlers, matchers are copy-on-write, so they can be read
+     * without holding the port's lock. Writers are serialised by the port.
+     */
+    private volatile MatchedHandlerEntry[] matchers = new MatchedHandlerEntry[0];
 
     void subscribe(Handler h) {
-        totalSubscriptions++;
         Class<? extends KompicsEvent> eventType = h.getEventType();
         for (int i = 0; i < handlers.length; i++) {
             if (handlers[i].eventType.equals(eventType)) {
                 handlers[i].add(h);
+                invalidate();
                 return;
             }
         }
@@ -48,10 +66,10 @@ class HandlerStore {
         System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
         newHandlers[handlers.length] = he;
         handlers = newHandlers;
+        invalidate();
     }
 
     void subscribe(MatchedHandler h) {
-        totalMatchers++;
         Class<? extends PatternExtractor> eventType = h.getCxtType();
         for (int i = 0; i < matchers.length; i++) {
             if (matchers[i].eventType.equals(eventType)) {
@@ -75,16 +93,17 @@ class HandlerStore {
             if (handlers[i].eventType.equals(eventType)) {
                 if (handlers[i].remove(h)) {
                     found = true;
-                    totalSubscriptions--; // might be wrong if the same handler was subscribed more than once...but how would that make any sense?
                     if (handlers[i].isEmpty()) {
                         empties++;
-                        handlers[i] = null;
                     }
                 }
             }
         }
         if (empties > 0) {
-            removeHandlers(empties);
+            removeEmptyHandlers(empties);
+        }
+        if (found) {
+            invalidate();
         }
         return found;
     }
@@ -97,28 +116,26 @@ class HandlerStore {
             if (matchers[i].eventType.equals(eventType)) {
                 if (matchers[i].remove(h)) {
                     found = true;
-                    totalMatchers--;
                     if (matchers[i].isEmpty()) {
                         empties++;
-                        matchers[i] = null;
                     }
                 }
             }
         }
         if (empties > 0) {
-            removeMatchers(empties);
+            removeEmptyMatchers(empties);
         }
         return found;
     }
 
-    private void removeHandlers(int empties) {
+    private void removeEmptyHandlers(int empties) {
         if (empties >= handlers.length) {
             handlers = new HandlerEntry[0];
         } else {
             HandlerEntry[] newHandlers = new HandlerEntry[handlers.length - empties];
             int i = 0, j = 0;
             while (i < handlers.length) {
-                if (handlers[i] != null) {
+                if (!handlers[i].isEmpty()) {
                     newHandlers[j] = handlers[i];
                     j++;
                 }
@@ -128,14 +145,14 @@ class HandlerStore {
         }
     }
 
-    private void removeMatchers(int empties) {
+    private void removeEmptyMatchers(int empties) {
         if (empties >= matchers.length) {
             matchers = new MatchedHandlerEntry[0];
         } else {
             MatchedHandlerEntry[] newHandlers = new MatchedHandlerEntry[matchers.length - empties];
             int i = 0, j = 0;
             while (i < matchers.length) {
-                if (matchers[i] != null) {
+                if (!matchers[i].isEmpty()) {
                     newHandlers[j] = matchers[i];
                     j++;
                 }
@@ -145,17 +162,28 @@ class HandlerStore {
         }
     }
 
+    private void invalidate() {
+        generation++; // only modified under the port's write lock
+        dispatch = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Changes whenever the handler subscriptions change.
+     */
+    int generation() {
+        return generation;
+    }
+
     boolean hasSubscription(KompicsEvent event) {
-        for (int i = 0; i < handlers.length; i++) {
-            if (handlers[i].eventType.isInstance(event)) {
-                return true;
-            }
+        if (getSubscriptions(event).length > 0) {
+            return true;
         }
         if (event instanceof PatternExtractor) {
             PatternExtractor pevent = (PatternExtractor) event;
-            for (int i = 0; i < matchers.length; i++) {
-                if (matchers[i].eventType.isInstance(pevent)) {
-                    if (matchers[i].matches(pevent)) {
+            MatchedHandlerEntry[] entries = matchers;
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].eventType.isInstance(pevent)) {
+                    if (entries[i].matches(pevent)) {
                         return true;
                     }
                 }
@@ -165,34 +193,56 @@ class HandlerStore {
     }
 
     HandlerList getSubscriptions(KompicsEvent event) {
-        Handler[] subscriptions = new Handler[totalSubscriptions];
-        int j = 0;
-        for (int i = 0; i < handlers.length; i++) {
-            if (handlers[i].eventType.isInstance(event)) {
-                for (int k = 0; k < handlers[i].subscriptions.length; k++) {
-                    subscriptions[j] = handlers[i].subscriptions[k];
-                    j++;
-                }
+        ConcurrentHashMap<Class<?>, HandlerList> table = dispatch;
+        Class<?> eventType = event.getClass();
+        HandlerList hl = table.get(eventType);
+        if (hl == null) {
+            hl = resolve(eventType);
+            table.putIfAbsent(eventType, hl);
+        }
+        return hl;
+    }
+
+    private HandlerList resolve(Class<?> eventType) {
+        HandlerEntry[] entries = handlers;
+        ArrayList<Handler> subscriptions = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].eventType.isAssignableFrom(eventType)) {
+                Collections.addAll(subscriptions, entries[i].subscriptions);
             }
         }
-        return new HandlerList(subscriptions, j);
+        if (subscriptions.isEmpty()) {
+            return EMPTY;
+        }
+        return new HandlerList(subscriptions.toArray(new Handler[subscriptions.size()]), subscriptions.size());
     }
 
     MatchedHandlerList getMatchers(PatternExtractor event) {
-        MatchedHandler[] subscriptions = new MatchedHandler[totalMatchers];
-        int j = 0;
-        for (int i = 0; i < matchers.length; i++) {
-            if (matchers[i].eventType.isInstance(event)) {
-                j = matchers[i].appendMatches(event, subscriptions, j);
+        MatchedHandlerEntry[] entries = matchers;
+        MatchedHandler[] subscriptions = NO_MATCHERS;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].eventType.isInstance(event)) {
+                MatchedHandler[] matches = entries[i].getMatches(event);
+                if (matches == null) {
+                    continue;
+                }
+                if (subscriptions.length == 0) {
+                    subscriptions = matches; // immutable, so it can be shared
+                } else {
+                    MatchedHandler[] joined = new MatchedHandler[subscriptions.length + matches.length];
+                    System.arraycopy(subscriptions, 0, joined, 0, subscriptions.length);
+                    System.arraycopy(matches, 0, joined, subscriptions.length, matches.length);
+                    subscriptions = joined;
+                }
             }
         }
-        return new MatchedHandlerList(subscriptions, j);
+        return new MatchedHandlerList(subscriptions, subscriptions.length);
     }
 
     private static class HandlerEntry {
 
         final Class<? extends KompicsEvent> eventType;
-        private Handler[] subscriptions = new Handler[0];
+        private volatile Handler[] subscriptions = new Handler[0];
 
         HandlerEntry(Class<? extends KompicsEvent> eventType) {
             this.eventType = eventType;
@@ -246,53 +296,55 @@ class HandlerStore {
     private static class MatchedHandlerEntry {
 
         final Class<? extends PatternExtractor> eventType;
-        private final HashMap<Object, MatchedHandler[]> subscriptions = new HashMap<>();
+        // never modified after publication
+        private volatile HashMap<Object, MatchedHandler[]> subscriptions = new HashMap<>();
 
         MatchedHandlerEntry(Class<? extends PatternExtractor> ctxType) {
             this.eventType = ctxType;
         }
 
         void add(MatchedHandler h) {
-            MatchedHandler[] handlers = subscriptions.get(h.pattern());
+            HashMap<Object, MatchedHandler[]> newSubscriptions = new HashMap<>(subscriptions);
+            MatchedHandler[] handlers = newSubscriptions.get(h.pattern());
             if (handlers == null) {
-                handlers = new MatchedHandler[]{h};
-                subscriptions.put(h.pattern(), handlers);
+                newSubscriptions.put(h.pattern(), new MatchedHandler[]{h});
             } else {
                 MatchedHandler[] newHandlers = new MatchedHandler[handlers.length + 1];
                 System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
                 newHandlers[handlers.length] = h;
-                subscriptions.put(h.pattern(), newHandlers);
+                newSubscriptions.put(h.pattern(), newHandlers);
             }
+            subscriptions = newSubscriptions;
         }
 
         boolean remove(MatchedHandler h) {
             MatchedHandler[] handlers = subscriptions.get(h.pattern());
             if (handlers == null) {
                 return false;
-            } else {
-                boolean found = false;
-                if (handlers.length == 1) {
-                    for (int i = 0; i < handlers.length; i++) {
-                        if (handlers[i] == h) {
-                            subscriptions.remove(h.pattern());
-                            return true;
-                        }
-                    }
-                } else {
-                    MatchedHandler[] newHandlers = new MatchedHandler[handlers.length - 1];
-                    int i = 0, j = 0;
-                    while (i < handlers.length) {
-                        if (handlers[i] == h) {
-                            found = true;
-                        } else {
-                            newHandlers[j] = handlers[i];
-                            j++;
-                        }
-                        i++;
-                    }
+            }
+            MatchedHandler[] newHandlers = new MatchedHandler[handlers.length - 1];
+            int i = 0, j = 0;
+            boolean found = false;
+            while (i < handlers.length) {
+                if ((handlers[i] == h) && !found) {
+                    found = true;
+                } else if (j < newHandlers.length) {
+                    newHandlers[j] = handlers[i];
+                    j++;
                 }
-                return found;
+                i++;
+            }
+            if (!found) {
+                return false;
+            }
+            HashMap<Object, MatchedHandler[]> newSubscriptions = new HashMap<>(subscriptions);
+            if (newHandlers.length == 0) {
+                newSubscriptions.remove(h.pattern());
+            } else {
+                newSubscriptions.put(h.pattern(), newHandlers);
             }
+            subscriptions = newSubscriptions;
+            return true;
         }
 
         boolean isEmpty() {
@@ -304,17 +356,9 @@ class HandlerStore {
             return subscriptions.containsKey(p);
         }
 
-        int appendMatches(PatternExtractor pe, MatchedHandler[] matches, int jin) {
+        MatchedHandler[] getMatches(PatternExtractor pe) {
             Object p = pe.extractPattern();
-            int j = jin;
-            MatchedHandler[] handlers = subscriptions.get(p);
-            if (handlers != null) {
-                for (int k = 0; k < handlers.length; k++) {
-                    matches[j] = handlers[k];
-                    j++;
-                }
-            }
-            return j;
+            return subscriptions.get(p);
         }
     }
 
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Resolves the parameter types of the <code>handle</code> method of
+ * {@link Handler} and {@link MatchedHandler} classes that were created
+ * without explicit types.
+ * <p>
+ * Types are resolved once per handler class and cached, so subscribing the
+ * handlers of many instances of the same component doesn't reflect again.
+ * Metadata generated by the handler annotation processor is preferred; the
+ * methods of the handler class are only reflected when there is none.
+ */
+final class HandlerTypes {
+
+    private static final Class<?>[] NONE = new Class<?>[0];
+
+    private static final Comparator<Class<?>> SPECIFIC_FIRST = new Comparator<Class<?>>() {
+        @Override
+        public int compare(Class<?> c1, Class<?> c2) {
+            if (c1.isAssignableFrom(c2)) {
+                return 1;
+            } else if (c2.isAssignableFrom(c1)) {
+                return -1;
+            }
+            return 0;
+        }
+    };
+
+    private static final ClassValue<Class<?>[]> PARAMETERS = new ClassValue<Class<?>[]>() {
+
+        @Override
+        protected Class<?>[] computeValue(Class<?> handlerC) {
+            Class<?>[] generated = generated(handlerC);
+            return (generated != null) ? generated : reflect(handlerC);
+        }
+    };
+
+    private HandlerTypes() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> Class<E> parameter(Class<?> handlerC, int parameter) {
+        Class<?>[] params = PARAMETERS.get(handlerC);
+        if (parameter >= params.length) {
+            throw new RuntimeException("Cannot reflect handler event type for "
+                    + "handler " + handlerC + ". Please specify it "
+                    + "as an argument to the handler constructor.");
+        }
+        return (Class<E>) params[parameter];
+    }
+
+    private static Class<?>[] generated(Class<?> handlerC) {
+        if (handlerC.isAnonymousClass() || handlerC.isLocalClass()) {
+            return null; // the processor can't see these
+        }
+        try {
+            Class<?> typesC = Class.forName(handlerC.getName() + GeneratedHandlerTypes.SUFFIX,
+                    true, handlerC.getClassLoader());
+            if (!GeneratedHandlerTypes.class.isAssignableFrom(typesC)) {
+                return null;
+            }
+            return ((GeneratedHandlerTypes) typesC.newInstance()).parameterTypes();
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } catch (InstantiationException ex) {
+            return null;
+        } catch (IllegalAccessException ex) {
+            return null;
+        } catch (LinkageError ex) {
+            return null; // generated against a different core, reflect instead
+        }
+    }
+
+    private static Class<?>[] reflect(Class<?> handlerC) {
+        Method declared[] = handlerC.getDeclaredMethods();
+        // The JVM in Java 7 wrongly reflects the "handle" methods for some 
+        // handlers: e.g. both `handle(Event e)` and `handle(Message m)` are
+        // reflected as "declared" methods when only the second is actually
+        // declared in the handler. A workaround is to reflect all `handle`
+        // methods and pick the one with the most specific parameter types.
+        // These sorted sets store the parameter types of all reflected
+        // handler methods topologically ordered by their type relationships.
+        TreeSet<Class<?>>[] relevant = null;
+        for (Method m : declared) {
+            if (m.getName().equals("handle")) {
+                Class<?>[] params = m.getParameterTypes();
+                if (relevant == null) {
+                    relevant = newSets(params.length);
+                } else if (relevant.length != params.length) {
+                    continue;
+                }
+                for (int i = 0; i < params.length; i++) {
+                    relevant[i].add(params[i]);
+                }
+            }
+        }
+        if (relevant == null) {
+            return NONE;
+        }
+        Class<?>[] params = new Class<?>[relevant.length];
+        for (int i = 0; i < relevant.length; i++) {
+            params[i] = relevant[i].first();
+        }
+        return params;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TreeSet<Class<?>>[] newSets(int length) {
+        TreeSet<Class<?>>[] sets = new TreeSet[length];
+        for (int i = 0; i < length; i++) {
+            sets[i] = new TreeSet<Class<?>>(SPECIFIC_FIRST);
+        }
+        return sets;
+    }
+}
@@ -21,7 +21,6 @@
 package se.sics.kompics;
 
 import com.google.common.base.Optional;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,8 +33,11 @@ import se.sics.kompics.Fault.ResolveAction;
 import se.sics.kompics.HandlerStore.HandlerList;
 import se.sics.kompics.HandlerStore.MatchedHandlerList;
 import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ConfigKey;
 import se.sics.kompics.config.ConfigUpdate;
 import se.sics.kompics.config.ValueMerger;
+import se.sics.kompics.metrics.Metrics;
+import se.sics.kompics.metrics.PortMetrics;
 
 /**
  * The <code>ComponentCore</code> class.
@@ -47,7 +49,16 @@ import se.sics.kompics.config.ValueMerger;
  */
 public class JavaComponent extends ComponentCore {
 
+    static final String PORT_BATCH_KEY = "kompics.execution.portBatch";
+    static final String LANES_KEY = "kompics.execution.lanes";
+    private static final ConfigKey<Integer> PORT_BATCH = ConfigKey.of(PORT_BATCH_KEY, 1);
+    private static final ConfigKey<Boolean> LANES = ConfigKey.of(LANES_KEY, false);
+
     private final int executeNEvents;
+    private final int portBatch;
+    // the data port whose turn it is and its remaining events, if using lanes
+    private JavaPort<?> currentDataPort = null;
+    private int deficit = 0;
     /*
      * outside ports
      */
@@ -80,6 +91,12 @@ public class JavaComponent extends ComponentCore {
         this.component = componentDefinition;
         parentThreadLocal.set(null);
         executeNEvents = Kompics.maxNumOfExecutedEvents.get();
+        portBatch = Math.max(1, PORT_BATCH.get(conf));
+        queuePolicy = QueuePolicy.fromConfig(conf);
+        if (LANES.get(conf)) {
+            priorityPorts = EventQueueConfig.current().readyQueue();
+        }
+        this.metrics = Metrics.provider().componentCreated(this);
     }
 
 //    public JavaComponent(JavaComponent other) {
@@ -273,17 +290,7 @@ public class JavaComponent extends ComponentCore {
     }
 
     private <T extends ComponentDefinition> T createInstance(Class<T> definition, Optional<Init<T>> initEvent) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
-        if (!initEvent.isPresent()) {
-            return definition.newInstance();
-        }
-        Init<T> init = initEvent.get();
-        if (init instanceof Init.None) {
-            return definition.newInstance();
-        }
-        // look for a constructor that takes a single parameter
-        // and is assigment compatible with the given init event
-        Constructor<T> constr = definition.getConstructor(init.getClass());
-        return constr.newInstance(init);
+        return ComponentFactory.create(definition, initEvent.orNull());
     }
 
     @Override
@@ -329,7 +336,39 @@ public class JavaComponent extends ComponentCore {
                         }
                         return; // Don't run anything else
                     }
-                    readyPorts.remove(nextPort);
+                    if (priorityPorts != null) {
+                        priorityPorts.remove(nextPort);
+                    } else {
+                        readyPorts.remove(nextPort);
+                    }
+                } else if (priorityPorts != null) {
+                    nextPort = (JavaPort<?>) priorityPorts.poll();
+                    if (nextPort == null) {
+                        // deficit round robin over the data ports
+                        nextPort = currentDataPort;
+                        if (nextPort == null) {
+                            nextPort = (JavaPort<?>) readyPorts.poll();
+                            if (nextPort == null) {
+                                wc = workCount.decrementAndGet();
+                                count++;
+                                continue;
+                            }
+                            deficit = portBatch * nextPort.weight;
+                        }
+                        int budget = Math.min(Math.min(deficit, executeNEvents - count), wc);
+                        int executed = executeBatch(nextPort, budget);
+                        wc = workCount.addAndGet(-executed);
+                        count += executed;
+                        deficit -= executed;
+                        if ((deficit > 0) && nextPort.hasEvent()) {
+                            currentDataPort = nextPort; // keeps its turn in the next slice
+                        } else {
+                            currentDataPort = null;
+                            requeueDataPort(nextPort);
+                        }
+                        continue;
+                    }
+                    event = nextPort.pickFirstEvent();
                 } else {
                     //System.err.println("active state " + wid);
                     nextPort = (JavaPort<?>) readyPorts.poll();
@@ -338,6 +377,15 @@ public class JavaComponent extends ComponentCore {
                         count++;
                         continue;
                     }
+                    if (portBatch > 1) {
+                        int budget = Math.min(Math.min(portBatch, executeNEvents - count), wc);
+                        int executed = executeBatch(nextPort, budget);
+                        if (executed > 0) {
+                            wc = workCount.addAndGet(-executed);
+                            count += executed;
+                        } // else it's a left-over entry for events already drained by an earlier batch
+                        continue;
+                    }
                     event = nextPort.pickFirstEvent();
                 }
 
@@ -348,26 +396,7 @@ public class JavaComponent extends ComponentCore {
                     continue;
                 }
 
-                HandlerList handlers = nextPort.getSubscribedHandlers(event);
-
-                if ((handlers != null) && (handlers.length > 0)) {
-                    for (int i = 0; i < handlers.length; i++) {
-                        if (executeEvent(event, handlers.subscriptions[i])) {
-                            break; // state changed don't handle the rest of the event
-                        }
-                    }
-                }
-                if (event instanceof PatternExtractor) {
-                    PatternExtractor pe = (PatternExtractor) event;
-                    MatchedHandlerList mhandlers = nextPort.getSubscribedMatchers(pe);
-                    if ((mhandlers != null) && (mhandlers.length > 0)) {
-                        for (int i = 0; i < mhandlers.length; i++) {
-                            if (executeEvent(pe, mhandlers.subscriptions[i])) {
-                                break; // state changed don't handle the rest of the event
-                            }
-                        }
-                    }
-                }
+                executeEvent(nextPort, event, nextPort.getSubscribedHandlers(event));
                 wc = workCount.decrementAndGet();
                 count++;
             }
@@ -381,12 +410,103 @@ public class JavaComponent extends ComponentCore {
         }
     }
 
+    /**
+     * Drains up to {@code budget} events from a ready port, looking up the
+     * handlers only once for each run of events of the same class.
+     * <p>
+     * The port keeps its other entries in {@code readyPorts}, so a port can
+     * be picked again later without any events left. Since entries are
+     * never removed without their events, there is always at least one
+     * entry per queued event.
+     * <p>
+     * @return the number of events executed
+     */
+    private int executeBatch(JavaPort<?> port, int budget) {
+        State batchState = state;
+        Class<?> runType = null;
+        int runGeneration = 0;
+        HandlerList handlers = null;
+        int executed = 0;
+        while ((executed < budget) && (state == batchState)) {
+            KompicsEvent event = port.pickFirstEvent();
+            if (event == null) {
+                break;
+            }
+            executed++;
+            int generation = port.getSubscriptionGeneration();
+            if ((event.getClass() != runType) || (generation != runGeneration)) {
+                runType = event.getClass();
+                runGeneration = generation;
+                handlers = port.getSubscribedHandlers(event);
+            }
+            if (executeEvent(port, event, handlers)) {
+                break;
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Puts a data port back at the end of the round, unless it has no more
+     * events. Producers only add a port whose flag they flipped, so clearing
+     * the flag before the last check can't lose an event.
+     */
+    private void requeueDataPort(JavaPort<?> port) {
+        if (port.hasEvent()) {
+            readyPorts.offer(port);
+            return;
+        }
+        port.ready.set(false);
+        if (port.hasEvent() && port.ready.compareAndSet(false, true)) {
+            readyPorts.offer(port);
+        }
+    }
+
+    /**
+     * @return whether the component's state changed
+     */
+    private boolean executeEvent(JavaPort<?> port, KompicsEvent event, HandlerList handlers) {
+        PortMetrics pm = port.metrics;
+        long start = pm.startHandling();
+        try {
+            return executeHandlers(port, event, handlers);
+        } finally {
+            pm.handled(start);
+        }
+    }
+
+    private boolean executeHandlers(JavaPort<?> port, KompicsEvent event, HandlerList handlers) {
+        boolean changed = false;
+        if ((handlers != null) && (handlers.length > 0)) {
+            for (int i = 0; i < handlers.length; i++) {
+                if (executeEvent(event, handlers.subscriptions[i])) {
+                    changed = true;
+                    break; // state changed don't handle the rest of the event
+                }
+            }
+        }
+        if (event instanceof PatternExtractor) {
+            PatternExtractor pe = (PatternExtractor) event;
+            MatchedHandlerList mhandlers = port.getSubscribedMatchers(pe);
+            if ((mhandlers != null) && (mhandlers.length > 0)) {
+                for (int i = 0; i < mhandlers.length; i++) {
+                    if (executeEvent(pe, mhandlers.subscriptions[i])) {
+                        changed = true;
+                        break; // state changed don't handle the rest of the event
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
     @SuppressWarnings("unchecked")
     private boolean executeEvent(KompicsEvent event, Handler<?> handler) {
         try {
             ((Handler<KompicsEvent>) handler).handle(event);
             return false; // no state change
         } catch (Throwable throwable) {
+            metrics.faulted();
             logger().error("Handling an event caused a fault! Might be handled later...", throwable);
             markSubtreeAs(State.FAULTY);
             escalateFault(new Fault(throwable, this, event));
@@ -402,6 +522,7 @@ public class JavaComponent extends ComponentCore {
             h.handle(pe.extractValue(), pe);
             return false; // no state change
         } catch (Throwable throwable) {
+            metrics.faulted();
             logger().error("Handling an event caused a fault! Might be handled later...", throwable);
             markSubtreeAs(State.FAULTY);
             escalateFault(new Fault(throwable, this, event));
@@ -463,6 +584,10 @@ public class JavaComponent extends ComponentCore {
 
         @Override
         public void handle(Update event) {
+            if (event.coalesced) {
+                // stands for whatever has been merged in since, see offerUpdate
+                event = pendingUpdate.getAndSet(null);
+            }
             UpdateAction action = JavaComponent.this.component.handleUpdate(event.update);
             switch (action.selfStrategy) {
                 case ORIGINAL:
@@ -482,19 +607,17 @@ public class JavaComponent extends ComponentCore {
             if ((parent != null) && (event.forwarder == parent.id())) { // downwards
                 switch (action.downStrategy) {
                     case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
+                        Update forwardedEvent = Update.forwarded(event.update, id());
                         for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
+                            ((ComponentCore) child).offerUpdate(forwardedEvent, wid, JavaComponent.this);
                         }
                     }
                     break;
                     case MAP: {
                         ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
-                        Update forwardedEvent = new Update(mappedUpdate, id());
+                        Update forwardedEvent = Update.forwarded(mappedUpdate, id());
                         for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
+                            ((ComponentCore) child).offerUpdate(forwardedEvent, wid, JavaComponent.this);
                         }
                     }
                     break;
@@ -504,22 +627,20 @@ public class JavaComponent extends ComponentCore {
             } else { // upwards and to other children
                 switch (action.downStrategy) {
                     case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
+                        Update forwardedEvent = Update.forwarded(event.update, id());
                         for (Component child : children) {
                             if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
+                                ((ComponentCore) child).offerUpdate(forwardedEvent, wid, JavaComponent.this);
                             }
                         }
                     }
                     break;
                     case MAP: {
                         ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
-                        Update forwardedEvent = new Update(mappedUpdate, id());
+                        Update forwardedEvent = Update.forwarded(mappedUpdate, id());
                         for (Component child : children) {
                             if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
+                                ((ComponentCore) child).offerUpdate(forwardedEvent, wid, JavaComponent.this);
                             }
                         }
                     }
@@ -530,17 +651,15 @@ public class JavaComponent extends ComponentCore {
                 if (parent != null) {
                     switch (action.upStrategy) {
                         case ORIGINAL: {
-                            Update forwardedEvent = new Update(event.update, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
+                            Update forwardedEvent = Update.forwarded(event.update, id());
+                            parent.offerUpdate(forwardedEvent, wid, JavaComponent.this);
                         }
                         break;
 
                         case MAP: {
                             ConfigUpdate mappedUpdate = action.upMapper.map(event.update, event.update.modify(id()));
-                            Update forwardedEvent = new Update(mappedUpdate, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
+                            Update forwardedEvent = Update.forwarded(mappedUpdate, id());
+                            parent.offerUpdate(forwardedEvent, wid, JavaComponent.this);
                         }
                         break;
                         case SWALLOW:
@@ -561,16 +680,14 @@ public class JavaComponent extends ComponentCore {
     void doConfigUpdate(ConfigUpdate update) {
         Config.Impl impl = (Config.Impl) conf;
         impl.apply(update, ValueMerger.NONE);
-        Update forwardedEvent = new Update(update, id());
+        Update forwardedEvent = Update.forwarded(update, id());
         // forward down
         for (Component child : children) {
-            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                    forwardedEvent, wid, this);
+            ((ComponentCore) child).offerUpdate(forwardedEvent, wid, this);
         }
         // forward up
         if (parent != null) {
-          ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-            forwardedEvent, wid, this);
+          parent.offerUpdate(forwardedEvent, wid, this);
         }
         component.postUpdate();
     }
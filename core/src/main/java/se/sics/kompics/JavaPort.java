@@ -20,14 +20,17 @@
  */
 package se.sics.kompics;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import se.sics.kompics.HandlerStore.HandlerList;
 import se.sics.kompics.HandlerStore.MatchedHandlerList;
+import se.sics.kompics.metrics.PortMetrics;
 
 /**
  * The <code>PortCore</code> class.
@@ -40,28 +43,53 @@ import se.sics.kompics.HandlerStore.MatchedHandlerList;
 public class JavaPort<P extends PortType> extends PortCore<P> {
 
     private JavaPort<P> pair;
-    private final ReentrantReadWriteLock rwLock;
+    /*
+     * Only taken by writers. Triggers read the copy-on-write routing state
+     * (routes and the handler store) without locking.
+     */
+    private final ReentrantLock writeLock;
     private final HandlerStore handlers = new HandlerStore();
     //private final HashMap<Class<? extends KompicsEvent>, ArrayList<Handler<?>>> subs = new HashMap<>();
     // TODO change this one as well.
     //private final HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>> matchers = new HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>>();
-    private ArrayList<ChannelCore<P>> normalChannels = new ArrayList<ChannelCore<P>>();
-    private ChannelSelectorSet selectorChannels = new ChannelSelectorSet();
-    ;
-    private SpinlockQueue<KompicsEvent> eventQueue = new SpinlockQueue<KompicsEvent>();
+    private volatile Routes<P> routes = Routes.empty();
+    private final SpinlockQueue<KompicsEvent> eventQueue;
+    final PortMetrics metrics;
+    /*
+     * Queue length accounting, only maintained if the policy is tracked.
+     * With DROP_OLDEST producers can't remove events from the single
+     * consumer queue, so they record a pending drop instead, which the
+     * owner applies when it picks the next event.
+     */
+    private volatile QueuePolicy queuePolicy;
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger pendingDrops = new AtomicInteger(0);
+    private final AtomicBoolean backpressured = new AtomicBoolean(false);
+    // set while the queue overflows under FAIL, so only one fault is raised until it drains
+    private final AtomicBoolean overflowing = new AtomicBoolean(false);
+    /*
+     * Share of the owner's execution slices relative to its other data
+     * ports, if it uses lanes.
+     */
+    volatile int weight = 1;
 
     public JavaPort(JavaPort<P> other) {
         this.isPositive = other.isPositive;
         this.portType = other.portType;
-        this.rwLock = other.rwLock;
+        this.writeLock = other.writeLock;
         this.owner = other.owner;
         this.isControlPort = other.isControlPort;
+        this.eventQueue = EventQueueConfig.current().eventQueue(other.portType);
+        this.isPriority = other.isPriority;
+        this.weight = other.weight;
+        this.metrics = metricsFor(owner, portType, isPositive);
+        this.queuePolicy = other.queuePolicy;
     }
 
     JavaPort(boolean positive, P portType, ComponentCore owner) {
         this.isPositive = positive;
         this.portType = portType;
-        this.rwLock = new ReentrantReadWriteLock();
+        this.writeLock = new ReentrantLock();
         // this.subs = new HashMap<Class<? extends KompicsEvent>,
         // ArrayList<Handler<?>>>();
         // this.allChannels = new ArrayList<ChannelCore<P>>();
@@ -70,6 +98,15 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         // this.remotePorts = new HashMap<PortCore<P>, ChannelCore<P>>();
         this.owner = owner;
         this.isControlPort = (portType instanceof ControlPort);
+        EventQueueConfig qc = EventQueueConfig.current();
+        this.eventQueue = qc.eventQueue(portType);
+        this.isPriority = qc.isPriority(portType);
+        this.metrics = metricsFor(owner, portType, positive);
+        this.queuePolicy = ((owner != null) && !isControlPort) ? owner.queuePolicy : QueuePolicy.UNBOUNDED;
+    }
+
+    private static PortMetrics metricsFor(ComponentCore owner, PortType portType, boolean positive) {
+        return (owner != null) ? owner.metrics.port(portType, positive) : PortMetrics.NONE;
     }
 
     @Override
@@ -83,41 +120,65 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void addChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            normalChannels.add(channel);
+            routes = routes.withChannel(channel);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     @Override
     public void addChannel(ChannelCore<P> channel, ChannelSelector<?, ?> selector) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            selectorChannels.addChannelSelector(channel, selector);
+            routes = routes.withSelectorChannel(channel, selector);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     @Override
     public void removeChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            selectorChannels.removeChannel(channel);
-            normalChannels.remove(channel);
+            routes = routes.without(channel);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
+        }
+        if (pair.backpressured.get()) {
+            // producers cut off from the queue of the pair won't see it drain
+            Set<ComponentCore> producers = new HashSet<ComponentCore>();
+            collectProducers(channel, producers, new HashSet<JavaPort<?>>());
+            Set<ComponentCore> remaining = new HashSet<ComponentCore>();
+            collectProducers(remaining, new HashSet<JavaPort<?>>());
+            producers.removeAll(remaining);
+            pair.notifyProducers(producers, false, pair.queued.get());
+        }
+        if (channel.isDestroyed()) {
+            // channels outside this package can't unregister themselves
+            RequestPathRegistry.unregister(channel);
         }
     }
 
-    // delivers the event to the connected channels (called holding read lock)
-    private boolean deliverToChannels(KompicsEvent event, int wid) {
+    // delivers the event to the connected channels of the given routing snapshot
+    private boolean deliverToChannels(KompicsEvent event, int wid, Routes<P> r) {
         //Kompics.logger.debug("{}: trying to deliver {} to channels...", owner.getComponent(), event);
         boolean delivered = false;
-        if (normalChannels != null) {
-            for (ChannelCore<?> channel : normalChannels) {
+        ChannelCore<P>[] normalChannels = r.normalChannels;
+        for (int i = 0; i < normalChannels.length; i++) {
+            ChannelCore<?> channel = normalChannels[i];
+            if (isPositive) {
+                channel.forwardToNegative(event, wid);
+            } else {
+                channel.forwardToPositive(event, wid);
+            }
+            delivered = true;
+        }
+        if (!r.selectorChannels.isEmpty()) {
+            ChannelCore<?>[] channels = r.selectorChannels.get(event);
+            for (int i = 0; i < channels.length; i++) {
+                ChannelCore<?> channel = channels[i];
                 if (isPositive) {
                     channel.forwardToNegative(event, wid);
                 } else {
@@ -126,19 +187,6 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                 delivered = true;
             }
         }
-        if (selectorChannels != null) {
-            ArrayList<ChannelCore<?>> channels = selectorChannels.get(event);
-            if (channels != null) {
-                for (ChannelCore channel : channels) {
-                    if (isPositive) {
-                        channel.forwardToNegative(event, wid);
-                    } else {
-                        channel.forwardToPositive(event, wid);
-                    }
-                    delivered = true;
-                }
-            }
-        }
         //Kompics.logger.debug("{}: {}", owner.getComponent(), delivered ? "succeeded" : "failed");
         return delivered;
     }
@@ -162,11 +210,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -194,11 +242,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + cxtType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -217,11 +265,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -232,7 +280,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setEventType(eventType);
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             if (!handlers.unsubscribe(handler)) {
                 throw new RuntimeException("Handler " + handler
@@ -242,7 +290,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                         + eventType.getCanonicalName() + " events.");
             }
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -253,7 +301,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setCxtType(cxtType);
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             if (!handlers.unsubscribe(handler)) {
                 throw new RuntimeException("Handler " + handler
@@ -263,7 +311,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                         + handler.getCxtType().getCanonicalName() + " events.");
             }
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -271,6 +319,10 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return handlers.getSubscriptions(event);
     }
 
+    int getSubscriptionGeneration() {
+        return handlers.generation();
+    }
+
     MatchedHandlerList getSubscribedMatchers(PatternExtractor event) {
         return handlers.getMatchers(event);
     }
@@ -299,49 +351,49 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     private void deliver(KompicsEvent event, int wid) {
         Class<? extends KompicsEvent> eventType = event.getClass();
         boolean delivered = false;
-
-        rwLock.readLock().lock();
-        try {
-            if (event instanceof Response) {
-                Response response = (Response) event;
-                RequestPathElement pe = response.getTopPathElement();
-                if (pe != null) {
-                    if (pe.isChannel()) {
-                        ChannelCore<?> caller = (ChannelCore<?>) pe
-                                .getChannel();
-                        if (caller != null) {
-                            // caller can be null since it is a WeakReference
-                            delivered = deliverToCallerChannel(event, wid,
-                                    caller);
-                        }
+        Routes<P> r = routes;
+
+        if (event instanceof Response) {
+            Response response = (Response) event;
+            long hop = response.popPathId();
+            if (hop != 0) {
+                // null if the hop was disconnected or destroyed since
+                Object target = RequestPathRegistry.resolve(hop);
+                if (target instanceof ChannelCore) {
+                    ChannelCore<?> caller = (ChannelCore<?>) target;
+                    if (!caller.isDestroyed()) {
+                        delivered = deliverToCallerChannel(event, wid,
+                                caller);
                     } else {
-                        ComponentCore component = pe.getComponent();
-                        if (component == owner) {
-                            delivered = deliverToSubscribers(event, wid,
-                                    eventType);
-                        } else {
-                            throw new RuntimeException(
-                                    "Response path invalid: expected to arrive to component "
-                                    + component.getComponent()
-                                    + " but instead arrived at "
-                                    + owner.getComponent());
-                        }
+                        // channels outside this package don't unregister
+                        // themselves on disconnect
+                        RequestPathRegistry.unregister(hop);
+                    }
+                } else if (target != null) {
+                    ComponentCore component = (ComponentCore) target;
+                    if (component == owner) {
+                        delivered = deliverToSubscribers(event, wid,
+                                eventType);
+                    } else {
+                        throw new RuntimeException(
+                                "Response path invalid: expected to arrive to component "
+                                + component.getComponent()
+                                + " but instead arrived at "
+                                + owner.getComponent());
                     }
-                } else {
-                    // response event has arrived to request origin and was
-                    // triggered further. We treat it as a regular event
-                    delivered = deliverToSubscribers(event, wid, eventType);
-                    delivered |= deliverToChannels(event, wid);
                 }
-            } else if (event instanceof Direct.Response) {
-                delivered = deliverToSubscribers(event, wid, eventType);
             } else {
-                // event is not a response event
+                // response event has arrived to request origin and was
+                // triggered further. We treat it as a regular event
                 delivered = deliverToSubscribers(event, wid, eventType);
-                delivered |= deliverToChannels(event, wid);
+                delivered |= deliverToChannels(event, wid, r);
             }
-        } finally {
-            rwLock.readLock().unlock();
+        } else if (event instanceof Direct.Response) {
+            delivered = deliverToSubscribers(event, wid, eventType);
+        } else {
+            // event is not a response event
+            delivered = deliverToSubscribers(event, wid, eventType);
+            delivered |= deliverToChannels(event, wid, r);
         }
 
         if (!delivered) {
@@ -374,7 +426,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     }
 
     // delivers this response event to the channel through which the
-    // corresponding request event came (called holding read lock)
+    // corresponding request event came
     private boolean deliverToCallerChannel(KompicsEvent event, int wid,
             ChannelCore<?> caller) {
         // Kompics.logger.debug("Caller +{}-{} in {} fwd {}", new Object[] {
@@ -394,7 +446,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return true;
     }
 
-    // deliver event to the local component (called holding read lock)
+    // deliver event to the local component
     private boolean deliverToSubscribers(KompicsEvent event, int wid,
             Class<? extends KompicsEvent> eventType) {
         //Kompics.logger.debug("{}: trying to deliver {} to subscribers...", owner, event);
@@ -413,63 +465,172 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void enqueue(KompicsEvent event) {
-        eventQueue.offer(event);
+        offer(event);
+    }
+
+    /**
+     * Queues an event for the owner, applying the port's
+     * {@link QueuePolicy}.
+     */
+    @Override
+    public boolean offer(KompicsEvent event) {
+        QueuePolicy policy = queuePolicy;
+        if (!policy.isTracked()) {
+            addToQueue(event);
+            metrics.enqueued();
+            return true;
+        }
+        int size = queued.incrementAndGet();
+        if (policy.isEnforced() && (size > policy.bound)) {
+            queued.decrementAndGet();
+            switch (policy.overflow) {
+                case DROP_NEWEST:
+                    metrics.dropped();
+                    return false;
+                case DROP_OLDEST:
+                    // offer first, so the owner never drops more events than are queued
+                    addToQueue(event);
+                    pendingDrops.incrementAndGet();
+                    metrics.enqueued();
+                    metrics.dropped();
+                    return false;
+                default:
+                    // not thrown at the producer, which may not even be a component
+                    metrics.dropped();
+                    if (overflowing.compareAndSet(false, true)) {
+                        owner.escalateFault(new Fault(new KompicsException("Event queue of "
+                                + (isPositive ? "positive " : "negative ") + portType.getClass().getCanonicalName()
+                                + " reached its bound of " + policy.bound + ". Dropping " + event), owner, event));
+                    }
+                    return false;
+            }
+        }
+        try {
+            addToQueue(event);
+        } catch (KompicsException ex) {
+            queued.decrementAndGet();
+            throw ex;
+        }
+        metrics.enqueued();
+        if ((policy.highWatermark > 0) && (size >= policy.highWatermark) && backpressured.compareAndSet(false, true)) {
+            signal(true, size);
+        }
+        return true;
+    }
+
+    private void addToQueue(KompicsEvent event) {
+        if (!eventQueue.offer(event)) {
+            throw new KompicsException("Event queue of " + (isPositive ? "positive " : "negative ")
+                    + portType.getClass().getCanonicalName() + " is full. Dropping " + event);
+        }
     }
 
     KompicsEvent pickFirstEvent() {
-        return eventQueue.poll();
+        KompicsEvent event = eventQueue.poll();
+        if ((event == null) || !queuePolicy.isTracked()) {
+            return event;
+        }
+        int drops;
+        while ((event != null) && ((drops = pendingDrops.get()) > 0)) {
+            if (pendingDrops.compareAndSet(drops, drops - 1)) {
+                event = eventQueue.poll();
+            }
+        }
+        if (event != null) {
+            int size = queued.decrementAndGet();
+            if ((size == 0) && overflowing.get()) {
+                overflowing.set(false);
+            }
+            if (backpressured.get() && (size <= queuePolicy.lowWatermark) && backpressured.compareAndSet(true, false)) {
+                signal(false, size);
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Sends {@link Backpressure} to the control ports of the producers,
+     * which are on the other side of the pair.
+     */
+    private void signal(boolean engaged, int size) {
+        Set<ComponentCore> producers = new HashSet<ComponentCore>();
+        pair.collectProducers(producers, new HashSet<JavaPort<?>>());
+        notifyProducers(producers, engaged, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyProducers(Set<ComponentCore> producers, boolean engaged, int size) {
+        for (ComponentCore producer : producers) {
+            ((PortCore<ControlPort>) producer.getControl()).doTrigger(
+                    new Backpressure(owner, portType, engaged, size), owner.wid, owner);
+        }
+    }
+
+    /*
+     * Collects the components that trigger events into the pair of this
+     * port through its channels, following the ports their parents only
+     * pass on. Channels from outside this package don't expose their other
+     * end, so producers behind them are not found.
+     */
+    private void collectProducers(Set<ComponentCore> producers, Set<JavaPort<?>> visited) {
+        if (visited.add(this)) {
+            collectProducers(routes, producers, visited);
+        }
+    }
+
+    private void collectProducers(Routes<P> r, Set<ComponentCore> producers, Set<JavaPort<?>> visited) {
+        for (ChannelCore<P> channel : r.normalChannels) {
+            collectProducers(channel, producers, visited);
+        }
+        for (ChannelCore<?> channel : r.selectorChannels) {
+            collectProducers(channel, producers, visited);
+        }
+    }
+
+    private void collectProducers(ChannelCore<?> channel, Set<ComponentCore> producers, Set<JavaPort<?>> visited) {
+        if (!(channel instanceof SimpleChannel)) {
+            return;
+        }
+        SimpleChannel<?> sc = (SimpleChannel<?>) channel;
+        PortCore<?> end = (sc.positivePort == this) ? sc.negativePort : sc.positivePort;
+        if (!(end instanceof JavaPort)) {
+            return;
+        }
+        JavaPort<?> inner = ((JavaPort<?>) end).pair;
+        if (inner.owner != null) {
+            producers.add(inner.owner);
+        }
+        inner.collectProducers(producers, visited);
+    }
+
+    /**
+     * Replaces the queue policy. Should be called before events arrive,
+     * since queue lengths are only counted while the policy needs them.
+     */
+    void setQueuePolicy(QueuePolicy policy) {
+        if (isControlPort) {
+            throw new ConfigurationException("Control port queues can't be bounded");
+        }
+        this.queuePolicy = policy;
+    }
+
+    QueuePolicy getQueuePolicy() {
+        return queuePolicy;
+    }
+
+    void setWeight(int weight) {
+        if (weight < 1) {
+            throw new ConfigurationException("Port weights must be positive, but got " + weight);
+        }
+        this.weight = weight;
     }
 
     boolean hasEvent() {
         return !eventQueue.isEmpty();
     }
 
-    @SuppressWarnings("unchecked")
     private <E extends KompicsEvent> Class<E> reflectEventType(Class handlerC, int parameter) {
-        Class<E> eventType = null;
-        try {
-            Method declared[] = handlerC.getDeclaredMethods();
-            // The JVM in Java 7 wrongly reflects the "handle" methods for some 
-            // handlers: e.g. both `handle(Event e)` and `handle(Message m)` are
-            // reflected as "declared" methods when only the second is actually
-            // declared in the handler. A workaround is to reflect all `handle`
-            // methods and pick the one with the most specific event type.
-            // This sorted set stores the event types of all reflected handler
-            // methods topologically ordered by the event type relationships.
-            TreeSet<Class<? extends KompicsEvent>> relevant
-                    = new TreeSet<Class<? extends KompicsEvent>>(
-                            new Comparator<Class<? extends KompicsEvent>>() {
-                                @Override
-                                public int compare(Class<? extends KompicsEvent> e1,
-                                        Class<? extends KompicsEvent> e2) {
-                                    if (e1.isAssignableFrom(e2)) {
-                                        return 1;
-                                    } else if (e2.isAssignableFrom(e1)) {
-                                        return -1;
-                                    }
-                                    return 0;
-                                }
-                            });
-            for (Method m : declared) {
-                if (m.getName().equals("handle")) {
-                    relevant.add(
-                            (Class<? extends KompicsEvent>) m.getParameterTypes()[parameter]);
-                }
-            }
-            eventType = (Class<E>) relevant.first();
-        } catch (Exception e) {
-            throw new RuntimeException("Cannot reflect handler event type for "
-                    + "handler " + handlerC + ". Please specify it "
-                    + "as an argument to the handler constructor.", e);
-        } finally {
-            if (eventType == null) {
-                throw new RuntimeException(
-                        "Cannot reflect handler event type for handler "
-                        + handlerC + ". Please specify it "
-                        + "as an argument to the handler constructor.");
-            }
-        }
-        return eventType;
+        return HandlerTypes.parameter(handlerC, parameter);
     }
 
     @Override
@@ -484,18 +645,38 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void cleanChannels() {
-        rwLock.writeLock().lock();
+        Routes<P> r;
+        writeLock.lock();
         try {
-            selectorChannels.clear();
-            normalChannels.clear();
+            r = routes;
+            routes = Routes.empty();
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
+        }
+        if (pair.backpressured.compareAndSet(true, false)) {
+            // the owner of the pair is going away, so its queue won't drain
+            Set<ComponentCore> producers = new HashSet<ComponentCore>();
+            Set<JavaPort<?>> visited = new HashSet<JavaPort<?>>();
+            visited.add(this);
+            collectProducers(r, producers, visited);
+            pair.notifyProducers(producers, false, pair.queued.get());
+        }
+        // the owner is being destroyed, so responses can't come back through these
+        for (ChannelCore<P> channel : r.normalChannels) {
+            RequestPathRegistry.unregister(channel);
+        }
+        for (ChannelCore<?> channel : r.selectorChannels) {
+            RequestPathRegistry.unregister(channel);
         }
     }
 
     @Override
     public void cleanEvents() {
         eventQueue.clear();
+        queued.set(0);
+        pendingDrops.set(0);
+        backpressured.set(false);
+        overflowing.set(false);
     }
 
     private void reflectCMHType(ClassMatchedHandler cmh) {
@@ -514,7 +695,8 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     @Override
     public List<Channel<P>> findChannelsTo(PortCore<P> port) {
         List<Channel<P>> channels = new ArrayList<Channel<P>>();
-        for (ChannelCore<P> c : normalChannels) {
+        Routes<P> r = routes;
+        for (ChannelCore<P> c : r.normalChannels) {
             if (this.isPositive) {
                 if (c.hasNegativePort(port)) {
                     channels.add(c);
@@ -525,7 +707,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                 }
             }
         }
-        for (ChannelCore<?> cnt : selectorChannels) {
+        for (ChannelCore<?> cnt : r.selectorChannels) {
             ChannelCore<P> c = (ChannelCore<P>) cnt; // must be right type...just got lost in the ChannelSelector
             if (this.isPositive) {
                 if (c.hasNegativePort(port)) {
@@ -539,4 +721,61 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         }
         return channels;
     }
+
+    /**
+     * Immutable snapshot of the channels connected to a port.
+     * <p>
+     * Writers replace it as a whole, so a trigger sees either all or none of
+     * a concurrent (dis)connect.
+     */
+    static final class Routes<P extends PortType> {
+
+        @SuppressWarnings("rawtypes")
+        private static final Routes EMPTY = new Routes(new ChannelCore[0], new ChannelSelectorSet());
+
+        final ChannelCore<P>[] normalChannels;
+        final ChannelSelectorSet selectorChannels;
+
+        private Routes(ChannelCore<P>[] normalChannels, ChannelSelectorSet selectorChannels) {
+            this.normalChannels = normalChannels;
+            this.selectorChannels = selectorChannels;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <P extends PortType> Routes<P> empty() {
+            return (Routes<P>) EMPTY;
+        }
+
+        Routes<P> withChannel(ChannelCore<P> channel) {
+            ChannelCore<P>[] newChannels = Arrays.copyOf(normalChannels, normalChannels.length + 1);
+            newChannels[normalChannels.length] = channel;
+            return new Routes<P>(newChannels, selectorChannels);
+        }
+
+        Routes<P> withSelectorChannel(ChannelCore<P> channel, ChannelSelector<?, ?> selector) {
+            ChannelSelectorSet newSelectors = new ChannelSelectorSet(selectorChannels);
+            newSelectors.addChannelSelector(channel, selector);
+            return new Routes<P>(normalChannels, newSelectors);
+        }
+
+        Routes<P> without(ChannelCore<P> channel) {
+            ChannelCore<P>[] newChannels = normalChannels;
+            for (int i = 0; i < normalChannels.length; i++) {
+                if (normalChannels[i] == channel) {
+                    newChannels = Arrays.copyOf(normalChannels, normalChannels.length - 1);
+                    System.arraycopy(normalChannels, i + 1, newChannels, i, normalChannels.length - i - 1);
+                    break;
+                }
+            }
+            ChannelSelectorSet newSelectors = selectorChannels;
+            if (newSelectors.contains(channel)) {
+                newSelectors = new ChannelSelectorSet(selectorChannels);
+                newSelectors.removeChannel(channel);
+            }
+            if ((newChannels == normalChannels) && (newSelectors == selectorChannels)) {
+                return this;
+            }
+            return new Routes<P>(newChannels, newSelectors);
+        }
+    }
 }
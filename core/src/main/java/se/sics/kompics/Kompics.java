@@ -20,7 +20,6 @@
  */
 package se.sics.kompics;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
@@ -29,8 +28,16 @@ import se.sics.kompics.Component.State;
 import se.sics.kompics.Fault.ResolveAction;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.TypesafeConfig;
+import se.sics.kompics.metrics.DefaultMetricsProvider;
+import se.sics.kompics.metrics.JmxExporter;
+import se.sics.kompics.metrics.Metrics;
+import se.sics.kompics.metrics.MetricsProvider;
+import se.sics.kompics.scheduler.ElasticScheduler;
 import se.sics.kompics.scheduler.ForkJoinScheduler;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
 import se.sics.kompics.scheduler.WorkStealingScheduler;
+import se.sics.kompics.util.IdentifierFactory;
+import se.sics.kompics.util.SequentialIdentifierFactory;
 
 /**
  * The
@@ -43,6 +50,8 @@ import se.sics.kompics.scheduler.WorkStealingScheduler;
 public final class Kompics {
 
     public static final long SHUTDOWN_TIMEOUT = 5000;
+    public static final String SCHEDULER_TYPE_KEY = "kompics.scheduler.type";
+    public static final String SCHEDULER_SPIN_ROUNDS_KEY = "kompics.scheduler.spinRounds";
     public static Logger logger = LoggerFactory.getLogger("Kompics");
     public static AtomicInteger maxNumOfExecutedEvents = new AtomicInteger(1);
     private static boolean on = false;
@@ -57,6 +66,9 @@ public final class Kompics {
         }
     };
     private static FaultHandler faultHandler = defaultFaultHandler;
+    private static final IdentifierFactory defaultIdentifierFactory = new SequentialIdentifierFactory();
+    // read on every timeout and notified message, so not behind the lock
+    private static volatile IdentifierFactory identifierFactory = defaultIdentifierFactory;
     private static Config config;
 
     public static void setScheduler(Scheduler sched) {
@@ -98,6 +110,38 @@ public final class Kompics {
         }
     }
 
+    /**
+     * Sets the factory for the ids of timeouts, notified messages and other
+     * runtime allocated identifiers.
+     * <p>
+     * The default is a {@link SequentialIdentifierFactory} with a random node
+     * prefix. Use {@link se.sics.kompics.util.UUIDIdentifier#RANDOM} for the
+     * old random UUIDs.
+     * <p>
+     * @param factory the factory to use
+     */
+    public static void setIdentifierFactory(IdentifierFactory factory) {
+        synchronized (obj) {
+            if (on) {
+                throw new RuntimeException("Kompics already created");
+            }
+            identifierFactory = factory;
+        }
+    }
+
+    public static void resetIdentifierFactory() {
+        synchronized (obj) {
+            if (on) {
+                throw new RuntimeException("Kompics already created");
+            }
+            identifierFactory = defaultIdentifierFactory;
+        }
+    }
+
+    public static IdentifierFactory getIdentifierFactory() {
+        return identifierFactory;
+    }
+
     public static void setConfig(Config conf) {
         synchronized (obj) {
             if (on) {
@@ -185,21 +229,14 @@ public final class Kompics {
             on = true;
 
             if (scheduler == null) {
-                // scheduler = new WorkStealingScheduler(workers);
-                scheduler = new ForkJoinScheduler(workers);
-                //scheduler = new ThreadPoolScheduler(workers);
+                scheduler = createScheduler(workers);
             }
+            startMetrics();
 
             Kompics.maxNumOfExecutedEvents.lazySet(maxEventExecuteNumber);
 
             try {
-                ComponentDefinition mainComponent;
-                if (initEvent == Init.NONE) { // NONE instance
-                    mainComponent = main.newInstance();
-                } else {
-                    Constructor<T> constr = main.getConstructor(initEvent.getClass());
-                    mainComponent = constr.newInstance(initEvent);
-                }
+                ComponentDefinition mainComponent = ComponentFactory.create(main, initEvent);
                 mainCore = mainComponent.getComponentCore();
                 mainCore.setScheduler(scheduler);
 
@@ -216,6 +253,47 @@ public final class Kompics {
         }
     }
 
+    private static Scheduler createScheduler(int workers) {
+        Config conf = getConfig();
+        String type = conf.getValueOrDefault(SCHEDULER_TYPE_KEY, "forkjoin");
+        switch (type) {
+            case "forkjoin":
+                return new ForkJoinScheduler(workers);
+            case "workstealing":
+                int spinRounds = conf.getValueOrDefault(SCHEDULER_SPIN_ROUNDS_KEY,
+                        WorkStealingScheduler.DEFAULT_SPIN_ROUNDS);
+                return new WorkStealingScheduler(workers, spinRounds);
+            case "threadpool":
+                return new ThreadPoolScheduler(workers);
+            case "elastic":
+                int maxThreads = conf.getValueOrDefault("kompics.scheduler.elastic.maxThreads", workers * 16);
+                long blockingThreshold = conf.getValueOrDefault("kompics.scheduler.elastic.blockingThreshold",
+                        ElasticScheduler.DEFAULT_BLOCKING_THRESHOLD);
+                long keepAlive = conf.getValueOrDefault("kompics.scheduler.elastic.keepAlive",
+                        ElasticScheduler.DEFAULT_KEEP_ALIVE);
+                return new ElasticScheduler(workers, Math.max(workers, maxThreads), blockingThreshold, keepAlive);
+            default:
+                throw new ConfigurationException("Unknown scheduler type '" + type
+                        + "' for " + SCHEDULER_TYPE_KEY + ", expected forkjoin, workstealing, threadpool or elastic");
+        }
+    }
+
+    private static void startMetrics() {
+        MetricsProvider metrics = Metrics.provider();
+        metrics.schedulerStarted(scheduler);
+        if (getConfig().getValueOrDefault(Metrics.JMX_KEY, false)) {
+            JmxExporter.register(metrics);
+        }
+    }
+
+    private static void stopMetrics() {
+        if (scheduler != null) {
+            Metrics.provider().schedulerStopped(scheduler);
+        }
+        JmxExporter.unregister();
+        Metrics.reset();
+    }
+
     private Kompics() {
     }
 
@@ -257,6 +335,8 @@ public final class Kompics {
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            stopMetrics();
+            RequestPathRegistry.clear();
             on = false;
             scheduler = null;
             obj.notifyAll();
@@ -268,6 +348,8 @@ public final class Kompics {
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            stopMetrics();
+            RequestPathRegistry.clear();
             on = false;
             scheduler = null;
 
@@ -326,8 +408,18 @@ public final class Kompics {
      * Log stats.
      */
     public static void logStats() {
+        if (scheduler != null) {
+            logger.info("{}: {}", scheduler.getClass().getSimpleName(), scheduler.getStats());
+        }
+        MetricsProvider metrics = Metrics.provider();
+        if (metrics instanceof DefaultMetricsProvider) {
+            ((DefaultMetricsProvider) metrics).logStats();
+        }
         if (scheduler instanceof WorkStealingScheduler) {
             ((WorkStealingScheduler) scheduler).logStats();
         }
+        if (scheduler instanceof ElasticScheduler) {
+            ((ElasticScheduler) scheduler).logStats();
+        }
     }
 }
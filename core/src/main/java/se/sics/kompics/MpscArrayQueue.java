@@ -0,0 +1,239 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, array backed, multi-producer/single-consumer FIFO queue.
+ * <p>
+ * Elements are stored in power-of-two sized chunks. A bounded queue has
+ * exactly one chunk and rejects offers when it is full. A growable queue
+ * closes a full chunk and links a new one of (up to) twice the size, so
+ * offers never fail. Once the consumer has drained a grown chunk, it closes
+ * that chunk in turn and links a new one of the initial size, so a burst
+ * does not pin a large array for the rest of the queue's life.
+ * <p>
+ * {@link #poll()}, {@link #peek()}, {@link #remove(Object)} and
+ * {@link #clear()} must only ever be called by a single thread at a time.
+ * In Kompics that is guaranteed by the component's {@code workCount}.
+ * <p>
+ * @param <E> the element type
+ */
+final class MpscArrayQueue<E> {
+
+    static final int MAX_CHUNK_SIZE = 1 << 16;
+    private static final long CLOSED = 1L << 62;
+    private static final Object REMOVED = new Object();
+
+    private final boolean growable;
+    private final int initialSize;
+    private final AtomicReference<Chunk> tail;
+    private volatile Chunk head;
+
+    MpscArrayQueue(int capacity, boolean growable) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive, but was " + capacity);
+        }
+        this.growable = growable;
+        this.initialSize = roundToPowerOfTwo(capacity);
+        Chunk c = new Chunk(initialSize);
+        this.head = c;
+        this.tail = new AtomicReference<Chunk>(c);
+    }
+
+    private static int roundToPowerOfTwo(int value) {
+        int pow = Integer.highestOneBit(value);
+        if (pow == value) {
+            return value;
+        }
+        return pow << 1;
+    }
+
+    boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            Chunk c = tail.get();
+            long pi = c.producerIndex.get();
+            if ((pi & CLOSED) != 0) {
+                // some other producer is linking the next chunk
+                Chunk next = c.next;
+                if (next != null) {
+                    tail.compareAndSet(c, next);
+                } else {
+                    Thread.yield();
+                }
+                continue;
+            }
+            if (pi - c.consumerIndex >= c.slots.length()) {
+                if (!growable) {
+                    return false;
+                }
+                if (c.producerIndex.compareAndSet(pi, pi | CLOSED)) {
+                    int size = Math.max(c.slots.length(), Math.min(c.slots.length() << 1, MAX_CHUNK_SIZE));
+                    Chunk next = new Chunk(size);
+                    next.slots.lazySet(0, e);
+                    next.producerIndex.lazySet(1);
+                    c.next = next; // publishes the new chunk
+                    tail.compareAndSet(c, next);
+                    return true;
+                }
+                continue;
+            }
+            if (c.producerIndex.compareAndSet(pi, pi + 1)) {
+                c.slots.lazySet((int) pi & c.mask, e);
+                return true;
+            }
+        }
+    }
+
+    E poll() {
+        return next(true);
+    }
+
+    E peek() {
+        return next(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E next(boolean consume) {
+        while (true) {
+            Chunk c = head;
+            long ci = c.consumerIndex;
+            long pi = c.producerIndex.get();
+            if ((pi & ~CLOSED) == ci) {
+                if ((pi & CLOSED) == 0) {
+                    if (consume && (c.slots.length() > initialSize)) {
+                        shrink(c, pi);
+                    }
+                    return null;
+                }
+                // chunk is closed and fully consumed, move on
+                Chunk next;
+                while ((next = c.next) == null) {
+                    Thread.yield();
+                }
+                head = next;
+                continue;
+            }
+            int idx = (int) ci & c.mask;
+            Object o;
+            while ((o = c.slots.get(idx)) == null) {
+                // the slot has been claimed, but not yet written
+                Thread.yield();
+            }
+            if (consume || (o == REMOVED)) {
+                c.slots.lazySet(idx, null);
+                c.consumerIndex = ci + 1;
+            }
+            if (o != REMOVED) {
+                return (E) o;
+            }
+        }
+    }
+
+    /**
+     * Replaces the drained, grown head chunk with one of the initial size.
+     * <p>
+     * Closes the chunk the same way a producer closes a full one, so
+     * producers racing with this either claim a slot first (and the chunk is
+     * kept) or wait for the new chunk to be linked.
+     */
+    private void shrink(Chunk c, long pi) {
+        if (c.producerIndex.compareAndSet(pi, pi | CLOSED)) {
+            Chunk next = new Chunk(initialSize);
+            c.next = next;
+            tail.compareAndSet(c, next);
+            head = next;
+        }
+    }
+
+    /**
+     * Size of the chunk producers currently write to.
+     */
+    int chunkSize() {
+        return tail.get().slots.length();
+    }
+
+    /**
+     * May be called from any thread, but the answer can be outdated by the
+     * time it is returned. Removed elements that have not yet been skipped
+     * by a consumer still count towards the queue not being empty.
+     */
+    boolean isEmpty() {
+        Chunk c = head;
+        while (c != null) {
+            long pi = c.producerIndex.get();
+            if ((pi & ~CLOSED) != c.consumerIndex) {
+                return false;
+            }
+            if ((pi & CLOSED) == 0) {
+                return true;
+            }
+            c = c.next;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the first element that is equal to {@code e}.
+     */
+    boolean remove(E e) {
+        Chunk c = head;
+        while (c != null) {
+            long limit = c.producerIndex.get() & ~CLOSED;
+            for (long i = c.consumerIndex; i < limit; i++) {
+                int idx = (int) i & c.mask;
+                Object o = c.slots.get(idx);
+                if ((o != null) && (o != REMOVED) && o.equals(e)) {
+                    c.slots.set(idx, REMOVED);
+                    return true;
+                }
+            }
+            c = c.next;
+        }
+        return false;
+    }
+
+    void clear() {
+        while (poll() != null) {
+            // drop everything
+        }
+    }
+
+    private static final class Chunk {
+
+        final AtomicReferenceArray<Object> slots;
+        final int mask;
+        final AtomicLong producerIndex = new AtomicLong(0);
+        volatile long consumerIndex = 0;
+        volatile Chunk next = null;
+
+        Chunk(int size) {
+            this.slots = new AtomicReferenceArray<Object>(size);
+            this.mask = size - 1;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package se.sics.kompics;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The <code>PortCore</code> class.
@@ -40,6 +41,18 @@ public abstract class PortCore<P extends PortType> implements Negative<P>, Posit
 
     protected ComponentCore owner;
 
+    /**
+     * Whether the owner services this port in its priority lane, if it
+     * uses lanes at all.
+     */
+    protected boolean isPriority;
+
+    /**
+     * Whether the port is in its owner's round of data ports, if the owner
+     * uses lanes. Only one entry per port is kept there.
+     */
+    final AtomicBoolean ready = new AtomicBoolean(false);
+
     @Override
     public P getPortType() {
         return portType;
@@ -50,6 +63,20 @@ public abstract class PortCore<P extends PortType> implements Negative<P>, Posit
         return owner;
     }
 
+    /**
+     * Queues an event for the owner.
+     * <p>
+     * Ports that may drop events override this to apply their policy.
+     *
+     * @param event the event to queue
+     * @return false if the event doesn't add to the queue length, because it
+     *         or an older event was dropped
+     */
+    public boolean offer(KompicsEvent event) {
+        enqueue(event);
+        return true;
+    }
+
     public abstract void cleanChannels();
 
     public abstract void cleanEvents();
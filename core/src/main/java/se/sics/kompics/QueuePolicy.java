@@ -0,0 +1,177 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ConfigKey;
+
+/**
+ * Bounds the event queue of a port and decides what happens to events
+ * arriving at a full queue.
+ * <p>
+ * The default policy for a component's ports is read from the
+ * {@code kompics.queue} section of its config when it is created, so it can
+ * be set per component with a {@link se.sics.kompics.config.ConfigUpdate}
+ * on {@code create}. Single ports can be changed with
+ * {@link ComponentDefinition#setQueuePolicy(Port, QueuePolicy)}. Control
+ * ports are never bounded.
+ * <p>
+ * Independently of the overflow policy, a {@link Backpressure} event is
+ * sent to the control ports of the producers when the queue length reaches
+ * the high watermark, and another one when it drops back to the low
+ * watermark.
+ */
+public final class QueuePolicy {
+
+    static final String BOUND_KEY = "kompics.queue.bound";
+    static final String OVERFLOW_KEY = "kompics.queue.overflow";
+    static final String HIGH_WATERMARK_KEY = "kompics.queue.highWatermark";
+    static final String LOW_WATERMARK_KEY = "kompics.queue.lowWatermark";
+    // read for every component that is created
+    private static final ConfigKey<Integer> BOUND = ConfigKey.of(BOUND_KEY, 0);
+    private static final ConfigKey<Integer> HIGH_WATERMARK = ConfigKey.of(HIGH_WATERMARK_KEY, 0);
+
+    public static enum Overflow {
+
+        /**
+         * Drop the event and escalate a {@link Fault} of the consuming
+         * component to its parent, once until the queue has drained.
+         */
+        FAIL,
+        /**
+         * Drop the oldest queued event to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the new event.
+         */
+        DROP_NEWEST,
+        /**
+         * Keep queueing and rely on the producers to back off when they
+         * receive {@link Backpressure}. The bound only serves as the default
+         * high watermark.
+         */
+        BACKPRESSURE;
+    }
+
+    public static final QueuePolicy UNBOUNDED = new QueuePolicy(0, Overflow.FAIL, 0, 0);
+
+    /**
+     * Maximum number of queued events, or 0 for none.
+     */
+    public final int bound;
+    public final Overflow overflow;
+    /**
+     * Queue length at which producers are asked to back off, or 0 for none.
+     */
+    public final int highWatermark;
+    /**
+     * Queue length at which producers may resume.
+     */
+    public final int lowWatermark;
+
+    private QueuePolicy(int bound, Overflow overflow, int highWatermark, int lowWatermark) {
+        this.bound = bound;
+        this.overflow = overflow;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * Creates a bounded policy. With {@link Overflow#BACKPRESSURE} the high
+     * watermark is the bound, otherwise there are no watermarks.
+     * <p>
+     * @param bound the maximum number of queued events
+     * @param overflow what to do with events arriving at a full queue
+     * @return the policy
+     */
+    public static QueuePolicy bounded(int bound, Overflow overflow) {
+        if (bound < 1) {
+            throw new IllegalArgumentException("Queue bound must be positive, but was " + bound);
+        }
+        if (overflow == Overflow.BACKPRESSURE) {
+            return new QueuePolicy(bound, overflow, bound, bound / 2);
+        }
+        return new QueuePolicy(bound, overflow, 0, 0);
+    }
+
+    /**
+     * @param high the queue length at which producers are asked to back off
+     * @param low the queue length at which producers may resume
+     * @return a copy of this policy with the given watermarks
+     */
+    public QueuePolicy withWatermarks(int high, int low) {
+        if ((high < 1) || (low < 0) || (low >= high)) {
+            throw new IllegalArgumentException("Expected 0 <= low < high, but got low=" + low + ", high=" + high);
+        }
+        if ((bound > 0) && (overflow != Overflow.BACKPRESSURE) && (high > bound)) {
+            throw new IllegalArgumentException("High watermark " + high + " can never be reached with bound " + bound);
+        }
+        return new QueuePolicy(bound, overflow, high, low);
+    }
+
+    /**
+     * @return whether queue lengths must be counted under this policy
+     */
+    boolean isTracked() {
+        return (bound > 0) || (highWatermark > 0);
+    }
+
+    /**
+     * @return whether new events are rejected or dropped once {@link #bound}
+     * is reached
+     */
+    boolean isEnforced() {
+        return (bound > 0) && (overflow != Overflow.BACKPRESSURE);
+    }
+
+    static QueuePolicy fromConfig(Config conf) {
+        int bound = BOUND.get(conf);
+        int high = HIGH_WATERMARK.get(conf);
+        if ((bound <= 0) && (high <= 0)) {
+            return UNBOUNDED;
+        }
+        String name = conf.getValueOrDefault(OVERFLOW_KEY, "fail");
+        Overflow overflow;
+        try {
+            overflow = Overflow.valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException("Unknown overflow policy '" + name + "' for " + OVERFLOW_KEY
+                    + ". Expected 'fail', 'drop-oldest', 'drop-newest' or 'backpressure'.");
+        }
+        QueuePolicy policy = (bound > 0) ? bounded(bound, overflow) : new QueuePolicy(0, overflow, 0, 0);
+        if (high > 0) {
+            int low = conf.getValueOrDefault(LOW_WATERMARK_KEY, high / 2);
+            try {
+                policy = policy.withWatermarks(high, low);
+            } catch (IllegalArgumentException ex) {
+                throw new ConfigurationException("Invalid queue watermarks: " + ex.getMessage());
+            }
+        }
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return "QueuePolicy(bound=" + bound + ", overflow=" + overflow
+                + ", highWatermark=" + highWatermark + ", lowWatermark=" + lowWatermark + ")";
+    }
+}
@@ -20,10 +20,14 @@
  */
 package se.sics.kompics;
 
-import java.util.ArrayDeque;
+import java.util.Arrays;
 
 /**
  * The <code>Request</code> class.
+ * <p>
+ * The path a request travels is recorded as an array of
+ * {@link RequestPathRegistry} ids, so pushing a hop doesn't allocate once
+ * the array has grown to the path's length.
  *
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -33,26 +37,38 @@ import java.util.ArrayDeque;
 @Deprecated
 public abstract class Request implements KompicsEvent {
 
-    ArrayDeque<RequestPathElement> requestPath = new ArrayDeque<RequestPathElement>();
+    private static final int INITIAL_PATH_LENGTH = 4;
+
+    long[] path = null;
+    int pathSize = 0;
 
     public void pushPathElement(ChannelCore<?> channel) {
-        RequestPathElement pe = new RequestPathElement(channel);
-        requestPath.push(pe);
+        push(RequestPathRegistry.channelId(channel));
     }
 
     public void pushPathElement(ComponentCore component) {
-        RequestPathElement pe = new RequestPathElement(component);
-        RequestPathElement topPE = requestPath.peek();
-        if ((topPE != null) && (pe.compareTo(topPE) == 0)) {
+        long id = RequestPathRegistry.componentId(component);
+        if ((pathSize > 0) && (path[pathSize - 1] == id)) {
             return; // avoid path duplication
         }
-        requestPath.push(pe);
+        push(id);
+    }
+
+    private void push(long id) {
+        if (path == null) {
+            path = new long[INITIAL_PATH_LENGTH];
+        } else if (pathSize == path.length) {
+            path = Arrays.copyOf(path, pathSize * 2);
+        }
+        path[pathSize++] = id;
     }
 
     @Override
     public Object clone() throws CloneNotSupportedException {
         Request request = (Request) super.clone();
-        request.requestPath = requestPath.clone();
+        if (path != null) {
+            request.path = path.clone();
+        }
         return request;
     }
 }
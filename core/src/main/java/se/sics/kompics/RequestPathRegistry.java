@@ -0,0 +1,215 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out compact ids for the channels and components on request paths,
+ * so a path can be a primitive array instead of a deque of weak references.
+ * <p>
+ * An id encodes a slot and the slot's generation. Ids are assigned the first
+ * time a channel or component is pushed onto a path. Unregistering, when a
+ * channel is disconnected, a component and its descendants destroyed, or
+ * the ports of a destroyed component cleaned of their channels, bumps the
+ * generation, so ids still on in-flight paths resolve to null instead of to
+ * a later occupant of the slot. Kompics clears the whole registry on shutdown.
+ * <p>
+ * Resolving is lock-free; assigning and releasing ids is synchronised.
+ */
+final class RequestPathRegistry {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static volatile Slot[][] chunks = new Slot[0][];
+    // guarded by the class
+    private static int nextSlot = 0;
+    private static int[] free = new int[16];
+    private static int freeCount = 0;
+    // channels that don't extend SimpleChannel can't cache their id
+    private static final ConcurrentHashMap<ChannelCore<?>, Long> foreignChannels = new ConcurrentHashMap<ChannelCore<?>, Long>();
+
+    private RequestPathRegistry() {
+    }
+
+    static long channelId(ChannelCore<?> channel) {
+        if (channel instanceof SimpleChannel) {
+            SimpleChannel<?> sc = (SimpleChannel<?>) channel;
+            long id = sc.pathId;
+            if ((id != 0) && (resolve(id) == sc)) {
+                return id;
+            }
+            synchronized (RequestPathRegistry.class) {
+                id = sc.pathId;
+                if ((id == 0) || (resolve(id) != sc)) {
+                    id = register(sc);
+                    sc.pathId = id;
+                }
+                return id;
+            }
+        }
+        Long id = foreignChannels.get(channel);
+        if ((id != null) && (resolve(id) == channel)) {
+            return id;
+        }
+        synchronized (RequestPathRegistry.class) {
+            id = foreignChannels.get(channel);
+            if ((id == null) || (resolve(id) != channel)) {
+                id = register(channel);
+                foreignChannels.put(channel, id);
+            }
+            return id;
+        }
+    }
+
+    static long componentId(ComponentCore component) {
+        long id = component.pathId;
+        if ((id != 0) && (resolve(id) == component)) {
+            return id;
+        }
+        synchronized (RequestPathRegistry.class) {
+            id = component.pathId;
+            if ((id == 0) || (resolve(id) != component)) {
+                id = register(component);
+                component.pathId = id;
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return the channel or component with the given id, or null if it
+     * was unregistered since
+     */
+    static Object resolve(long id) {
+        int slot = (int) id;
+        Slot[][] cs = chunks;
+        int c = slot >>> CHUNK_SHIFT;
+        if ((slot < 0) || (c >= cs.length)) {
+            return null;
+        }
+        Slot s = cs[c][slot & CHUNK_MASK];
+        Object target = s.target; // read before the generation, see unregister
+        return (s.generation == (int) (id >>> 32)) ? target : null;
+    }
+
+    static synchronized void unregister(long id) {
+        if (id == 0) {
+            return;
+        }
+        int slot = (int) id;
+        Slot s = chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+        if (s.generation != (int) (id >>> 32)) {
+            return; // already released
+        }
+        if (s.target instanceof ChannelCore) {
+            foreignChannels.remove((ChannelCore<?>) s.target);
+        }
+        release(slot, s);
+    }
+
+    /**
+     * Unregisters a channel, whether or not it can cache its id.
+     */
+    static void unregister(ChannelCore<?> channel) {
+        if (channel instanceof SimpleChannel) {
+            unregister(((SimpleChannel<?>) channel).pathId);
+            return;
+        }
+        Long id = foreignChannels.get(channel);
+        if (id != null) {
+            unregister(id);
+        }
+    }
+
+    /**
+     * @return the number of channels and components currently holding an id
+     */
+    static synchronized int size() {
+        return nextSlot - freeCount;
+    }
+
+    /**
+     * Invalidates all ids.
+     */
+    static synchronized void clear() {
+        Slot[][] cs = chunks;
+        for (int i = 0; i < nextSlot; i++) {
+            Slot s = cs[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+            s.target = null;
+            s.generation = nextGeneration(s.generation);
+        }
+        nextSlot = 0;
+        freeCount = 0;
+        foreignChannels.clear();
+    }
+
+    // called with the class lock held
+    private static long register(Object target) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = nextSlot++;
+            if ((slot >>> CHUNK_SHIFT) >= chunks.length) {
+                addChunk();
+            }
+        }
+        Slot s = chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+        s.target = target;
+        return (((long) s.generation) << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    // called with the class lock held
+    private static void release(int slot, Slot s) {
+        s.target = null;
+        s.generation = nextGeneration(s.generation);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = slot;
+    }
+
+    private static void addChunk() {
+        Slot[][] cs = chunks;
+        Slot[][] newChunks = Arrays.copyOf(cs, cs.length + 1);
+        Slot[] chunk = new Slot[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chunk[i] = new Slot();
+        }
+        newChunks[cs.length] = chunk;
+        chunks = newChunks;
+    }
+
+    private static int nextGeneration(int generation) {
+        int next = generation + 1;
+        return (next == 0) ? 1 : next; // ids are never 0
+    }
+
+    private static final class Slot {
+
+        volatile Object target = null;
+        volatile int generation = 1;
+    }
+}
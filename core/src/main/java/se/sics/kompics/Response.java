@@ -20,8 +20,6 @@
  */
 package se.sics.kompics;
 
-import java.util.ArrayDeque;
-
 // TODO: Auto-generated Javadoc
 /**
  * The <code>Response</code> class.
@@ -34,7 +32,9 @@ import java.util.ArrayDeque;
 @Deprecated
 public abstract class Response implements KompicsEvent {
 
-    private ArrayDeque<RequestPathElement> requestPath;
+    // shared with the request, which never writes below its own size again
+    private long[] path;
+    private int pathSize;
 
     /**
      * Instantiates a new response.
@@ -42,11 +42,40 @@ public abstract class Response implements KompicsEvent {
      * @param request the request
      */
     protected Response(Request request) {
-        requestPath = request.requestPath;
+        path = request.path;
+        pathSize = request.pathSize;
     }
 
+    /**
+     * Removes the next hop from the response path.
+     *
+     * @return the next hop, or null once the response is back at the
+     * request's origin
+     * @deprecated Allocates an element per hop; the runtime no longer uses it.
+     */
+    @Deprecated
     public RequestPathElement getTopPathElement() {
-        return requestPath.poll();
+        long id = popPathId();
+        if (id == 0) {
+            return null;
+        }
+        Object target = RequestPathRegistry.resolve(id);
+        if (target instanceof ComponentCore) {
+            return new RequestPathElement((ComponentCore) target);
+        }
+        // also covers hops that have been unregistered in the meantime
+        return new RequestPathElement((ChannelCore<?>) target);
+    }
+
+    /**
+     * @return the {@link RequestPathRegistry} id of the next hop, or 0 once
+     * the path is empty
+     */
+    long popPathId() {
+        if (pathSize == 0) {
+            return 0;
+        }
+        return path[--pathSize];
     }
 
     /*
@@ -57,7 +86,9 @@ public abstract class Response implements KompicsEvent {
     @Override
     public Object clone() throws CloneNotSupportedException {
         Response response = (Response) super.clone();
-        response.requestPath = requestPath.clone();
+        if (path != null) {
+            response.path = path.clone();
+        }
         return response;
     }
 }
@@ -1,5 +1,7 @@
 package se.sics.kompics;
 
+import se.sics.kompics.metrics.SchedulerStats;
+
 public abstract class Scheduler {
 
     public abstract void schedule(Component c, int w);
@@ -10,6 +12,13 @@ public abstract class Scheduler {
 
     public abstract void asyncShutdown();
 
+    /**
+     * @return a snapshot of this scheduler's statistics
+     */
+    public SchedulerStats getStats() {
+        return SchedulerStats.UNKNOWN;
+    }
+
     protected final void executeComponent(Component component, int w) {
         //Kompics.logger.error("Executing: {}", component.getComponent());
         ((ComponentCore) component).execute(w);
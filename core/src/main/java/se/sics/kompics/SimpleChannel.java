@@ -12,6 +12,7 @@ package se.sics.kompics;
 public abstract class SimpleChannel<PT extends PortType> implements ChannelCore<PT> {
     /* === PRIVATE === */
     protected volatile boolean destroyed = false;
+    volatile long pathId = 0; // see RequestPathRegistry
     protected final PortCore<PT> positivePort;
     protected final PortCore<PT> negativePort;
     protected final PT portType;
@@ -44,6 +45,7 @@ public abstract class SimpleChannel<PT extends PortType> implements ChannelCore<
     @Override
     public void disconnect() {
         this.destroy();
+        RequestPathRegistry.unregister(pathId);
         positivePort.removeChannel(this);
         negativePort.removeChannel(this);
     }
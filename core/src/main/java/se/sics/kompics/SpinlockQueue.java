@@ -25,6 +25,10 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 // TODO: Auto-generated Javadoc
 /**
  * The <code>SpinlockQueue</code> class.
+ * <p>
+ * By default this is an unbounded, linked, multi-consumer queue. Queues
+ * created with {@link #SpinlockQueue(int, boolean)} are array backed and
+ * only support a single consumer (see {@link MpscArrayQueue}).
  * 
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -32,30 +36,73 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class SpinlockQueue<E> {
 
-	private final ConcurrentLinkedQueue<E> q = new ConcurrentLinkedQueue<E>();
-	
-	public void offer(E e) {
-		q.offer(e);
+	private final ConcurrentLinkedQueue<E> q;
+	private final MpscArrayQueue<E> aq;
+
+	public SpinlockQueue() {
+		this.q = new ConcurrentLinkedQueue<E>();
+		this.aq = null;
+	}
+
+	/**
+	 * Creates an array backed queue for a single consumer.
+	 * 
+	 * @param capacity
+	 *            the maximum capacity if not growable, the initial capacity
+	 *            otherwise (rounded up to a power of two)
+	 * @param growable
+	 *            whether the queue grows when full or rejects offers
+	 */
+	public SpinlockQueue(int capacity, boolean growable) {
+		this.q = null;
+		this.aq = new MpscArrayQueue<E>(capacity, growable);
+	}
+
+	/**
+	 * @return false if the queue is bounded and full
+	 */
+	public boolean offer(E e) {
+		if (aq != null) {
+			return aq.offer(e);
+		}
+		return q.offer(e);
 	}
 	
 	public E poll() {
+		if (aq != null) {
+			return aq.poll();
+		}
 		return q.poll();
 	}
 	
 	public E peek() {
+		if (aq != null) {
+			return aq.peek();
+		}
 		return q.peek();
 	}
 	
 	public boolean isEmpty() {
+		if (aq != null) {
+			return aq.isEmpty();
+		}
 		return q.isEmpty();
 	}
         
         public void remove(E e) {
-            q.remove(e);
+            if (aq != null) {
+                aq.remove(e);
+            } else {
+                q.remove(e);
+            }
         }
         
         public void clear() {
-            q.clear();
+            if (aq != null) {
+                aq.clear();
+            } else {
+                q.clear();
+            }
         }
 
 //	public static final int FL_SIZE = 1000;
@@ -30,9 +30,50 @@ import se.sics.kompics.config.ConfigUpdate;
 public class Update implements KompicsEvent {
     public final ConfigUpdate update;
     public final UUID forwarder;
+    // set by ComponentCore.offerUpdate: the receiver handles its pending update instead
+    boolean coalesced = false;
+    // set by ComponentCore.offerUpdate once an update is queued behind this one
+    boolean sealed = false;
     
     public Update(ConfigUpdate update, UUID forwarder) {
         this.update = update;
         this.forwarder = forwarder;
     }
+
+    /**
+     * @return an update for {@link ComponentCore#offerUpdate}, which can be
+     * offered to several components
+     */
+    static Update forwarded(ConfigUpdate update, UUID forwarder) {
+        Update u = new Update(update, forwarder);
+        u.coalesced = true;
+        return u;
+    }
+
+    /**
+     * @return a copy of this update that later ones aren't merged into
+     */
+    Update sealed() {
+        Update u = forwarded(update, forwarder);
+        u.sealed = true;
+        return u;
+    }
+
+    /**
+     * @return an update carrying both this and {@code later}, or null if
+     * they can't be merged
+     */
+    Update mergedWith(Update later) {
+        if (sealed) {
+            return null; // applying later ahead of what's queued behind this would reorder them
+        }
+        if (!forwarder.equals(later.forwarder)) {
+            return null; // they travel in different directions
+        }
+        ConfigUpdate merged = update.coalesce(later.update);
+        if (merged == null) {
+            return null;
+        }
+        return forwarded(merged, forwarder);
+    }
 }
@@ -124,7 +124,16 @@ public interface Config {
 
         private final AtomicLong versionFactory;
         private final BaselineConfig baseline;
-        private final HashMap<String, ConfigValue> values = new HashMap<>();
+        private static final int MAX_LAYERS = 4;
+
+        // overrides of the baseline, null if there are none
+        private Layer top = null;
+        // copies share their layers and stack a new one on the first write
+        private volatile boolean topShared = false;
+        private boolean hasDeepValues = false;
+        // values read through ConfigKeys by their index, cleared by apply
+        private volatile Object[] keyCache = null;
+        private static final Object ABSENT = new Object();
         long version;
 
         private Impl(BaselineConfig baseline, long version) {
@@ -139,7 +148,7 @@ public interface Config {
 
         @Override
         public <T> Optional<T> readValue(String key) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             if (cv != null) {
                 T v = (T) cv.unwrap();
                 return Optional.of(v);
@@ -154,10 +163,10 @@ public interface Config {
 
         @Override
         public <T> Optional<T> readValue(String key, Class<T> type) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             try {
                 if (cv != null) {
-                    T v = Conversions.convert(cv.unwrap(), type);
+                    T v = Conversions.convertValue(cv, type);
                     if (v != null) {
                         return Optional.of(v);
                     } else {
@@ -166,7 +175,7 @@ public interface Config {
                 }
                 cv = baseline.getValue(key);
                 if (cv != null) {
-                    T v = Conversions.convert(cv.unwrap(), type);
+                    T v = Conversions.convertValue(cv, type);
                     if (v != null) {
                         return Optional.of(v);
                     } else {
@@ -181,9 +190,9 @@ public interface Config {
 
         @Override
         public <T> T getValue(String key, Class<T> type) throws ClassCastException {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
+                T v = Conversions.convertValue(cv, type);
                 if (v != null) {
                     return v;
                 } else {
@@ -192,7 +201,7 @@ public interface Config {
             }
             cv = baseline.getValue(key);
             if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
+                T v = Conversions.convertValue(cv, type);
                 if (v != null) {
                     return v;
                 } else {
@@ -205,12 +214,12 @@ public interface Config {
         @Override
         public <T extends Object> T getValueOrDefault(String key, T defaultValue) {
             Class<T> type = (Class<T>) defaultValue.getClass();
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             if (cv == null) {
                 cv = baseline.getValue(key);
             }
             if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
+                T v = Conversions.convertValue(cv, type);
                 if (v != null) {
                     return v;
                 } else {
@@ -221,6 +230,41 @@ public interface Config {
             }
         }
 
+        @SuppressWarnings("unchecked")
+        <T> T get(ConfigKey<T> key) {
+            Object[] cache = keyCache;
+            if ((cache != null) && (key.index < cache.length)) {
+                Object v = cache[key.index];
+                if (v != null) {
+                    return (v == ABSENT) ? null : (T) v;
+                }
+            }
+            T value = null;
+            ConfigValue cv = lookup(key.key);
+            if (cv == null) {
+                cv = baseline.getValue(key.key);
+            }
+            if (cv != null) {
+                value = Conversions.convertValue(cv, key.type);
+                if ((value == null) && (key.defaultValue == null)) {
+                    throw new ClassCastException("Can't cast or convert " + cv.unwrap() + " to " + key.type);
+                }
+            }
+            if (value == null) {
+                value = key.defaultValue;
+            }
+            if ((cache == null) || (key.index >= cache.length)) {
+                Object[] grown = new Object[ConfigKey.count()];
+                if (cache != null) {
+                    System.arraycopy(cache, 0, grown, 0, cache.length);
+                }
+                cache = grown;
+                keyCache = cache;
+            }
+            cache[key.index] = (value == null) ? ABSENT : value;
+            return value;
+        }
+
         @Override
         public Builder modify(UUID author) {
             return new Config.Builder(this, author);
@@ -228,7 +272,7 @@ public interface Config {
 
         @Override
         public <T> List<T> getValues(String key) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             if (cv != null) {
                 Object o = cv.unwrap();
                 if (o instanceof Collection) {
@@ -262,7 +306,7 @@ public interface Config {
 
         @Override
         public <T> List<T> getValues(String key, Class<T> type) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = lookup(key);
             if (cv != null) {
                 Object o = cv.unwrap();
                 if (o instanceof Collection) {
@@ -310,45 +354,150 @@ public interface Config {
             } else {
                 copy = new Impl(baseline, version, versionFactory);
             }
-            for (Entry<String, ConfigValue> e : values.entrySet()) {
+            if (!hasDeepValues) {
+                // nothing to clone, so just share the layers
+                topShared = true;
+                copy.top = top;
+                copy.topShared = true;
+                return copy;
+            }
+            HashMap<String, ConfigValue> values = new HashMap<>();
+            for (Entry<String, ConfigValue> e : top.flatten().entrySet()) {
                 if (e.getValue() instanceof Builder.CV) {
                     Builder.CV cv = (Builder.CV) e.getValue();
                     switch (cv.options.copy) {
                         case SHALLOW:
-                            copy.values.put(e.getKey(), cv);
+                            values.put(e.getKey(), cv);
                             break;
                         case DEEP: {
                             Object ocopy = cv.options.cloner.clone(cv.unwrap());
                             Builder.CV newCV = new Builder.CV(ocopy, cv.version, cv.options);
-                            copy.values.put(e.getKey(), newCV);
+                            values.put(e.getKey(), newCV);
                         }
                         break;
                     }
                 } else {
-                    copy.values.put(e.getKey(), e.getValue()); // always shallow if not Builder.CV
+                    values.put(e.getKey(), e.getValue()); // always shallow if not Builder.CV
                 }
             }
+            copy.top = new Layer(values, null);
+            copy.hasDeepValues = true;
             return copy;
         }
 
         public void apply(ConfigUpdate update, Optional<ValueMerger> customMergeLogic) {
             this.version = update.versionId;
+            if (!customMergeLogic.isPresent() && ((top == null) || (top.depth < MAX_LAYERS))
+                    && takesAllValues(update)) {
+                // share the update itself as a layer, for every component it reaches
+                top = new Layer(update.updates, top);
+                topShared = true;
+                keyCache = null;
+                return;
+            }
+            if (top == null) {
+                top = new Layer(new HashMap<String, ConfigValue>(), null);
+            } else if (topShared) {
+                if (top.depth < MAX_LAYERS) {
+                    top = new Layer(new HashMap<String, ConfigValue>(), top);
+                } else { // keep lookups short
+                    top = new Layer(top.flatten(), null);
+                }
+                topShared = false;
+            }
             for (Entry<String, ConfigValue> e : update.updates.entrySet()) {
-                ConfigValue oldCV = values.get(e.getKey());
+                ConfigValue oldCV = lookup(e.getKey());
                 if (oldCV == null) {
                     oldCV = baseline.getValue(e.getKey());
                 }
                 if (oldCV == null) { // if there's no previous value just insert the new one
-                    values.put(e.getKey(), e.getValue());
+                    put(e.getKey(), e.getValue());
                 } else {
                     if (customMergeLogic.isPresent()) {
                         ConfigValue cv = customMergeLogic.get().merge(e.getKey(), oldCV, e.getValue(), Builder.CVFactory.INSTANCE);
-                        values.put(e.getKey(), cv);
+                        put(e.getKey(), cv);
                     } else {
                         ConfigValue cv = e.getValue().options().merger.merge(e.getKey(), oldCV, e.getValue(), Builder.CVFactory.INSTANCE);
-                        values.put(e.getKey(), cv);
+                        put(e.getKey(), cv);
+                    }
+                }
+            }
+            keyCache = null;
+        }
+
+        /**
+         * @return whether applying {@code update} would store all of its
+         * values unchanged
+         */
+        private boolean takesAllValues(ConfigUpdate update) {
+            for (Entry<String, ConfigValue> e : update.updates.entrySet()) {
+                ConfigValue cv = e.getValue();
+                if ((cv instanceof Builder.CV) && (cv.options().copy == ValueOptions.Copy.DEEP)) {
+                    return false; // leave these to put
+                }
+                ValueMerger merger = cv.options().merger;
+                if (merger == ValueMerger.NEWEST) {
+                    continue;
+                }
+                ConfigValue oldCV = lookup(e.getKey());
+                if (oldCV == null) {
+                    oldCV = baseline.getValue(e.getKey());
+                }
+                if (oldCV == null) {
+                    continue;
+                }
+                if ((merger != ValueMerger.HIGHEST_ID) || (oldCV.version() >= cv.version())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void put(String key, ConfigValue cv) {
+            if ((cv instanceof Builder.CV) && (cv.options().copy == ValueOptions.Copy.DEEP)) {
+                hasDeepValues = true;
+            }
+            top.values.put(key, cv);
+        }
+
+        private ConfigValue lookup(String key) {
+            Layer l = top;
+            return (l == null) ? null : l.get(key);
+        }
+
+        /**
+         * Overrides on top of the layers of the config this one was copied
+         * from. Layers below the top are never written again.
+         */
+        private static final class Layer {
+
+            final HashMap<String, ConfigValue> values;
+            final Layer below;
+            final int depth;
+
+            Layer(HashMap<String, ConfigValue> values, Layer below) {
+                this.values = values;
+                this.below = below;
+                this.depth = (below == null) ? 1 : below.depth + 1;
+            }
+
+            ConfigValue get(String key) {
+                for (Layer l = this; l != null; l = l.below) {
+                    ConfigValue cv = l.values.get(key);
+                    if (cv != null) {
+                        return cv;
                     }
                 }
+                return null;
+            }
+
+            HashMap<String, ConfigValue> flatten() {
+                if (below == null) {
+                    return new HashMap<>(values);
+                }
+                HashMap<String, ConfigValue> flat = below.flatten();
+                flat.putAll(values);
+                return flat;
             }
         }
 
@@ -391,7 +540,7 @@ public interface Config {
             try {
                 ConfigValue cv = updates.get(key);
                 if (cv != null) {
-                    T v = Conversions.convert(cv.unwrap(), type);
+                    T v = Conversions.convertValue(cv, type);
                     if (v != null) {
                         return Optional.of(v);
                     } else {
@@ -409,7 +558,7 @@ public interface Config {
         public <T> T getValue(String key, Class<T> type) throws ClassCastException {
             ConfigValue cv = updates.get(key);
             if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
+                T v = Conversions.convertValue(cv, type);
                 if (v != null) {
                     return v;
                 } else {
@@ -425,7 +574,7 @@ public interface Config {
             Class<T> type = (Class<T>) defaultValue.getClass();
             ConfigValue cv = updates.get(key);
             if ((cv != null) && type.isAssignableFrom(cv.unwrap().getClass())) {
-                T v = Conversions.convert(cv.unwrap(), type);
+                T v = Conversions.convertValue(cv, type);
                 if (v != null) {
                     return v;
                 } else {
@@ -625,7 +774,7 @@ public interface Config {
             throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
         }
 
-        private static class CV implements ConfigValue {
+        private static class CV extends MemoizedValue {
 
             private final Object value;
             private final long version;
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A typed handle for a config key.
+ * <p>
+ * Reading through a key resolves and converts the value once per
+ * {@link Config.Impl} and then serves it from a small per-config cache,
+ * until the config is updated. This makes it cheap enough to read config
+ * values per event.
+ * <p>
+ * Every key takes a slot in the cache of each config it is read from, so
+ * keys should be created once, e.g. as {@code static final} fields.
+ * <p>
+ * @param <T> The type of the value
+ */
+public final class ConfigKey<T> {
+
+    private static final AtomicInteger KEYS = new AtomicInteger(0);
+
+    public final String key;
+    public final Class<T> type;
+    final T defaultValue;
+    final int index;
+
+    private ConfigKey(String key, Class<T> type, T defaultValue) {
+        this.key = key;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.index = KEYS.getAndIncrement();
+    }
+
+    /**
+     * A key whose value must convert to {@code type}.
+     * <p>
+     * Reading it behaves like
+     * {@link Config#getValue(java.lang.String, java.lang.Class)}.
+     */
+    public static <T> ConfigKey<T> of(String key, Class<T> type) {
+        return new ConfigKey<T>(key, type, null);
+    }
+
+    /**
+     * A key that falls back to {@code defaultValue}.
+     * <p>
+     * Reading it behaves like
+     * {@link Config#getValueOrDefault(java.lang.String, java.lang.Object)}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ConfigKey<T> of(String key, T defaultValue) {
+        return new ConfigKey<T>(key, (Class<T>) defaultValue.getClass(), defaultValue);
+    }
+
+    /**
+     * Reads the value of this key from {@code conf}.
+     * <p>
+     * @param conf The config to read from
+     * @return The value, the default if it is missing or can't be
+     * converted, or {@code null} if there is no default and it is missing
+     * @throws ClassCastException if there is no default and the value can't
+     * be converted
+     */
+    public T get(Config conf) throws ClassCastException {
+        if (conf instanceof Config.Impl) {
+            return ((Config.Impl) conf).get(this);
+        }
+        if (defaultValue != null) {
+            return conf.getValueOrDefault(key, defaultValue);
+        }
+        return conf.getValue(key, type);
+    }
+
+    static int count() {
+        return KEYS.get();
+    }
+
+    @Override
+    public String toString() {
+        return key + " (" + type.getName() + ")";
+    }
+}
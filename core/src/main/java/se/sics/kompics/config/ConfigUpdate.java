@@ -46,6 +46,39 @@ public class ConfigUpdate implements Iterable<Entry<String, ConfigValue>> {
         return updates.entrySet().iterator();
     }
 
+    /**
+     * Merges this update with one that would be applied right after it.
+     * <p>
+     * Where both set the same key, the merged value is the one that applying
+     * them one after the other with the values' own
+     * {@link ValueMerger#NEWEST} or {@link ValueMerger#HIGHEST_ID} mergers
+     * would leave. Updates that collide in any other way are not merged.
+     * <p>
+     * @param later The update to apply after this one
+     * @return The merged update, or {@code null} if they can't be merged
+     */
+    public ConfigUpdate coalesce(ConfigUpdate later) {
+        HashMap<String, ConfigValue> merged = new HashMap<>(updates);
+        for (Entry<String, ConfigValue> e : later.updates.entrySet()) {
+            ConfigValue newCV = e.getValue();
+            ConfigValue oldCV = merged.put(e.getKey(), newCV);
+            if (oldCV != null) {
+                ValueMerger newMerger = newCV.options().merger;
+                ValueMerger oldMerger = oldCV.options().merger;
+                if (newMerger == ValueMerger.NEWEST) {
+                    continue;
+                }
+                if ((newMerger != ValueMerger.HIGHEST_ID) || (oldMerger != ValueMerger.HIGHEST_ID)) {
+                    return null;
+                }
+                if (oldCV.version() >= newCV.version()) {
+                    merged.put(e.getKey(), oldCV); // HIGHEST_ID keeps the older on a tie
+                }
+            }
+        }
+        return new ConfigUpdate(merged, Math.max(versionId, later.versionId), later.creator);
+    }
+
     public ConfigUpdateFactory modify(UUID creator) {
         return new Factory(creator);
     }
@@ -78,7 +111,8 @@ public class ConfigUpdate implements Iterable<Entry<String, ConfigValue>> {
 
         @Override
         public ConfigUpdate assemble() {
-            return new ConfigUpdate(this.updates, ConfigUpdate.this.versionId, this.creator);
+            // copied, since configs may keep the map of an applied update
+            return new ConfigUpdate(new HashMap<>(this.updates), ConfigUpdate.this.versionId, this.creator);
         }
     }
 }
@@ -31,6 +31,8 @@ import java.net.UnknownHostException;
 public abstract class Conversions {
 
     private static final HashMultimap<Class<?>, Converter<?>> converters = HashMultimap.create();
+    // bumped by register, so remembered conversions are redone
+    private static volatile int generation = 0;
 
     static {
         // Numbers
@@ -272,8 +274,20 @@ public abstract class Conversions {
         return val; // last write wins
     }
 
+    /**
+     * Converts the value of {@code cv} like {@link #convert(Object, Class)},
+     * but remembers the result on values that support it.
+     */
+    static <T> T convertValue(ConfigValue cv, Class<T> type) {
+        if (cv instanceof MemoizedValue) {
+            return ((MemoizedValue) cv).convertTo(type, generation);
+        }
+        return convert(cv.unwrap(), type);
+    }
+
     public static void register(Converter c) {
         converters.put(c.type(), c);
+        generation++;
     }
     
     public static String asString() {
@@ -0,0 +1,61 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+/**
+ * A config value that remembers its last conversion.
+ * <p>
+ * Values are replaced rather than changed by {@link Config.Impl#apply}, so a
+ * remembered conversion stays valid until a converter is registered. Only
+ * immutable values (strings, numbers and booleans) are remembered, so that
+ * changes to a shared collection are never hidden.
+ */
+abstract class MemoizedValue implements ConfigValue {
+
+    private volatile Conversion last = null;
+
+    @SuppressWarnings("unchecked")
+    <T> T convertTo(Class<T> type, int generation) {
+        Conversion c = last;
+        if ((c != null) && (c.type == type) && (c.generation == generation)) {
+            return (T) c.value;
+        }
+        Object o = unwrap();
+        T value = Conversions.convert(o, type);
+        if ((o instanceof String) || (o instanceof Number) || (o instanceof Boolean)) {
+            last = new Conversion(type, value, generation);
+        }
+        return value;
+    }
+
+    private static final class Conversion {
+
+        final Class<?> type;
+        final Object value;
+        final int generation;
+
+        Conversion(Class<?> type, Object value, int generation) {
+            this.type = type;
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+}
@@ -23,8 +23,10 @@ package se.sics.kompics.config;
 import com.typesafe.config.ConfigException;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigList;
+import com.typesafe.config.ConfigValueType;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -32,7 +34,12 @@ import java.util.List;
  */
 public class TypesafeConfig implements BaselineConfig {
 
+    // stands in for missing keys in the cache
+    private static final ConfigValue MISSING = new TypesafeValue(null);
+
     private final com.typesafe.config.Config config;
+    // the baseline is immutable, so values are only looked up and wrapped once
+    private final ConcurrentHashMap<String, ConfigValue> cache = new ConcurrentHashMap<>();
 
     public static Config load() {
         com.typesafe.config.Config conf = ConfigFactory.load();
@@ -50,12 +57,16 @@ public class TypesafeConfig implements BaselineConfig {
 
     @Override
     public ConfigValue getValue(String key) {
-        try {
-            com.typesafe.config.ConfigValue cv = config.getValue(key);
-            return new TypesafeValue(cv);
-        } catch (ConfigException.Missing ex) {
-            return null;
+        ConfigValue value = cache.get(key);
+        if (value == null) {
+            try {
+                value = new TypesafeValue(config.getValue(key));
+            } catch (ConfigException.Missing ex) {
+                value = MISSING;
+            }
+            cache.putIfAbsent(key, value);
         }
+        return (value == MISSING) ? null : value;
     }
 
     @Override
@@ -72,22 +83,30 @@ public class TypesafeConfig implements BaselineConfig {
         }
     }
 
-    private static class TypesafeValue implements ConfigValue {
+    private static class TypesafeValue extends MemoizedValue {
 
         public final com.typesafe.config.ConfigValue cv;
+        // scalars are immutable and can be unwrapped once
+        private final Object scalar;
 
         private TypesafeValue(com.typesafe.config.ConfigValue cv) {
             this.cv = cv;
+            if ((cv == null) || (cv.valueType() == ConfigValueType.LIST)
+                    || (cv.valueType() == ConfigValueType.OBJECT)) {
+                this.scalar = null;
+            } else {
+                this.scalar = cv.unwrapped();
+            }
         }
 
         @Override
         public Object unwrap() {
-            return cv.unwrapped();
+            return (scalar != null) ? scalar : cv.unwrapped();
         }
 
         @Override
         public Class<?> type() {
-            return cv.unwrapped().getClass();
+            return unwrap().getClass();
         }
 
         @Override
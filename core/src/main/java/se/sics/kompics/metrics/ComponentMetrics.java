@@ -0,0 +1,70 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import se.sics.kompics.PortType;
+
+/**
+ * Records metrics for a single component.
+ */
+public abstract class ComponentMetrics {
+
+    /**
+     * Records nothing.
+     */
+    public static final ComponentMetrics NONE = new ComponentMetrics() {
+
+        @Override
+        public PortMetrics port(PortType portType, boolean positive) {
+            return PortMetrics.NONE;
+        }
+
+        @Override
+        public void faulted() {
+            // Do nothing
+        }
+
+        @Override
+        public void destroyed() {
+            // Do nothing
+        }
+    };
+
+    /**
+     * Called once for each port of the component that events are delivered
+     * to.
+     * <p>
+     * @param portType the port's type
+     * @param positive the port's polarity
+     * @return the recorder for the port, never null
+     */
+    public abstract PortMetrics port(PortType portType, boolean positive);
+
+    /**
+     * A handler of the component threw an exception.
+     */
+    public abstract void faulted();
+
+    /**
+     * The component was destroyed.
+     */
+    public abstract void destroyed();
+}
@@ -0,0 +1,329 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Scheduler;
+
+/**
+ * The default, in-memory metrics provider.
+ * <p>
+ * Keeps a recorder per live component and port. Counters are striped only
+ * once contended and handler execution time is only measured for one in
+ * {@code sampleRate} events per port.
+ */
+public class DefaultMetricsProvider implements MetricsProvider {
+
+    private final long sampleMask;
+    private final Set<ComponentRecorder> components = Collections.newSetFromMap(new ConcurrentHashMap<ComponentRecorder, Boolean>());
+    private volatile Scheduler scheduler;
+
+    /**
+     * @param sampleRate handler execution time is measured for one in this
+     * many events per port; rounded up to a power of two
+     */
+    public DefaultMetricsProvider(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be positive, got " + sampleRate);
+        }
+        int rate = Integer.highestOneBit(sampleRate);
+        if (rate < sampleRate) {
+            rate <<= 1;
+        }
+        this.sampleMask = rate - 1;
+    }
+
+    @Override
+    public ComponentMetrics componentCreated(ComponentCore core) {
+        ComponentRecorder c = new ComponentRecorder(core);
+        components.add(c);
+        return c;
+    }
+
+    @Override
+    public void schedulerStarted(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void schedulerStopped(Scheduler scheduler) {
+        if (this.scheduler == scheduler) {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * @return the stats of the running scheduler, or
+     * {@link SchedulerStats#UNKNOWN} if there is none
+     */
+    public SchedulerStats getSchedulerStats() {
+        Scheduler s = scheduler;
+        return (s != null) ? s.getStats() : SchedulerStats.UNKNOWN;
+    }
+
+    /**
+     * @return the running scheduler, if any
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the recorders of all live components
+     */
+    public List<ComponentRecorder> getComponents() {
+        return new ArrayList<ComponentRecorder>(components);
+    }
+
+    public long getEventsEnqueued() {
+        long sum = 0;
+        for (ComponentRecorder c : components) {
+            sum += c.getEventsEnqueued();
+        }
+        return sum;
+    }
+
+    public long getEventsHandled() {
+        long sum = 0;
+        for (ComponentRecorder c : components) {
+            sum += c.getEventsHandled();
+        }
+        return sum;
+    }
+
+    public long getEventsDropped() {
+        long sum = 0;
+        for (ComponentRecorder c : components) {
+            sum += c.getEventsDropped();
+        }
+        return sum;
+    }
+
+    public long getQueuedEvents() {
+        long sum = 0;
+        for (ComponentRecorder c : components) {
+            sum += c.getQueuedEvents();
+        }
+        return sum;
+    }
+
+    public long getFaults() {
+        long sum = 0;
+        for (ComponentRecorder c : components) {
+            sum += c.getFaults();
+        }
+        return sum;
+    }
+
+    /**
+     * @param q the quantile in [0, 1]
+     * @return the sampled handler execution time quantile over all ports,
+     * in nanoseconds
+     */
+    public long getHandlerTime(double q) {
+        long[] counts = new long[Histogram.BUCKETS];
+        for (ComponentRecorder c : components) {
+            for (PortRecorder p : c.ports) {
+                Histogram h = p.handlerTime;
+                if (h != null) {
+                    h.addTo(counts);
+                }
+            }
+        }
+        return Histogram.percentile(counts, q);
+    }
+
+    public void logStats() {
+        Kompics.logger.info("Components: {}, events enqueued: {}, handled: {}, dropped: {}, queued: {}, faults: {}",
+                new Object[]{components.size(), getEventsEnqueued(), getEventsHandled(), getEventsDropped(),
+                    getQueuedEvents(), getFaults()});
+        Kompics.logger.info("Handler time (sampled): p50 {}ns, p99 {}ns",
+                getHandlerTime(0.5), getHandlerTime(0.99));
+    }
+
+    public class ComponentRecorder extends ComponentMetrics {
+
+        private final ComponentCore core;
+        private final CopyOnWriteArrayList<PortRecorder> ports = new CopyOnWriteArrayList<PortRecorder>();
+        private final StripedCounter faults = new StripedCounter();
+
+        ComponentRecorder(ComponentCore core) {
+            this.core = core;
+        }
+
+        @Override
+        public PortMetrics port(PortType portType, boolean positive) {
+            PortRecorder p = new PortRecorder(portType, positive, sampleMask);
+            ports.add(p);
+            return p;
+        }
+
+        @Override
+        public void faulted() {
+            faults.increment();
+        }
+
+        @Override
+        public void destroyed() {
+            components.remove(this);
+        }
+
+        public UUID getId() {
+            return core.id();
+        }
+
+        public String getName() {
+            Object definition = core.getComponent();
+            return (definition != null) ? definition.getClass().getName() : core.getClass().getName();
+        }
+
+        /**
+         * @return the number of events queued for execution (the
+         * component's {@code workCount})
+         */
+        public int getQueuedEvents() {
+            return core.workCount.get();
+        }
+
+        public long getFaults() {
+            return faults.sum();
+        }
+
+        public long getEventsEnqueued() {
+            long sum = 0;
+            for (PortRecorder p : ports) {
+                sum += p.getEventsEnqueued();
+            }
+            return sum;
+        }
+
+        public long getEventsHandled() {
+            long sum = 0;
+            for (PortRecorder p : ports) {
+                sum += p.getEventsHandled();
+            }
+            return sum;
+        }
+
+        public long getEventsDropped() {
+            long sum = 0;
+            for (PortRecorder p : ports) {
+                sum += p.getEventsDropped();
+            }
+            return sum;
+        }
+
+        public List<PortRecorder> getPorts() {
+            return new ArrayList<PortRecorder>(ports);
+        }
+    }
+
+    public static class PortRecorder extends PortMetrics {
+
+        private static final AtomicLongFieldUpdater<PortRecorder> HANDLED
+                = AtomicLongFieldUpdater.newUpdater(PortRecorder.class, "handled");
+
+        private final PortType portType;
+        private final boolean positive;
+        private final long sampleMask;
+        private final StripedCounter enqueued = new StripedCounter();
+        private final StripedCounter dropped = new StripedCounter();
+        private volatile long handled = 0; // single writer, the executing component
+        private volatile Histogram handlerTime = null;
+
+        PortRecorder(PortType portType, boolean positive, long sampleMask) {
+            this.portType = portType;
+            this.positive = positive;
+            this.sampleMask = sampleMask;
+        }
+
+        @Override
+        public void enqueued() {
+            enqueued.increment();
+        }
+
+        @Override
+        public void dropped() {
+            dropped.increment();
+        }
+
+        @Override
+        public long startHandling() {
+            if ((handled & sampleMask) != 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            return (now == 0) ? 1 : now;
+        }
+
+        @Override
+        public void handled(long start) {
+            HANDLED.lazySet(this, handled + 1);
+            if (start != 0) {
+                long time = System.nanoTime() - start;
+                Histogram h = handlerTime;
+                if (h == null) {
+                    h = new Histogram();
+                    handlerTime = h;
+                }
+                h.record(time);
+            }
+        }
+
+        public String getPortType() {
+            return portType.getClass().getName();
+        }
+
+        public boolean isPositive() {
+            return positive;
+        }
+
+        public long getEventsEnqueued() {
+            return enqueued.sum();
+        }
+
+        public long getEventsHandled() {
+            return handled;
+        }
+
+        public long getEventsDropped() {
+            return dropped.sum();
+        }
+
+        /**
+         * @return the sampled handler execution times in nanoseconds, or null
+         * if none were sampled yet
+         */
+        public Histogram getHandlerTime() {
+            return handlerTime;
+        }
+    }
+}
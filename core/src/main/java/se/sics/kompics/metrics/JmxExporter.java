@@ -0,0 +1,182 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+
+/**
+ * Exports the metrics of a {@link DefaultMetricsProvider} through the
+ * platform MBean server.
+ * <p>
+ * Only aggregates and a top-N listing are exported, so the number of MBeans
+ * doesn't grow with the number of components.
+ */
+public class JmxExporter implements KompicsMetricsMXBean {
+
+    public static final String OBJECT_NAME = "se.sics.kompics:type=Metrics";
+
+    private final DefaultMetricsProvider metrics;
+
+    public JmxExporter(DefaultMetricsProvider metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers an exporter for {@code provider}, replacing an earlier one.
+     * <p>
+     * @param provider the provider to export
+     * @return whether anything was registered, i.e. {@code provider} is a
+     * {@link DefaultMetricsProvider}
+     */
+    public static boolean register(MetricsProvider provider) {
+        if (!(provider instanceof DefaultMetricsProvider)) {
+            Kompics.logger.warn("Metrics provider {} can't be exported via JMX", provider);
+            return false;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            JmxExporter exporter = new JmxExporter((DefaultMetricsProvider) provider);
+            try {
+                server.registerMBean(exporter, name);
+            } catch (InstanceAlreadyExistsException ex) {
+                server.unregisterMBean(name);
+                server.registerMBean(exporter, name);
+            }
+            return true;
+        } catch (JMException ex) {
+            Kompics.logger.warn("Could not register Kompics metrics MXBean", ex);
+            return false;
+        }
+    }
+
+    public static void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException ex) {
+            // nothing to do
+        } catch (JMException ex) {
+            Kompics.logger.warn("Could not unregister Kompics metrics MXBean", ex);
+        }
+    }
+
+    @Override
+    public int getComponentCount() {
+        return metrics.getComponents().size();
+    }
+
+    @Override
+    public long getEventsEnqueued() {
+        return metrics.getEventsEnqueued();
+    }
+
+    @Override
+    public long getEventsHandled() {
+        return metrics.getEventsHandled();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return metrics.getEventsDropped();
+    }
+
+    @Override
+    public long getQueuedEvents() {
+        return metrics.getQueuedEvents();
+    }
+
+    @Override
+    public long getFaults() {
+        return metrics.getFaults();
+    }
+
+    @Override
+    public long getHandlerTimeP50Nanos() {
+        return metrics.getHandlerTime(0.5);
+    }
+
+    @Override
+    public long getHandlerTimeP99Nanos() {
+        return metrics.getHandlerTime(0.99);
+    }
+
+    @Override
+    public String getSchedulerType() {
+        Scheduler s = metrics.getScheduler();
+        return (s != null) ? s.getClass().getName() : "none";
+    }
+
+    @Override
+    public int getSchedulerWorkers() {
+        return metrics.getSchedulerStats().workers;
+    }
+
+    @Override
+    public double getSchedulerUtilization() {
+        return metrics.getSchedulerStats().utilization;
+    }
+
+    @Override
+    public long getSchedulerExecutions() {
+        return metrics.getSchedulerStats().executions;
+    }
+
+    @Override
+    public long getSchedulerSteals() {
+        return metrics.getSchedulerStats().steals;
+    }
+
+    @Override
+    public long getSchedulerParks() {
+        return metrics.getSchedulerStats().parks;
+    }
+
+    @Override
+    public String[] busiestComponents(int n) {
+        List<DefaultMetricsProvider.ComponentRecorder> components = metrics.getComponents();
+        Collections.sort(components, new Comparator<DefaultMetricsProvider.ComponentRecorder>() {
+
+            @Override
+            public int compare(DefaultMetricsProvider.ComponentRecorder c1, DefaultMetricsProvider.ComponentRecorder c2) {
+                return Integer.compare(c2.getQueuedEvents(), c1.getQueuedEvents());
+            }
+        });
+        int size = Math.max(0, Math.min(n, components.size()));
+        String[] result = new String[size];
+        for (int i = 0; i < size; i++) {
+            DefaultMetricsProvider.ComponentRecorder c = components.get(i);
+            result[i] = c.getName() + "(" + c.getId() + "): queued=" + c.getQueuedEvents()
+                    + ", enqueued=" + c.getEventsEnqueued() + ", handled=" + c.getEventsHandled()
+                    + ", faults=" + c.getFaults();
+        }
+        return result;
+    }
+}
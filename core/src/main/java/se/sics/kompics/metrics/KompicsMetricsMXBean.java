@@ -0,0 +1,62 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+/**
+ * The management interface registered as {@code se.sics.kompics:type=Metrics}
+ * when {@code kompics.metrics.jmx} is enabled.
+ */
+public interface KompicsMetricsMXBean {
+
+    public int getComponentCount();
+
+    public long getEventsEnqueued();
+
+    public long getEventsHandled();
+
+    public long getEventsDropped();
+
+    public long getQueuedEvents();
+
+    public long getFaults();
+
+    public long getHandlerTimeP50Nanos();
+
+    public long getHandlerTimeP99Nanos();
+
+    public String getSchedulerType();
+
+    public int getSchedulerWorkers();
+
+    public double getSchedulerUtilization();
+
+    public long getSchedulerExecutions();
+
+    public long getSchedulerSteals();
+
+    public long getSchedulerParks();
+
+    /**
+     * @param n the number of components to list
+     * @return the components with the most queued events, one per line
+     */
+    public String[] busiestComponents(int n);
+}
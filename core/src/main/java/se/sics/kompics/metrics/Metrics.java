@@ -0,0 +1,121 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.config.Config;
+
+/**
+ * Holds the {@link MetricsProvider} used by the runtime.
+ * <p>
+ * Unless one is set explicitly, it is created from the configuration the
+ * first time it is needed and dropped again on {@link #reset()}, which
+ * Kompics calls on shutdown.
+ */
+public final class Metrics {
+
+    public static final String PROVIDER_KEY = "kompics.metrics.provider";
+    public static final String SAMPLE_RATE_KEY = "kompics.metrics.sampleRate";
+    public static final String JMX_KEY = "kompics.metrics.jmx";
+
+    /**
+     * Records nothing.
+     */
+    public static final MetricsProvider NONE = new MetricsProvider() {
+
+        @Override
+        public ComponentMetrics componentCreated(ComponentCore component) {
+            return ComponentMetrics.NONE;
+        }
+
+        @Override
+        public void schedulerStarted(Scheduler scheduler) {
+            // Do nothing
+        }
+
+        @Override
+        public void schedulerStopped(Scheduler scheduler) {
+            // Do nothing
+        }
+    };
+
+    private static volatile MetricsProvider provider = null;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the current provider
+     */
+    public static MetricsProvider provider() {
+        MetricsProvider p = provider;
+        if (p == null) {
+            synchronized (Metrics.class) {
+                p = provider;
+                if (p == null) {
+                    p = fromConfig(se.sics.kompics.Kompics.getConfig());
+                    provider = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Replaces the current provider. Components created earlier keep
+     * reporting to the previous one.
+     * <p>
+     * @param p the new provider
+     */
+    public static void setProvider(MetricsProvider p) {
+        if (p == null) {
+            throw new NullPointerException("Use Metrics.NONE to disable metrics");
+        }
+        provider = p;
+    }
+
+    /**
+     * Drops the current provider, so the next call to {@link #provider()}
+     * creates a new one from the configuration.
+     */
+    public static void reset() {
+        provider = null;
+    }
+
+    static MetricsProvider fromConfig(Config conf) {
+        String type = conf.getValueOrDefault(PROVIDER_KEY, "default");
+        switch (type) {
+            case "default":
+                return new DefaultMetricsProvider(conf.getValueOrDefault(SAMPLE_RATE_KEY, 64));
+            case "none":
+                return NONE;
+            default:
+                try {
+                    Class<?> c = Class.forName(type);
+                    return (MetricsProvider) c.newInstance();
+                } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException ex) {
+                    throw new ConfigurationException("Cannot create metrics provider '" + type + "' for " + PROVIDER_KEY + ": " + ex);
+                }
+        }
+    }
+}
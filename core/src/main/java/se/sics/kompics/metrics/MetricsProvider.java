@@ -0,0 +1,59 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Scheduler;
+
+/**
+ * The metrics SPI.
+ * <p>
+ * The provider is chosen by {@code kompics.metrics.provider}, which is either
+ * {@code default}, {@code none} or the fully qualified name of an
+ * implementation of this interface with a public no-argument constructor.
+ * <p>
+ * Recorders returned by a provider are called on the event delivery and
+ * execution paths, so they must be cheap and thread-safe.
+ */
+public interface MetricsProvider {
+
+    /**
+     * Called once for every component when its core is created.
+     * <p>
+     * @param component the new component's core
+     * @return the recorder for the component, never null
+     */
+    public ComponentMetrics componentCreated(ComponentCore component);
+
+    /**
+     * Called when Kompics starts with the scheduler it uses.
+     * <p>
+     * @param scheduler the scheduler
+     */
+    public void schedulerStarted(Scheduler scheduler);
+
+    /**
+     * Called when Kompics shuts down the scheduler.
+     * <p>
+     * @param scheduler the scheduler
+     */
+    public void schedulerStopped(Scheduler scheduler);
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+/**
+ * Records metrics for a single port.
+ * <p>
+ * {@link #enqueued()} may be called concurrently by any thread triggering on
+ * the port. {@link #startHandling()} and {@link #handled(long)} are only
+ * called while the owning component is executing, i.e. by one thread at a
+ * time.
+ */
+public abstract class PortMetrics {
+
+    /**
+     * Records nothing.
+     */
+    public static final PortMetrics NONE = new PortMetrics() {
+
+        @Override
+        public void enqueued() {
+            // Do nothing
+        }
+
+        @Override
+        public void dropped() {
+            // Do nothing
+        }
+
+        @Override
+        public long startHandling() {
+            return 0;
+        }
+
+        @Override
+        public void handled(long start) {
+            // Do nothing
+        }
+    };
+
+    /**
+     * An event was queued for the owning component.
+     */
+    public abstract void enqueued();
+
+    /**
+     * An event was dropped under the port's
+     * {@link se.sics.kompics.QueuePolicy}.
+     */
+    public abstract void dropped();
+
+    /**
+     * Called before the handlers for an event run.
+     * <p>
+     * @return a timestamp from {@link System#nanoTime()} if this execution
+     * should be timed, or 0 otherwise
+     */
+    public abstract long startHandling();
+
+    /**
+     * Called after the handlers for an event ran.
+     * <p>
+     * @param start the value returned by the matching
+     * {@link #startHandling()}
+     */
+    public abstract void handled(long start);
+}
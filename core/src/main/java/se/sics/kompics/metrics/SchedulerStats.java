@@ -0,0 +1,66 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+/**
+ * A snapshot of a scheduler's statistics.
+ * <p>
+ * Values a scheduler can't provide are -1.
+ */
+public final class SchedulerStats {
+
+    public static final SchedulerStats UNKNOWN = new SchedulerStats(-1, -1.0, -1, -1, -1);
+
+    /**
+     * The number of worker threads.
+     */
+    public final int workers;
+    /**
+     * The fraction of worker time spent executing components, in [0, 1].
+     */
+    public final double utilization;
+    /**
+     * The number of component executions.
+     */
+    public final long executions;
+    /**
+     * The number of component executions stolen from other workers.
+     */
+    public final long steals;
+    /**
+     * The number of times an idle worker was parked.
+     */
+    public final long parks;
+
+    public SchedulerStats(int workers, double utilization, long executions, long steals, long parks) {
+        this.workers = workers;
+        this.utilization = utilization;
+        this.executions = executions;
+        this.steals = steals;
+        this.parks = parks;
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulerStats(workers=" + workers + ", utilization=" + utilization + ", executions=" + executions
+                + ", steals=" + steals + ", parks=" + parks + ")";
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A counter that only spreads over several cache lines once it is contended.
+ * <p>
+ * Uncontended updates are a single CAS on one field. After the first failed
+ * CAS, updates go to one of a fixed number of padded cells picked by thread.
+ */
+public final class StripedCounter {
+
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+    private static final int PAD = 8; // longs per cache line
+    private static final AtomicLongFieldUpdater<StripedCounter> BASE
+            = AtomicLongFieldUpdater.newUpdater(StripedCounter.class, "base");
+
+    private volatile long base = 0;
+    private volatile AtomicLongArray cells = null;
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long x) {
+        AtomicLongArray cs = cells;
+        if (cs == null) {
+            long b = base;
+            if (BASE.compareAndSet(this, b, b + x)) {
+                return;
+            }
+            cs = expand();
+        }
+        cs.getAndAdd(stripe() * PAD, x);
+    }
+
+    public long sum() {
+        long sum = base;
+        AtomicLongArray cs = cells;
+        if (cs != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cs.get(i * PAD);
+            }
+        }
+        return sum;
+    }
+
+    private synchronized AtomicLongArray expand() {
+        if (cells == null) {
+            cells = new AtomicLongArray(STRIPES * PAD);
+        }
+        return cells;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h >>> 16) & (STRIPES - 1);
+    }
+}
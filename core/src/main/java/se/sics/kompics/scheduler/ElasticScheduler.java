@@ -0,0 +1,331 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Fault;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.metrics.SchedulerStats;
+
+/**
+ * A scheduler for component trees with handlers that call blocking APIs.
+ * <p>
+ * Components are executed FIFO by a pool of carrier threads. A monitor
+ * checks periodically for carriers that have been executing the same
+ * component for longer than the blocking threshold. Such carriers count as
+ * pinned, and while there is queued work and fewer than {@code carriers}
+ * unpinned threads, additional carriers are started (up to
+ * {@code maxThreads}). Carriers above the base pool size retire after being
+ * idle for {@code keepAlive} milliseconds.
+ * <p>
+ * As with every scheduler, a component is never executed by two carriers at
+ * the same time, since it's only scheduled again once its
+ * {@code workCount} went back to zero or its execution has finished.
+ */
+public class ElasticScheduler extends Scheduler {
+
+    public static final long DEFAULT_BLOCKING_THRESHOLD = 100;
+    public static final long DEFAULT_KEEP_ALIVE = 60000;
+
+    private final int carriers;
+    private final int maxThreads;
+    private final long blockingThresholdNanos;
+    private final long keepAlive;
+    private final LinkedBlockingQueue<ComponentCore> queue = new LinkedBlockingQueue<ComponentCore>();
+    private final CopyOnWriteArrayList<Carrier> threads = new CopyOnWriteArrayList<Carrier>();
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    private final AtomicLong pinnedExecutions = new AtomicLong(0);
+    private final AtomicLong compensations = new AtomicLong(0);
+    private final AtomicLong executions = new AtomicLong(0);
+    private volatile int peakThreads = 0;
+    private volatile boolean on = true;
+    private final Thread monitor;
+
+    /**
+     * Instantiates a new scheduler.
+     *
+     * @param carriers the base number of carrier threads
+     */
+    public ElasticScheduler(int carriers) {
+        this(carriers, carriers * 16, DEFAULT_BLOCKING_THRESHOLD, DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * Instantiates a new scheduler.
+     *
+     * @param carriers the base number of carrier threads
+     * @param maxThreads the maximum number of carrier threads including the
+     * ones started to compensate for pinned carriers
+     * @param blockingThreshold the time in milliseconds after which a carrier
+     * executing the same component counts as pinned
+     * @param keepAlive the time in milliseconds after which an idle
+     * compensating carrier terminates
+     */
+    public ElasticScheduler(int carriers, int maxThreads, long blockingThreshold, long keepAlive) {
+        if (carriers < 1) {
+            throw new IllegalArgumentException("Need at least one carrier, got " + carriers);
+        }
+        if (maxThreads < carriers) {
+            throw new IllegalArgumentException("maxThreads (" + maxThreads + ") must be at least carriers (" + carriers + ")");
+        }
+        if (blockingThreshold < 1) {
+            throw new IllegalArgumentException("blockingThreshold must be positive, got " + blockingThreshold);
+        }
+        this.carriers = carriers;
+        this.maxThreads = maxThreads;
+        this.blockingThresholdNanos = TimeUnit.MILLISECONDS.toNanos(blockingThreshold);
+        this.keepAlive = keepAlive;
+        this.monitor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                monitor();
+            }
+        }, "Kompics-elastic-monitor");
+        this.monitor.setDaemon(true);
+    }
+
+    @Override
+    public void schedule(Component c, int w) {
+        queue.offer((ComponentCore) c);
+    }
+
+    @Override
+    public void proceed() {
+        for (int i = 0; i < carriers; i++) {
+            startCarrier(true);
+        }
+        monitor.start();
+    }
+
+    @Override
+    public void shutdown() {
+        asyncShutdown();
+        long deadline = System.currentTimeMillis() + Kompics.SHUTDOWN_TIMEOUT;
+        try {
+            for (Carrier t : threads) {
+                long left = deadline - System.currentTimeMillis();
+                if ((t == Thread.currentThread()) || (left <= 0)) {
+                    continue;
+                }
+                t.join(left);
+            }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+            return;
+        }
+        if (threadCount.get() > 0) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown");
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        on = false;
+        monitor.interrupt();
+    }
+
+    /**
+     * @return the number of executions that exceeded the blocking threshold
+     */
+    public long getPinnedExecutions() {
+        return pinnedExecutions.get();
+    }
+
+    /**
+     * @return the number of carriers currently exceeding the blocking
+     * threshold
+     */
+    public int getPinnedCarriers() {
+        long now = System.nanoTime();
+        int pinned = 0;
+        for (Carrier t : threads) {
+            if (t.isPinned(now)) {
+                pinned++;
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * @return the number of carriers started to compensate for pinned ones
+     */
+    public long getCompensations() {
+        return compensations.get();
+    }
+
+    /**
+     * @return the current number of carrier threads
+     */
+    public int getThreadCount() {
+        return threadCount.get();
+    }
+
+    /**
+     * @return the highest number of carrier threads so far
+     */
+    public int getPeakThreadCount() {
+        return peakThreads;
+    }
+
+    @Override
+    public SchedulerStats getStats() {
+        int busy = 0;
+        int total = 0;
+        for (Carrier t : threads) {
+            total++;
+            if (t.executionStart != 0) {
+                busy++;
+            }
+        }
+        double utilization = (total > 0) ? ((double) busy) / total : 0.0;
+        return new SchedulerStats(total, utilization, executions.get(), -1, -1);
+    }
+
+    public void logStats() {
+        Kompics.logger.info("Carriers: {} (peak {}), pinned now: {}, pinned executions: {}, compensations: {}",
+                new Object[]{getThreadCount(), getPeakThreadCount(), getPinnedCarriers(),
+                    getPinnedExecutions(), getCompensations()});
+    }
+
+    private boolean startCarrier(boolean permanent) {
+        int n;
+        do {
+            n = threadCount.get();
+            if (n >= maxThreads) {
+                return false;
+            }
+        } while (!threadCount.compareAndSet(n, n + 1));
+        if (n + 1 > peakThreads) {
+            peakThreads = n + 1; // only approximate under contention
+        }
+        Carrier t = new Carrier(nextId.getAndIncrement(), permanent);
+        threads.add(t);
+        t.start();
+        return true;
+    }
+
+    private void monitor() {
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(blockingThresholdNanos) / 2);
+        while (on) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            long now = System.nanoTime();
+            int unpinned = 0;
+            for (Carrier t : threads) {
+                if (t.isPinned(now)) {
+                    if (t.markPinned()) {
+                        pinnedExecutions.incrementAndGet();
+                    }
+                } else {
+                    unpinned++;
+                }
+            }
+            while ((unpinned < carriers) && !queue.isEmpty()) {
+                if (!startCarrier(false)) {
+                    break;
+                }
+                compensations.incrementAndGet();
+                unpinned++;
+            }
+        }
+    }
+
+    private class Carrier extends Thread {
+
+        private final int cid;
+        private final boolean permanent;
+        private volatile long executionStart = 0; // 0 while idle
+        private long reportedStart = 0; // only accessed by the monitor
+
+        Carrier(int cid, boolean permanent) {
+            super("Kompics-carrier-" + cid);
+            this.cid = cid;
+            this.permanent = permanent;
+        }
+
+        boolean isPinned(long now) {
+            long start = executionStart;
+            return (start != 0) && ((now - start) > blockingThresholdNanos);
+        }
+
+        /**
+         * @return whether this execution hadn't been reported as pinned yet
+         */
+        boolean markPinned() {
+            long start = executionStart;
+            if (start != reportedStart) {
+                reportedStart = start;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long idleSince = System.currentTimeMillis();
+                while (true) {
+                    ComponentCore core;
+                    try {
+                        core = queue.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ex) {
+                        core = null;
+                    }
+                    if (core == null) {
+                        if (!on) {
+                            return;
+                        }
+                        if (!permanent && ((System.currentTimeMillis() - idleSince) > keepAlive)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    executionStart = (start == 0) ? 1 : start;
+                    try {
+                        executeComponent(core, cid);
+                    } catch (Throwable e) {
+                        Kompics.getFaultHandler().handle(new Fault(e, core, null));
+                    } finally {
+                        executionStart = 0;
+                    }
+                    executions.incrementAndGet();
+                    idleSince = System.currentTimeMillis();
+                }
+            } finally {
+                threads.remove(this);
+                threadCount.decrementAndGet();
+            }
+        }
+    }
+}
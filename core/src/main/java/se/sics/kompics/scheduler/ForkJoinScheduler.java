@@ -28,6 +28,7 @@ import se.sics.kompics.Component;
 import se.sics.kompics.Fault;
 import se.sics.kompics.Kompics;
 import se.sics.kompics.Scheduler;
+import se.sics.kompics.metrics.SchedulerStats;
 
 /**
  *
@@ -68,6 +69,13 @@ public class ForkJoinScheduler extends Scheduler {
         pool.shutdown();
     }
 
+    @Override
+    public SchedulerStats getStats() {
+        int parallelism = pool.getParallelism();
+        return new SchedulerStats(parallelism, ((double) pool.getActiveThreadCount()) / parallelism,
+                -1, pool.getStealCount(), -1);
+    }
+
     static class KompicsUncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
 
         @Override
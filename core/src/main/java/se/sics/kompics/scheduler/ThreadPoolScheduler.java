@@ -28,6 +28,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import se.sics.kompics.Component;
 import se.sics.kompics.Kompics;
 import se.sics.kompics.Scheduler;
+import se.sics.kompics.metrics.SchedulerStats;
 
 public class ThreadPoolScheduler extends Scheduler {
 
@@ -73,6 +74,13 @@ public class ThreadPoolScheduler extends Scheduler {
         threadPool.shutdown();
     }
 
+    @Override
+    public SchedulerStats getStats() {
+        int size = threadPool.getPoolSize();
+        double utilization = (size > 0) ? ((double) threadPool.getActiveCount()) / size : 0.0;
+        return new SchedulerStats(size, utilization, threadPool.getCompletedTaskCount(), -1, -1);
+    }
+
     static class KompicsThreadFactory implements ThreadFactory {
 
         final AtomicInteger threadNumber = new AtomicInteger(1);
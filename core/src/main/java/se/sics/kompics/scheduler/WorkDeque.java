@@ -0,0 +1,135 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A Chase-Lev work-stealing deque.
+ * <p>
+ * Only the owning worker may {@link #push(Object)} and {@link #pop()}, which
+ * work LIFO on the bottom end. Any other thread may {@link #steal()} FIFO from
+ * the top end.
+ * <p>
+ * @param <E> the element type
+ */
+final class WorkDeque<E> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final AtomicLong top = new AtomicLong(0);
+    private volatile long bottom = 0;
+    private volatile AtomicReferenceArray<E> array = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    // owner only: slots below this index have been cleared after they were taken
+    private long swept = 0;
+
+    /**
+     * Owner only.
+     */
+    void push(E e) {
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<E> a = array;
+        sweep(a, t, b);
+        if (b - t >= a.length()) {
+            a = grow(a, t, b);
+        }
+        a.lazySet((int) (b & (a.length() - 1)), e);
+        bottom = b + 1;
+    }
+
+    /**
+     * Owner only.
+     */
+    E pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<E> a = array;
+        bottom = b; // volatile write before reading top, so thieves see the claim
+        long t = top.get();
+        if (t > b) { // empty
+            bottom = b + 1;
+            sweep(a, t, b + 1);
+            return null;
+        }
+        int idx = (int) (b & (a.length() - 1));
+        E e = a.get(idx);
+        if (t == b) { // last element, race against thieves
+            if (!top.compareAndSet(t, t + 1)) {
+                e = null;
+            }
+            bottom = b + 1;
+        }
+        if (e != null) {
+            a.lazySet(idx, null); // taken by us, no thief can claim it any more
+        }
+        return e;
+    }
+
+    /**
+     * @return the oldest element, or {@code null} if the deque is empty or
+     * another thread won the race for it
+     */
+    E steal() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        AtomicReferenceArray<E> a = array;
+        E e = a.get((int) (t & (a.length() - 1)));
+        if (!top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Owner only. Drops the references to elements that thieves have taken,
+     * so executed elements don't stay reachable through the array.
+     * <p>
+     * Only slots below {@code t} are touched, which thieves can no longer
+     * claim, and none that could alias a live slot in {@code [t, b)}.
+     */
+    private void sweep(AtomicReferenceArray<E> a, long t, long b) {
+        long from = Math.max(swept, b - a.length());
+        for (long i = from; i < t; i++) {
+            a.lazySet((int) (i & (a.length() - 1)), null);
+        }
+        if (t > swept) {
+            swept = t;
+        }
+    }
+
+    int size() {
+        long s = bottom - top.get();
+        return s > 0 ? (int) s : 0;
+    }
+
+    private AtomicReferenceArray<E> grow(AtomicReferenceArray<E> old, long t, long b) {
+        AtomicReferenceArray<E> a = new AtomicReferenceArray<>(old.length() * 2);
+        for (long i = t; i < b; i++) {
+            a.lazySet((int) (i & (a.length() - 1)), old.get((int) (i & (old.length() - 1))));
+        }
+        array = a;
+        return a;
+    }
+}
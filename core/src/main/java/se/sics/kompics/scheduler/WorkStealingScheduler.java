@@ -24,14 +24,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import se.sics.kompics.Component;
 import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Fault;
 import se.sics.kompics.Kompics;
 import se.sics.kompics.Scheduler;
-import se.sics.kompics.SpinlockQueue;
+import se.sics.kompics.metrics.SchedulerStats;
 
-// TODO: Auto-generated Javadoc
 /**
  * The
  * <code>Scheduler</code> class.
+ * <p>
+ * Components are scheduled on the worker that executed them last, to keep
+ * their state in that worker's caches, and components that never ran are
+ * assigned to workers round-robin. The scheduling worker pushes them onto
+ * its own deque if that is the one, otherwise they go into the target's
+ * inbox. Idle workers steal from random victims.
  *
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -39,11 +45,16 @@ import se.sics.kompics.SpinlockQueue;
  */
 public final class WorkStealingScheduler extends Scheduler {
 
+    /**
+     * Number of unsuccessful stealing rounds before an idle worker parks.
+     */
+    public static final int DEFAULT_SPIN_ROUNDS = 64;
     private final int workerCount;
     private final Worker[] workers;
-    private final boolean[] on;
-    private final SpinlockQueue<Worker> sleepingWorkers;
     private final AtomicInteger sleepingWorkerCount;
+    private final AtomicInteger nextWorker = new AtomicInteger(0);
+    final int spinRounds;
+    private volatile long startedAt = 0;
 
     /**
      * Instantiates a new scheduler.
@@ -51,104 +62,129 @@ public final class WorkStealingScheduler extends Scheduler {
      * @param wc the wc
      */
     public WorkStealingScheduler(int wc) {
+        this(wc, DEFAULT_SPIN_ROUNDS);
+    }
+
+    /**
+     * Instantiates a new scheduler.
+     *
+     * @param wc the wc
+     * @param spinRounds the number of stealing rounds before parking
+     */
+    public WorkStealingScheduler(int wc, int spinRounds) {
+        if (wc < 1) {
+            throw new IllegalArgumentException("Need at least one worker, got " + wc);
+        }
         workerCount = wc;
+        this.spinRounds = spinRounds;
         workers = new Worker[workerCount];
-        sleepingWorkers = new SpinlockQueue<Worker>();
         sleepingWorkerCount = new AtomicInteger(0);
-        on = new boolean[workerCount];
 
         for (int i = 0; i < workers.length; i++) {
             workers[i] = new Worker(this, i);
-            on[i] = true;
         }
     }
 
     public final void proceed() {
+        startedAt = System.nanoTime();
         for (int i = 0; i < workers.length; i++) {
             workers[i].start();
         }
     }
 
     public final void shutdown() {
-        for (int i = 0; i < workers.length; i++) {
-            synchronized (workers[i]) {
-                on[i] = false;
-                workers[i].quitWhenNoMoreWork();
-                workers[i].notify();
+        asyncShutdown();
+        Thread current = Thread.currentThread();
+        long deadline = System.currentTimeMillis() + Kompics.SHUTDOWN_TIMEOUT;
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                long left = deadline - System.currentTimeMillis();
+                if (workers[i] == current || !workers[i].isAlive()) {
+                    continue;
+                }
+                if (left > 0) {
+                    workers[i].join(left);
+                }
+                if (workers[i].isAlive()) {
+                    Kompics.logger.warn("Failed orderly Kompics shutdown");
+                    return;
+                }
             }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
         }
     }
 
     public final void schedule(Component component, int wid) {
         ComponentCore core = (ComponentCore) component;
-        // check if any worker need waking up
-        int swc = sleepingWorkerCount.get();
-        Worker toAwake = null;
-        if (swc > 0) {
-            swc = sleepingWorkerCount.getAndDecrement();
-            if (swc > 0) {
-                toAwake = sleepingWorkers.poll();
-            }
+        Thread current = Thread.currentThread();
+        Worker self = null;
+        if ((current instanceof Worker) && (((Worker) current).getScheduler() == this)) {
+            self = (Worker) current;
         }
-
-        if (toAwake == null) {
-            // add new work to the queue of the worker who generated it
-            workers[wid].addWork(core);
+        // prefer the worker that ran the component last, and spread new ones round-robin
+        int target = core.getWid();
+        if ((target < 0) || (target >= workerCount)) {
+            target = (nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workerCount;
+        }
+        Worker w = workers[target];
+        if (w == self) {
+            w.pushWork(core);
         } else {
-            // add new work to the queue of the worker to be awaken
-            workers[toAwake.getWid()].addWork(core);
-
-            // wake up sleeping worker
-            synchronized (toAwake) {
-                toAwake.notify();
+            w.addWork(core);
+            if (w.unpark()) {
+                return;
+            }
+        }
+        // the target is busy, so let somebody else steal if possible
+        if (sleepingWorkerCount.get() > 0) {
+            int start = (self != null) ? self.nextRandom() : target;
+            for (int i = 0; i < workerCount; i++) {
+                if (workers[(start + i) % workerCount].unpark()) {
+                    return;
+                }
             }
         }
-
     }
 
-    final ComponentCore stealWork(int wid) {
-        ComponentCore core = null;
-        int wmax, max;
-        do {
-            max = 0;
-            wmax = wid;
-            for (int i = 0; i < workers.length; i++) {
-                if (i != wid) {
-                    int wc = workers[i].getWorkCount();
-                    if (wc > max) {
-                        max = wc;
-                        wmax = i;
-                    }
+    final ComponentCore stealWork(Worker thief) {
+        if (workerCount == 1) {
+            return null;
+        }
+        int start = thief.nextRandom();
+        for (int i = 0; i < workerCount; i++) {
+            Worker victim = workers[(start + i) % workerCount];
+            if (victim != thief) {
+                ComponentCore core = victim.getWork();
+                if (core != null) {
+                    return core;
                 }
             }
-            core = workers[wmax].getWork();
-            // repeat until some worker has some work
-        } while (core == null && max > 0);
-        return core;
+        }
+        return null;
     }
 
-    final void waitForWork(Worker w) {
-        synchronized (w) {
-            sleepingWorkers.offer(w);
-            sleepingWorkerCount.incrementAndGet();
-//			try {
-//				// Kompics.logger.debug("{} sleeping.", w.getWid());
-//				if (!on[w.getWid()]) {
-//					// do not wait when the worker is supposed to quit
-//					return;
-//				}
-//
-//				w.wait();
-//			} catch (InterruptedException e) {
-//			}
-            // Kompics.logger.debug("{} sleeping.", w.getWid());
-            if (!on[w.getWid()]) {
-                // do not wait when the worker is supposed to quit
-                return;
-            }
-            w.waitForWork();
-            // Kompics.logger.debug("{} woke up.", w.getWid());
+    final void sleeping(Worker w) {
+        sleepingWorkerCount.incrementAndGet();
+    }
+
+    final void awake(Worker w) {
+        sleepingWorkerCount.decrementAndGet();
+    }
+
+    @Override
+    public SchedulerStats getStats() {
+        long ex = 0, ws = 0, sl = 0, busy = 0;
+        for (int i = 0; i < workers.length; i++) {
+            ex += workers[i].executionCount;
+            ws += workers[i].workStealingCount;
+            sl += workers[i].sleepCount;
+            busy += workers[i].busyNanos;
         }
+        long started = startedAt;
+        long elapsed = (started != 0) ? System.nanoTime() - started : 0;
+        double utilization = (elapsed > 0) ? Math.min(1.0, ((double) busy) / (elapsed * workerCount)) : 0.0;
+        return new SchedulerStats(workerCount, utilization, ex, ws, sl);
     }
 
     public final void logStats() {
@@ -158,21 +194,27 @@ public final class WorkStealingScheduler extends Scheduler {
             ws += workers[i].workStealingCount;
             sl += workers[i].sleepCount;
             Kompics.logger
-                    .error("Worker {}: executed {}, stole {}, slept {}",
+                    .info("Worker {}: executed {}, stole {}, slept {}",
                     new Object[]{i, workers[i].executionCount,
                         workers[i].workStealingCount,
                         workers[i].sleepCount});
         }
-        Kompics.logger.error("TOTAL: executed {}, stole {}, slept {}",
+        Kompics.logger.info("TOTAL: executed {}, stole {}, slept {}",
                 new Object[]{ex, ws, sl});
     }
 
-    final void execute(Component component, int w) {
-        executeComponent(component, w);
+    final void execute(ComponentCore core, int w) {
+        try {
+            executeComponent(core, w);
+        } catch (Throwable e) {
+            Kompics.getFaultHandler().handle(new Fault(e, core, null));
+        }
     }
 
     @Override
     public void asyncShutdown() {
-        shutdown();
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].quitWhenNoMoreWork();
+        }
     }
 }
@@ -20,14 +20,23 @@
  */
 package se.sics.kompics.scheduler;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import se.sics.kompics.ComponentCore;
-import se.sics.kompics.SpinlockQueue;
 
 /**
  * The <code>Worker</code> class.
+ * <p>
+ * Each worker owns a {@link WorkDeque} it pushes to and pops from LIFO, and
+ * an inbox through which other threads hand it components that last ran on
+ * it. Idle workers steal from randomly chosen victims, spin for a while and
+ * finally park until new work is scheduled.
+ * <p>
+ * To avoid starving older work behind a pair of components that keep
+ * scheduling each other, every {@link #FAIRNESS_INTERVAL}th local pick is
+ * taken from the oldest end instead.
  * 
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -35,19 +44,30 @@ import se.sics.kompics.SpinlockQueue;
  */
 public class Worker extends Thread {
 
+	static final int FAIRNESS_INTERVAL = 32;
+
 	private final WorkStealingScheduler scheduler;
 
 	private final int wid;
 
-	private final SpinlockQueue<ComponentCore> workQueue;
+	private final WorkDeque<ComponentCore> deque;
+
+	private final ConcurrentLinkedQueue<ComponentCore> inbox;
+
+	private final AtomicBoolean parked;
+
+	private volatile boolean shouldQuit;
 
-	private final AtomicInteger workCount;
+	private int seed;
 
-	private final AtomicBoolean workAvailable = new AtomicBoolean(false);
+	private int localPicks;
 
-	private final AtomicBoolean shouldQuit;
+	private ComponentCore current;
 
-	int executionCount, workStealingCount, sleepCount;
+	// only written by the worker itself
+	volatile int executionCount, workStealingCount, sleepCount;
+
+	volatile long busyNanos;
 
 	/**
 	 * Instantiates a new worker.
@@ -61,9 +81,11 @@ public class Worker extends Thread {
 		super();
 		this.scheduler = scheduler;
 		this.wid = wid;
-		this.workQueue = new SpinlockQueue<ComponentCore>();
-		this.workCount = new AtomicInteger(0);
-		this.shouldQuit = new AtomicBoolean(false);
+		this.deque = new WorkDeque<ComponentCore>();
+		this.inbox = new ConcurrentLinkedQueue<ComponentCore>();
+		this.parked = new AtomicBoolean(false);
+		this.shouldQuit = false;
+		this.seed = (wid + 1) * 0x9E3779B9;
 		super.setName("Kompics worker-" + wid);
 	}
 
@@ -75,60 +97,136 @@ public class Worker extends Thread {
 	@Override
 	public final void run() {
 		while (true) {
-			try {
-				boolean stillOn = executeComponent();
-				if (!stillOn) {
-					return;
-				}
-			} finally {
-				// run forever
+			ComponentCore core = findWork();
+			if (core == null) {
+				return;
 			}
+			executionCount++;
+			current = core;
+			long start = System.nanoTime();
+			scheduler.execute(core, wid);
+			busyNanos += System.nanoTime() - start;
+			current = null;
 		}
 	}
 
-	private final boolean executeComponent() {
-		ComponentCore core = null;
-		do {
-			// try to do local work
-			core = workQueue.poll();
-			if (core == null) {
-				// got no more work; should I quit?
-				if (shouldQuit.get()) {
-					return false;
-				}
-
-				// try to steal work from other workers
+	/**
+	 * @return the next component to execute or null if the worker should quit
+	 */
+	private ComponentCore findWork() {
+		int idleRounds = 0;
+		while (true) {
+			ComponentCore core = getLocalWork();
+			if (core != null) {
+				return core;
+			}
+			core = scheduler.stealWork(this);
+			if (core != null) {
 				workStealingCount++;
-				core = scheduler.stealWork(wid);
-				if (core == null) {
-					// there is no work in the system
-					sleepCount++;
-					scheduler.waitForWork(this);
+				return core;
+			}
+			if (shouldQuit) {
+				return null;
+			}
+			if (idleRounds < scheduler.spinRounds) {
+				idleRounds++;
+				Thread.yield();
+				continue;
+			}
+			// announce that we are going to sleep before checking for work
+			// one last time, so a concurrent schedule() can't be missed
+			parked.set(true);
+			scheduler.sleeping(this);
+			core = getLocalWork();
+			if (core == null) {
+				core = scheduler.stealWork(this);
+			}
+			if (core != null) {
+				if (parked.compareAndSet(true, false)) {
+					scheduler.awake(this);
 				}
-			} else {
-				workCount.decrementAndGet();
+				return core;
 			}
-		} while (core == null);
-
-		executionCount++;
-		scheduler.execute(core, wid);
-		// core.execute(wid);
+			sleepCount++;
+			while (parked.get() && !shouldQuit) {
+				LockSupport.park(this);
+			}
+			idleRounds = 0;
+		}
+	}
 
-		return true;
+	private ComponentCore getLocalWork() {
+		ComponentCore core;
+		if (++localPicks % FAIRNESS_INTERVAL == 0) {
+			core = inbox.poll();
+			if (core == null) {
+				core = deque.steal();
+			}
+		} else {
+			core = deque.pop();
+			if (core == null) {
+				core = inbox.poll();
+			}
+		}
+		return core;
 	}
 
+	/**
+	 * Called from other workers trying to steal work from this one.
+	 */
 	final ComponentCore getWork() {
-		ComponentCore core = workQueue.poll();
-		if (core != null) {
-			workCount.decrementAndGet();
+		ComponentCore core = deque.steal();
+		if (core == null) {
+			core = inbox.poll();
 		}
 		return core;
 	}
 
+	/**
+	 * Must only be called from this worker's own thread.
+	 */
+	final void pushWork(ComponentCore core) {
+		if (core == current) {
+			// a component rescheduling itself goes to the back of the line
+			inbox.offer(core);
+		} else {
+			deque.push(core);
+		}
+	}
+
+	/**
+	 * May be called from any thread.
+	 */
 	final void addWork(ComponentCore core) {
-		workQueue.offer(core);
-		workCount.incrementAndGet();
-		workAvailable.set(true);
+		inbox.offer(core);
+	}
+
+	/**
+	 * Wakes up the worker if it is parked.
+	 * 
+	 * @return whether the worker was parked
+	 */
+	final boolean unpark() {
+		if (parked.compareAndSet(true, false)) {
+			scheduler.awake(this);
+			LockSupport.unpark(this);
+			return true;
+		}
+		return false;
+	}
+
+	final WorkStealingScheduler getScheduler() {
+		return scheduler;
+	}
+
+	final int nextRandom() {
+		// xorshift
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x & Integer.MAX_VALUE;
 	}
 
 	/**
@@ -137,7 +235,7 @@ public class Worker extends Thread {
 	 * @return the work count
 	 */
 	public final int getWorkCount() {
-		return workCount.get();
+		return deque.size() + inbox.size();
 	}
 
 	/**
@@ -150,19 +248,7 @@ public class Worker extends Thread {
 	}
 
 	final void quitWhenNoMoreWork() {
-		shouldQuit.set(true);
-	}
-	
-	/**
-	 * The caller is expected to hold the object lock on entry
-	 */
-	void waitForWork() {
-		try {
-			if (!workAvailable.compareAndSet(true, false)) {
-				this.wait();
-			}
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+		shouldQuit = true;
+		LockSupport.unpark(this);
 	}
 }
@@ -0,0 +1,56 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates {@link UUIDIdentifier}s from a per node 64-bit counter.
+ * <p>
+ * The most significant half of each id is the node prefix and the least
+ * significant half the counter, so ids are unique as long as prefixes are, are
+ * monotonic per factory, and cost a single atomic increment. The no-argument
+ * constructor draws a random prefix once, which is the only time this class
+ * touches {@code SecureRandom}.
+ */
+public final class SequentialIdentifierFactory implements IdentifierFactory {
+
+    private final long prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    public SequentialIdentifierFactory() {
+        this(UUID.randomUUID().getMostSignificantBits());
+    }
+
+    public SequentialIdentifierFactory(long nodePrefix) {
+        this.prefix = nodePrefix;
+    }
+
+    public long prefix() {
+        return prefix;
+    }
+
+    @Override
+    public Identifier newId() {
+        return new UUIDIdentifier(new UUID(prefix, counter.incrementAndGet()));
+    }
+}
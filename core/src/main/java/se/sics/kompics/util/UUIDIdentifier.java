@@ -0,0 +1,100 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.UUID;
+
+/**
+ * An {@link Identifier} backed by a {@link UUID}.
+ * <p>
+ * This is the shape of the identifiers the timer and network ports use, since
+ * it can be handed out as a plain {@link UUID} to code that predates
+ * identifiers. Whether the bits are random or allocated from a counter is up to
+ * the {@link IdentifierFactory} that created it.
+ */
+public final class UUIDIdentifier implements Identifier {
+
+    /**
+     * Allocates identifiers from {@link UUID#randomUUID()}, as the ports used
+     * to. Every allocation goes through {@code SecureRandom}.
+     */
+    public static final IdentifierFactory RANDOM = new IdentifierFactory() {
+
+        @Override
+        public Identifier newId() {
+            return new UUIDIdentifier(UUID.randomUUID());
+        }
+    };
+
+    public final UUID id;
+
+    public UUIDIdentifier(UUID id) {
+        if (id == null) {
+            throw new NullPointerException("id");
+        }
+        this.id = id;
+    }
+
+    /**
+     * Returns the {@link UUID} form of {@code id}.
+     * <p>
+     * @throws IllegalArgumentException if {@code id} was not created by a
+     * UUID based {@link IdentifierFactory}
+     */
+    public static UUID toUUID(Identifier id) {
+        if (id instanceof UUIDIdentifier) {
+            return ((UUIDIdentifier) id).id;
+        }
+        throw new IllegalArgumentException(id + " is not a UUID based identifier");
+    }
+
+    @Override
+    public int partition(int nrPartitions) {
+        return (hashCode() & Integer.MAX_VALUE) % nrPartitions;
+    }
+
+    @Override
+    public int compareTo(Identifier o) {
+        UUIDIdentifier that = (UUIDIdentifier) o;
+        return this.id.compareTo(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return id.equals(((UUIDIdentifier) obj).id);
+    }
+
+    @Override
+    public String toString() {
+        return id.toString();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChannelSelectorSetTest {
+
+    static class Msg implements KompicsEvent {
+
+        final int dst;
+        final int src;
+
+        Msg(int dst, int src) {
+            this.dst = dst;
+            this.src = src;
+        }
+    }
+
+    static class SubMsg extends Msg {
+
+        SubMsg(int dst, int src) {
+            super(dst, src);
+        }
+    }
+
+    static class SubSubMsg extends SubMsg {
+
+        SubSubMsg(int dst, int src) {
+            super(dst, src);
+        }
+    }
+
+    static class Other implements KompicsEvent {
+    }
+
+    static class DstSelector extends ChannelSelector<Msg, Integer> {
+
+        DstSelector(int dst) {
+            super(Msg.class, dst, true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class SrcSelector extends ChannelSelector<Msg, Integer> {
+
+        SrcSelector(int src) {
+            super(Msg.class, src, true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.src;
+        }
+    }
+
+    static class SubSrcSelector extends ChannelSelector<SubMsg, Integer> {
+
+        SubSrcSelector(int src) {
+            super(SubMsg.class, src, true);
+        }
+
+        @Override
+        public Integer getValue(SubMsg event) {
+            return event.src;
+        }
+    }
+
+    static class OtherSelector extends ChannelSelector<Other, Integer> {
+
+        OtherSelector() {
+            super(Other.class, 0, true);
+        }
+
+        @Override
+        public Integer getValue(Other event) {
+            return 0;
+        }
+    }
+
+    static class TestChannel implements ChannelCore<PortType> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public PortType getPortType() {
+            return null;
+        }
+    }
+
+    @Test
+    public void selectsByValueAndSubtype() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel c1 = new TestChannel();
+        TestChannel c2 = new TestChannel();
+        set.addChannelSelector(c1, new DstSelector(1));
+        set.addChannelSelector(c2, new DstSelector(2));
+
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new Msg(1, 0)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubMsg(2, 0)));
+        Assert.assertEquals(0, set.get(new Msg(3, 0)).length);
+        Assert.assertEquals(0, set.get(new Other()).length);
+        // lookups don't allocate new arrays
+        Assert.assertSame(set.get(new Msg(1, 0)), set.get(new Msg(1, 5)));
+    }
+
+    @Test
+    public void multipleSelectorTypesAreDistinct() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel c1 = new TestChannel();
+        TestChannel c2 = new TestChannel();
+        set.addChannelSelector(c1, new DstSelector(1));
+        set.addChannelSelector(c2, new SrcSelector(1));
+
+        ChannelCore<?>[] both = set.get(new Msg(1, 1));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(c1, c2)), new HashSet<>(Arrays.asList(both)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubMsg(0, 1)));
+    }
+
+    @Test
+    public void removeAndCopy() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel c1 = new TestChannel();
+        TestChannel c2 = new TestChannel();
+        set.addChannelSelector(c1, new DstSelector(1));
+        set.addChannelSelector(c2, new DstSelector(1));
+        Assert.assertEquals(2, set.get(new SubMsg(1, 0)).length);
+
+        ChannelSelectorSet copy = new ChannelSelectorSet(set);
+        set.removeChannel(c1);
+        Assert.assertFalse(set.contains(c1));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubMsg(1, 0)));
+        Assert.assertEquals(2, copy.get(new SubMsg(1, 0)).length);
+
+        set.removeChannel(c2);
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.get(new Msg(1, 0)).length);
+    }
+
+    @Test
+    public void updatesAfterLookups() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel c1 = new TestChannel();
+        TestChannel c2 = new TestChannel();
+        TestChannel c3 = new TestChannel();
+        set.addChannelSelector(c3, new OtherSelector());
+        set.addChannelSelector(c1, new DstSelector(1));
+        // resolve and cache both classes before changing the set
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new SubMsg(1, 1)));
+        ChannelCore<?>[] others = set.get(new Other());
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c3}, others);
+
+        set.addChannelSelector(c2, new SrcSelector(1));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(c1, c2)), new HashSet<>(Arrays.asList(set.get(new SubMsg(1, 1)))));
+        Assert.assertSame(others, set.get(new Other())); // untouched event types are shared
+
+        // replacing a channel's selector drops the old one
+        set.addChannelSelector(c1, new DstSelector(2));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubMsg(1, 1)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new SubMsg(2, 0)));
+
+        set.removeChannel(c2);
+        Assert.assertEquals(0, set.get(new SubMsg(1, 1)).length);
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new Msg(2, 0)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c3}, set.get(new Other()));
+    }
+
+    @Test
+    public void declaredAndUndeclaredSubtypesInherit() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel c1 = new TestChannel();
+        TestChannel c2 = new TestChannel();
+        set.addChannelSelector(c1, new DstSelector(1));
+        set.addChannelSelector(c2, new SubSrcSelector(1));
+        HashSet<ChannelCore<?>> both = new HashSet<ChannelCore<?>>(Arrays.asList(c1, c2));
+
+        // resolve the undeclared class first, so it can't pick up the declared one's entry
+        Assert.assertEquals(both, new HashSet<>(Arrays.asList(set.get(new SubSubMsg(1, 1)))));
+        Assert.assertEquals(both, new HashSet<>(Arrays.asList(set.get(new SubMsg(1, 1)))));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new Msg(1, 1)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c1}, set.get(new SubMsg(1, 2)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubSubMsg(2, 1)));
+
+        set.removeChannel(c1);
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubMsg(1, 1)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c2}, set.get(new SubSubMsg(1, 1)));
+        Assert.assertEquals(0, set.get(new Msg(1, 1)).length);
+    }
+}
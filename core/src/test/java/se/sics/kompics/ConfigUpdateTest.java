@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
 import se.sics.kompics.config.ValueMerger;
+import se.sics.kompics.config.ValueOptions;
 
 /**
  *
@@ -128,6 +129,130 @@ public class ConfigUpdateTest {
         }
     }
 
+    private static final int BURST = 50;
+    private static final BlockingQueue<String> burstQ = new LinkedBlockingQueue<String>();
+
+    @Test
+    public void burstTest() throws InterruptedException {
+        Kompics.createAndStart(BurstParent.class);
+        // everyone ends up with the last value, however many updates were merged
+        for (int i = 0; i < 2; i++) {
+            String s = burstQ.poll(timeout, timeUnit);
+            Assert.assertNotNull("Timeout on waiting for the last update", s);
+            Assert.assertTrue(s, s.endsWith(" " + (BURST - 1)));
+        }
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
+    public static class BurstParent extends ComponentDefinition {
+
+        {
+            create(BurstUpdater.class, Init.NONE);
+            create(BurstSibling.class, Init.NONE);
+        }
+
+        @Override
+        public void postUpdate() {
+            long v = config().getValueOrDefault("burstValue", -1l);
+            if (v == BURST - 1) {
+                burstQ.offer("parent " + v);
+            }
+        }
+    }
+
+    public static class BurstUpdater extends ComponentDefinition {
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (long i = 0; i < BURST; i++) {
+                        Config.Builder builder = config().modify(id());
+                        builder.setValue("burstValue", i);
+                        updateConfig(builder.finalise());
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class BurstSibling extends ComponentDefinition {
+
+        @Override
+        public void postUpdate() {
+            long v = config().getValueOrDefault("burstValue", -1l);
+            if (v == BURST - 1) {
+                burstQ.offer("sibling " + v);
+            }
+        }
+    }
+
+    private static final BlockingQueue<String> mixedQ = new LinkedBlockingQueue<String>();
+
+    @Test
+    public void mixedBurstTest() throws InterruptedException {
+        Kompics.createAndStart(MixedParent.class);
+        // NEWEST values merge, APPEND values don't, and neither may overtake the other
+        for (int i = 0; i < 2; i++) {
+            String s = mixedQ.poll(timeout, timeUnit);
+            Assert.assertNotNull("Timeout on waiting for the last update", s);
+            Assert.assertTrue(s, s.endsWith(" [" + (BURST - 2) + ", " + (BURST - 1) + "]"));
+        }
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
+    public static class MixedParent extends ComponentDefinition {
+
+        {
+            create(MixedUpdater.class, Init.NONE);
+            create(MixedSibling.class, Init.NONE);
+        }
+
+        @Override
+        public void postUpdate() {
+            offerMixed("parent", config());
+        }
+    }
+
+    public static class MixedUpdater extends ComponentDefinition {
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (long i = 0; i < BURST; i++) {
+                        Config.Builder builder = config().modify(id());
+                        ValueMerger merger = (i % 2 == 0) ? ValueMerger.NEWEST : ValueMerger.APPEND;
+                        builder.setValue("mixedValue", i, ValueOptions.usingMerger(merger));
+                        updateConfig(builder.finalise());
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class MixedSibling extends ComponentDefinition {
+
+        @Override
+        public void postUpdate() {
+            offerMixed("sibling", config());
+        }
+    }
+
+    // the last update appends to the value of the one before
+    private static void offerMixed(String name, Config config) {
+        Object v = config.readValue("mixedValue").orNull();
+        if ((v instanceof java.util.Collection) && ((java.util.Collection<?>) v).contains((long) (BURST - 1))) {
+            mixedQ.offer(name + " " + v);
+        }
+    }
+
     private static void waitFor(String s) {
         try {
             String qString = stringQ.poll(timeout, timeUnit);
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that the per-class dispatch cache of {@link HandlerStore} follows
+ * (un)subscriptions made after an event class was first delivered.
+ */
+@RunWith(JUnit4.class)
+public class HandlerStoreTest {
+
+    static class BaseEvent implements KompicsEvent {
+    }
+
+    static class SubEvent extends BaseEvent {
+    }
+
+    static class NoopHandler<E extends KompicsEvent> extends Handler<E> {
+
+        NoopHandler(Class<E> eventType) {
+            super(eventType);
+        }
+
+        @Override
+        public void handle(E event) {
+        }
+    }
+
+    private static Handler[] dispatch(HandlerStore store, KompicsEvent event) {
+        HandlerStore.HandlerList hl = store.getSubscriptions(event);
+        Handler[] res = new Handler[hl.length];
+        System.arraycopy(hl.subscriptions, 0, res, 0, hl.length);
+        return res;
+    }
+
+    @Test
+    public void subscribeAfterDispatch() {
+        HandlerStore store = new HandlerStore();
+        NoopHandler<BaseEvent> baseH = new NoopHandler<>(BaseEvent.class);
+        NoopHandler<SubEvent> subH = new NoopHandler<>(SubEvent.class);
+
+        Assert.assertEquals(0, dispatch(store, new BaseEvent()).length);
+        Assert.assertEquals(0, dispatch(store, new SubEvent()).length);
+        Assert.assertFalse(store.hasSubscription(new SubEvent()));
+
+        store.subscribe(baseH);
+        Assert.assertArrayEquals(new Handler[]{baseH}, dispatch(store, new BaseEvent()));
+        Assert.assertArrayEquals(new Handler[]{baseH}, dispatch(store, new SubEvent()));
+
+        store.subscribe(subH);
+        Assert.assertArrayEquals(new Handler[]{baseH}, dispatch(store, new BaseEvent()));
+        Assert.assertArrayEquals(new Handler[]{baseH, subH}, dispatch(store, new SubEvent()));
+    }
+
+    @Test
+    public void unsubscribeAfterDispatch() {
+        HandlerStore store = new HandlerStore();
+        NoopHandler<BaseEvent> baseH = new NoopHandler<>(BaseEvent.class);
+        NoopHandler<SubEvent> subH = new NoopHandler<>(SubEvent.class);
+        store.subscribe(baseH);
+        store.subscribe(subH);
+
+        Assert.assertArrayEquals(new Handler[]{baseH, subH}, dispatch(store, new SubEvent()));
+        Assert.assertArrayEquals(new Handler[]{baseH}, dispatch(store, new BaseEvent()));
+
+        Assert.assertTrue(store.unsubscribe(baseH));
+        Assert.assertArrayEquals(new Handler[]{subH}, dispatch(store, new SubEvent()));
+        Assert.assertEquals(0, dispatch(store, new BaseEvent()).length);
+
+        Assert.assertTrue(store.unsubscribe(subH));
+        Assert.assertEquals(0, dispatch(store, new SubEvent()).length);
+        Assert.assertFalse(store.hasSubscription(new SubEvent()));
+        Assert.assertFalse(store.unsubscribe(subH));
+    }
+
+    @Test
+    public void generationFollowsSubscriptions() {
+        HandlerStore store = new HandlerStore();
+        NoopHandler<BaseEvent> baseH = new NoopHandler<>(BaseEvent.class);
+        int g0 = store.generation();
+        store.subscribe(baseH);
+        int g1 = store.generation();
+        Assert.assertTrue(g1 != g0);
+        dispatch(store, new SubEvent());
+        Assert.assertEquals(g1, store.generation());
+        store.unsubscribe(baseH);
+        Assert.assertTrue(store.generation() != g1);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HandlerTypesTest {
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class SpecialPing extends Ping {
+    }
+
+    public static class Msg implements KompicsEvent, PatternExtractor<Class<Object>, String> {
+
+        @Override
+        public Class<Object> extractPattern() {
+            return null;
+        }
+
+        @Override
+        public String extractValue() {
+            return null;
+        }
+    }
+
+    // see HandlerTypesTest$GeneratedHandler$$HandlerTypes
+    public static class GeneratedHandler extends Handler<Ping> {
+
+        @Override
+        public void handle(Ping event) {
+        }
+    }
+
+    @Test
+    public void reflectsOncePerClass() {
+        Handler<Ping> h1 = newHandler();
+        Handler<Ping> h2 = newHandler();
+        Assert.assertSame(h1.getClass(), h2.getClass());
+        Assert.assertEquals(Ping.class, HandlerTypes.parameter(h1.getClass(), 0));
+        Assert.assertSame(HandlerTypes.parameter(h1.getClass(), 0), HandlerTypes.parameter(h2.getClass(), 0));
+    }
+
+    @Test
+    public void reflectsMatchedHandlers() {
+        ClassMatchedHandler<String, Msg> h = new ClassMatchedHandler<String, Msg>() {
+
+            @Override
+            public void handle(String content, Msg context) {
+            }
+        };
+        Assert.assertEquals(String.class, HandlerTypes.parameter(h.getClass(), 0));
+        Assert.assertEquals(Msg.class, HandlerTypes.parameter(h.getClass(), 1));
+    }
+
+    @Test
+    public void prefersGeneratedTypes() {
+        // the generated class deliberately disagrees with reflection
+        Assert.assertEquals(SpecialPing.class, HandlerTypes.parameter(GeneratedHandler.class, 0));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failsWithoutParameter() {
+        HandlerTypes.parameter(newHandler().getClass(), 1);
+    }
+
+    private static Handler<Ping> newHandler() {
+        return new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests the array backed single consumer queue behind {@link SpinlockQueue}.
+ */
+@RunWith(JUnit4.class)
+public class MpscArrayQueueTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int PER_PRODUCER = 100000;
+
+    @Test
+    public void boundedRejectsWhenFull() {
+        MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(3, false); // rounded up to 4
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(q.offer(i));
+        }
+        Assert.assertFalse(q.offer(4));
+        Assert.assertEquals(Integer.valueOf(0), q.poll());
+        Assert.assertTrue(q.offer(4));
+        for (int i = 1; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        Assert.assertNull(q.poll());
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void growsInOrder() {
+        MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(2, true);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(q.offer(i));
+        }
+        Assert.assertFalse(q.isEmpty());
+        Assert.assertEquals(Integer.valueOf(0), q.peek());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void shrinksOnceDrained() {
+        MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(2, true);
+        for (int i = 0; i < 1000; i++) {
+            q.offer(i);
+        }
+        Assert.assertTrue(q.chunkSize() > 2);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        Assert.assertNull(q.poll());
+        Assert.assertEquals(2, q.chunkSize());
+        q.offer(1000);
+        q.offer(1001);
+        Assert.assertEquals(Integer.valueOf(1000), q.poll());
+        Assert.assertEquals(Integer.valueOf(1001), q.poll());
+        Assert.assertNull(q.poll());
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void removeSkipsElement() {
+        MpscArrayQueue<Integer> q = new MpscArrayQueue<Integer>(2, true);
+        for (int i = 0; i < 5; i++) {
+            q.offer(i);
+        }
+        Assert.assertTrue(q.remove(0));
+        Assert.assertTrue(q.remove(3));
+        Assert.assertFalse(q.remove(7));
+        Assert.assertEquals(Integer.valueOf(1), q.peek());
+        Assert.assertEquals(Integer.valueOf(1), q.poll());
+        Assert.assertEquals(Integer.valueOf(2), q.poll());
+        Assert.assertEquals(Integer.valueOf(4), q.poll());
+        Assert.assertNull(q.poll());
+        q.offer(5);
+        q.clear();
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersKeepTheirOrder() throws InterruptedException {
+        final MpscArrayQueue<long[]> q = new MpscArrayQueue<long[]>(4, true);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int pid = p;
+            producers[p] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < PER_PRODUCER; i++) {
+                        q.offer(new long[]{pid, i});
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        go.countDown();
+        long[] next = new long[PRODUCERS];
+        int received = 0;
+        while (received < PRODUCERS * PER_PRODUCER) {
+            long[] e = q.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            int pid = (int) e[0];
+            Assert.assertEquals(next[pid], e[1]);
+            next[pid]++;
+            received++;
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        Assert.assertNull(q.poll());
+    }
+}
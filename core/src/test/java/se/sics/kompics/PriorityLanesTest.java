@@ -0,0 +1,219 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+@RunWith(JUnit4.class)
+public class PriorityLanesTest {
+
+    private static final int BURST = 40;
+
+    private static CountDownLatch consumerBlocked;
+    private static CountDownLatch releaseConsumer;
+    private static CountDownLatch done;
+    private static final List<String> handled = new CopyOnWriteArrayList<String>();
+
+    @Test
+    public void priorityPortOvertakesData() throws Exception {
+        run(new String[]{"A"}, BURST, true);
+        Assert.assertEquals("C", handled.get(0));
+        Assert.assertEquals("P", handled.get(1));
+        for (int i = 2; i < handled.size(); i++) {
+            Assert.assertEquals("A", handled.get(i));
+        }
+    }
+
+    @Test
+    public void weightedFairShare() throws Exception {
+        run(new String[]{"A", "B"}, BURST, false);
+        Assert.assertEquals("C", handled.get(0));
+        // A has weight 3, B weight 1
+        int a = 0, b = 0;
+        for (String s : handled.subList(1, 17)) {
+            if (s.equals("A")) {
+                a++;
+            } else if (s.equals("B")) {
+                b++;
+            }
+        }
+        Assert.assertEquals(12, a);
+        Assert.assertEquals(4, b);
+    }
+
+    private void run(String[] ports, int perPort, boolean priority) throws Exception {
+        consumerBlocked = new CountDownLatch(1);
+        releaseConsumer = new CountDownLatch(1);
+        done = new CountDownLatch(1 + ports.length * perPort + (priority ? 1 : 0));
+        handled.clear();
+        Producer.ports = ports;
+        Producer.perPort = perPort;
+        Producer.priority = priority;
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.LANES_KEY, true);
+        cb.setValue(EventQueueConfig.PRIORITY_PORTS_KEY, Arrays.asList(PriorityPort.class.getName()));
+        ((Config.Impl) Kompics.getConfig()).apply(cb.finalise(), ValueMerger.NONE);
+        EventQueueConfig.invalidate();
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+            Kompics.resetConfig();
+            EventQueueConfig.invalidate();
+        }
+    }
+
+    static class Item implements KompicsEvent {
+
+        final String tag;
+
+        Item(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public static class PortA extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class PortB extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class PortC extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class PriorityPort extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        public Root() {
+            Component producer = create(Producer.class, Init.NONE);
+            Component consumer = create(Consumer.class, Init.NONE);
+            connect(producer.getPositive(PortA.class), consumer.getNegative(PortA.class));
+            connect(producer.getPositive(PortB.class), consumer.getNegative(PortB.class));
+            connect(producer.getPositive(PortC.class), consumer.getNegative(PortC.class));
+            connect(producer.getPositive(PriorityPort.class), consumer.getNegative(PriorityPort.class));
+        }
+    }
+
+    public static class Producer extends ComponentDefinition {
+
+        static String[] ports;
+        static int perPort;
+        static boolean priority;
+
+        final Negative<PortA> a = provides(PortA.class);
+        final Negative<PortB> b = provides(PortB.class);
+        final Negative<PortC> c = provides(PortC.class);
+        final Negative<PriorityPort> p = provides(PriorityPort.class);
+
+        public Producer() {
+            subscribe(startHandler, control);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Item("C"), c);
+                try {
+                    consumerBlocked.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                for (String port : ports) {
+                    for (int i = 0; i < perPort; i++) {
+                        if (port.equals("A")) {
+                            trigger(new Item(port), a);
+                        } else {
+                            trigger(new Item(port), b);
+                        }
+                    }
+                }
+                if (priority) {
+                    trigger(new Item("P"), p);
+                }
+                releaseConsumer.countDown();
+            }
+        };
+    }
+
+    public static class Consumer extends ComponentDefinition {
+
+        final Positive<PortA> a = requires(PortA.class);
+        final Positive<PortB> b = requires(PortB.class);
+        final Positive<PortC> c = requires(PortC.class);
+        final Positive<PriorityPort> p = requires(PriorityPort.class);
+
+        public Consumer() {
+            setPortWeight(a, 3);
+            subscribe(itemHandler, a);
+            subscribe(itemHandler, b);
+            subscribe(itemHandler, c);
+            subscribe(itemHandler, p);
+        }
+
+        final Handler<Item> itemHandler = new Handler<Item>() {
+
+            @Override
+            public void handle(Item event) {
+                handled.add(event.tag);
+                if (event.tag.equals("C")) {
+                    consumerBlocked.countDown();
+                    try {
+                        releaseConsumer.await();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                done.countDown();
+            }
+        };
+    }
+}
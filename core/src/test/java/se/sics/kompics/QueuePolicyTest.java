@@ -0,0 +1,252 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class QueuePolicyTest {
+
+    private static final int BURST = 100;
+    private static final int BOUND = 10;
+
+    private static volatile QueuePolicy policy;
+    private static CountDownLatch consumerBlocked;
+    private static CountDownLatch releaseConsumer;
+    private static CountDownLatch done;
+    private static volatile CountDownLatch holdConsumer;
+    private static volatile Channel<ItemPort> channel;
+    private static final List<Integer> handled = new CopyOnWriteArrayList<Integer>();
+    private static final List<Backpressure> signals = new CopyOnWriteArrayList<Backpressure>();
+    private static final List<Fault> faults = new CopyOnWriteArrayList<Fault>();
+
+    @Test
+    public void dropNewest() throws Exception {
+        run(QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.DROP_NEWEST), BOUND + 1);
+        // the blocking event and then the first BOUND of the burst
+        for (int i = 0; i <= BOUND; i++) {
+            Assert.assertEquals(Integer.valueOf(i), handled.get(i));
+        }
+        Assert.assertTrue(signals.isEmpty());
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        run(QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.DROP_OLDEST), BOUND + 1);
+        // the blocking event and then the last BOUND of the burst
+        Assert.assertEquals(Integer.valueOf(0), handled.get(0));
+        for (int i = 1; i <= BOUND; i++) {
+            Assert.assertEquals(Integer.valueOf(BURST - BOUND + i), handled.get(i));
+        }
+    }
+
+    @Test
+    public void backpressure() throws Exception {
+        run(QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.BACKPRESSURE), BURST + 1);
+        for (int i = 0; i <= BURST; i++) {
+            Assert.assertEquals(Integer.valueOf(i), handled.get(i));
+        }
+        awaitSignals(2);
+        Assert.assertEquals(2, signals.size());
+        Assert.assertTrue(signals.get(0).engaged);
+        Assert.assertEquals(BOUND, signals.get(0).queued);
+        Assert.assertFalse(signals.get(1).engaged);
+        Assert.assertEquals(BOUND / 2, signals.get(1).queued);
+    }
+
+    @Test
+    public void failFaultsConsumer() throws Exception {
+        run(QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.FAIL), BOUND + 1);
+        for (int i = 0; i <= BOUND; i++) {
+            Assert.assertEquals(Integer.valueOf(i), handled.get(i));
+        }
+        // only the first of the dropped events is reported
+        Assert.assertEquals(1, faults.size());
+        Assert.assertTrue(faults.get(0).getSource() instanceof Consumer);
+        Assert.assertEquals(BOUND + 1, ((Item) faults.get(0).getEvent()).n);
+    }
+
+    @Test
+    public void backpressureReleasedOnDisconnect() throws Exception {
+        holdConsumer = new CountDownLatch(1);
+        policy = QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.BACKPRESSURE);
+        reset(BURST + 1);
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            awaitSignals(1);
+            Assert.assertTrue(signals.get(0).engaged);
+            channel.disconnect();
+            awaitSignals(2);
+            // released although the consumer hasn't handled anything since
+            Assert.assertFalse(signals.get(1).engaged);
+            Assert.assertEquals(BURST, signals.get(1).queued);
+            holdConsumer.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50); // no producer is left to notify
+            Assert.assertEquals(2, signals.size());
+        } finally {
+            Kompics.shutdown();
+            holdConsumer = null;
+        }
+    }
+
+    @Test
+    public void validation() {
+        Assert.assertSame(QueuePolicy.UNBOUNDED, QueuePolicy.fromConfig(Kompics.getConfig()));
+        try {
+            QueuePolicy.bounded(BOUND, QueuePolicy.Overflow.DROP_NEWEST).withWatermarks(BOUND + 1, 0);
+            Assert.fail("High watermark above the bound was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private void run(QueuePolicy p, int expected) throws Exception {
+        policy = p;
+        reset(expected);
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50); // nothing else should arrive
+            Assert.assertEquals(expected, handled.size());
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    private void reset(int expected) {
+        consumerBlocked = new CountDownLatch(1);
+        releaseConsumer = new CountDownLatch(1);
+        done = new CountDownLatch(expected);
+        handled.clear();
+        signals.clear();
+        faults.clear();
+    }
+
+    private void awaitSignals(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((signals.size() < n) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+    }
+
+    static class Item implements KompicsEvent {
+
+        final int n;
+
+        Item(int n) {
+            this.n = n;
+        }
+    }
+
+    public static class ItemPort extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        public Root() {
+            Component producer = create(Producer.class, Init.NONE);
+            Component consumer = create(Consumer.class, Init.NONE);
+            channel = connect(producer.getPositive(ItemPort.class), consumer.getNegative(ItemPort.class));
+        }
+
+        @Override
+        public Fault.ResolveAction handleFault(Fault fault) {
+            faults.add(fault);
+            return Fault.ResolveAction.RESOLVED;
+        }
+    }
+
+    public static class Producer extends ComponentDefinition {
+
+        final Negative<ItemPort> port = provides(ItemPort.class);
+
+        public Producer() {
+            subscribe(startHandler, control);
+            subscribe(backpressureHandler, control);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Item(0), port);
+                try {
+                    consumerBlocked.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                for (int i = 1; i <= BURST; i++) {
+                    trigger(new Item(i), port);
+                }
+                releaseConsumer.countDown();
+            }
+        };
+        final Handler<Backpressure> backpressureHandler = new Handler<Backpressure>() {
+
+            @Override
+            public void handle(Backpressure event) {
+                signals.add(event);
+            }
+        };
+    }
+
+    public static class Consumer extends ComponentDefinition {
+
+        final Positive<ItemPort> port = requires(ItemPort.class);
+
+        public Consumer() {
+            setQueuePolicy(port, policy);
+            subscribe(itemHandler, port);
+        }
+
+        final Handler<Item> itemHandler = new Handler<Item>() {
+
+            @Override
+            public void handle(Item event) {
+                handled.add(event.n);
+                if (event.n == 0) {
+                    consumerBlocked.countDown();
+                    try {
+                        releaseConsumer.await();
+                        if (holdConsumer != null) {
+                            holdConsumer.await();
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                done.countDown();
+            }
+        };
+    }
+}
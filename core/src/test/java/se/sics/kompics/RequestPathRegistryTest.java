@@ -0,0 +1,319 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestPathRegistryTest {
+
+    static class TestRequest extends Request {
+    }
+
+    static class TestResponse extends Response {
+
+        TestResponse(TestRequest request) {
+            super(request);
+        }
+    }
+
+    static class StubChannel implements ChannelCore<PortType> {
+
+        boolean destroyed = false;
+
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+            destroyed = true;
+        }
+
+        @Override
+        public PortType getPortType() {
+            return null;
+        }
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            request(TestRequest.class);
+            indication(TestResponse.class);
+        }
+    }
+
+    private static final int ROUNDS = 100;
+    private static final BlockingQueue<Integer> sizes = new LinkedBlockingQueue<Integer>();
+
+    /**
+     * Creates a forwarder, sends a request through it, and destroys it
+     * once the response is back, for a number of rounds.
+     */
+    static class ChurnRoot extends ComponentDefinition {
+
+        private final Positive<TestPort> port = requires(TestPort.class);
+        private Component child;
+        private int round = 0;
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+                @Override
+                public void handle(Start event) {
+                    createChild();
+                }
+            };
+            Handler<Started> startedHandler = new Handler<Started>() {
+                @Override
+                public void handle(Started event) {
+                    trigger(new TestRequest(), port);
+                }
+            };
+            Handler<TestResponse> responseHandler = new Handler<TestResponse>() {
+                @Override
+                public void handle(TestResponse event) {
+                    trigger(Stop.event, child.control());
+                }
+            };
+            Handler<Stopped> stoppedHandler = new Handler<Stopped>() {
+                @Override
+                public void handle(Stopped event) {
+                    disconnect(port.getPair(), child.getPositive(TestPort.class));
+                    destroy(child);
+                    sizes.add(RequestPathRegistry.size());
+                    round++;
+                    if (round < ROUNDS) {
+                        createChild();
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+            subscribe(startedHandler, control);
+            subscribe(responseHandler, port);
+            subscribe(stoppedHandler, control);
+        }
+
+        Class<? extends ComponentDefinition> childType() {
+            return Forwarder.class;
+        }
+
+        private void createChild() {
+            child = create(childType(), Init.NONE);
+            connect(port.getPair(), child.getPositive(TestPort.class));
+            trigger(Start.event, child.control());
+        }
+    }
+
+    /**
+     * Like {@link ChurnRoot}, but the request also passes through a
+     * grandchild and a great-grandchild of the destroyed forwarder.
+     */
+    static class DeepChurnRoot extends ChurnRoot {
+
+        @Override
+        Class<? extends ComponentDefinition> childType() {
+            return DeepForwarder.class;
+        }
+    }
+
+    static class Forwarder extends ComponentDefinition {
+
+        Class<? extends ComponentDefinition> responderType() {
+            return Responder.class;
+        }
+
+        {
+            final Negative<TestPort> up = provides(TestPort.class);
+            final Positive<TestPort> down = requires(TestPort.class);
+
+            // destroying the forwarder leaves this channel connected to the responder
+            Component responder = create(responderType(), Init.NONE);
+            connect(down.getPair(), responder.getPositive(TestPort.class));
+
+            Handler<TestRequest> requestHandler = new Handler<TestRequest>() {
+                @Override
+                public void handle(TestRequest event) {
+                    trigger(event, down);
+                }
+            };
+            Handler<TestResponse> responseHandler = new Handler<TestResponse>() {
+                @Override
+                public void handle(TestResponse event) {
+                    trigger(event, up);
+                }
+            };
+            subscribe(requestHandler, up);
+            subscribe(responseHandler, down);
+        }
+    }
+
+    static class DeepForwarder extends Forwarder {
+
+        @Override
+        Class<? extends ComponentDefinition> responderType() {
+            return Forwarder.class;
+        }
+    }
+
+    static class Responder extends ComponentDefinition {
+
+        {
+            final Negative<TestPort> port = provides(TestPort.class);
+
+            Handler<TestRequest> requestHandler = new Handler<TestRequest>() {
+                @Override
+                public void handle(TestRequest event) {
+                    trigger(new TestResponse(event), port);
+                }
+            };
+            subscribe(requestHandler, port);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        RequestPathRegistry.clear();
+    }
+
+    @Test
+    public void idsAreStable() {
+        StubChannel a = new StubChannel();
+        StubChannel b = new StubChannel();
+        long idA = RequestPathRegistry.channelId(a);
+        long idB = RequestPathRegistry.channelId(b);
+        Assert.assertTrue(idA != 0);
+        Assert.assertTrue(idA != idB);
+        Assert.assertEquals(idA, RequestPathRegistry.channelId(a));
+        Assert.assertSame(a, RequestPathRegistry.resolve(idA));
+        Assert.assertSame(b, RequestPathRegistry.resolve(idB));
+    }
+
+    @Test
+    public void unregisteredIdsStayStale() {
+        StubChannel a = new StubChannel();
+        long idA = RequestPathRegistry.channelId(a);
+        RequestPathRegistry.unregister(idA);
+        Assert.assertNull(RequestPathRegistry.resolve(idA));
+        // the slot is reused, but not under the old id
+        StubChannel b = new StubChannel();
+        long idB = RequestPathRegistry.channelId(b);
+        Assert.assertEquals((int) idA, (int) idB);
+        Assert.assertTrue(idA != idB);
+        Assert.assertNull(RequestPathRegistry.resolve(idA));
+        Assert.assertSame(b, RequestPathRegistry.resolve(idB));
+        // a re-registered channel gets a fresh id
+        long idA2 = RequestPathRegistry.channelId(a);
+        Assert.assertTrue(idA != idA2);
+        Assert.assertSame(a, RequestPathRegistry.resolve(idA2));
+    }
+
+    @Test
+    public void clearInvalidatesEverything() {
+        StubChannel a = new StubChannel();
+        long idA = RequestPathRegistry.channelId(a);
+        RequestPathRegistry.clear();
+        Assert.assertNull(RequestPathRegistry.resolve(idA));
+        Assert.assertTrue(idA != RequestPathRegistry.channelId(a));
+    }
+
+    @Test
+    public void responseRetracesPath() throws Exception {
+        StubChannel[] channels = new StubChannel[10];
+        TestRequest request = new TestRequest();
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new StubChannel();
+            request.pushPathElement(channels[i]);
+        }
+        TestResponse response = new TestResponse(request);
+        TestResponse copy = (TestResponse) response.clone();
+        for (int i = channels.length - 1; i >= 0; i--) {
+            Assert.assertSame(channels[i], RequestPathRegistry.resolve(response.popPathId()));
+        }
+        Assert.assertEquals(0, response.popPathId());
+        // the copy has its own path
+        RequestPathElement top = copy.getTopPathElement();
+        Assert.assertTrue(top.isChannel());
+        Assert.assertSame(channels[channels.length - 1], top.getChannel());
+    }
+
+    @Test
+    public void disconnectedHopResolvesToNull() {
+        StubChannel a = new StubChannel();
+        TestRequest request = new TestRequest();
+        request.pushPathElement(a);
+        TestResponse response = new TestResponse(request);
+        RequestPathRegistry.unregister(RequestPathRegistry.channelId(a));
+        Assert.assertNull(RequestPathRegistry.resolve(response.popPathId()));
+    }
+
+    @Test
+    public void destroyedComponentsDontLeak() throws Exception {
+        churn(ChurnRoot.class);
+    }
+
+    @Test
+    public void destroyedSubtreesDontLeak() throws Exception {
+        churn(DeepChurnRoot.class);
+    }
+
+    private void churn(Class<? extends ChurnRoot> root) throws Exception {
+        sizes.clear();
+        Kompics.createAndStart(root, 1);
+        try {
+            Integer first = sizes.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(first);
+            for (int i = 1; i < ROUNDS; i++) {
+                Integer size = sizes.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(size);
+                Assert.assertEquals(first, size);
+            }
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+}
@@ -21,10 +21,13 @@
 package se.sics.kompics;
 
 import java.util.LinkedList;
+import java.util.UUID;
 import java.util.concurrent.Semaphore;
 import org.junit.Assert;
 import org.junit.Test;
 import se.sics.kompics.Fault.ResolveAction;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
 
 /**
  * The
@@ -203,4 +206,23 @@ public class SubscribeTest {
         Assert.assertArrayEquals(expected, list2.toArray());
         Kompics.shutdown();
     }
+
+    /**
+     * Tests FIFO handling of events with dynamic subscriptions, when events
+     * are executed in batches per port.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFifoDynamicSubscriptionsBatched() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.PORT_BATCH_KEY, 8);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        try {
+            testFifoDynamicSubscriptions();
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
 }
@@ -127,4 +127,102 @@ public class ConfigTest {
         long lll = configB.getValue("config.testl", Long.class);
         assertEquals(10l, lll);
     }
+
+    @Test
+    public void copiesAreIsolatedTest() {
+        Config.Impl conf = (Config.Impl) TypesafeConfig.load();
+        Config.Builder builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.testl", 10l);
+        conf.apply(builder.finalise(), ValueMerger.NONE);
+        // copies share the overrides until one side writes
+        Config.Impl copyA = (Config.Impl) conf.copy(false);
+        Config.Impl copyB = (Config.Impl) conf.copy(false);
+        builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.testl", 20l);
+        conf.apply(builder.finalise(), ValueMerger.NONE);
+        builder = copyA.modify(UUID.randomUUID());
+        builder.setValue("config.testl", 30l);
+        copyA.apply(builder.finalise(), ValueMerger.NONE);
+        assertEquals(20l, conf.getValue("config.testl", Long.class).longValue());
+        assertEquals(30l, copyA.getValue("config.testl", Long.class).longValue());
+        assertEquals(10l, copyB.getValue("config.testl", Long.class).longValue());
+    }
+
+    @Test
+    public void deepCopyChainsTest() {
+        Config.Impl[] chain = new Config.Impl[10];
+        chain[0] = (Config.Impl) TypesafeConfig.load();
+        for (int i = 1; i < chain.length; i++) {
+            chain[i] = (Config.Impl) chain[i - 1].copy(false);
+            Config.Builder builder = chain[i].modify(UUID.randomUUID());
+            builder.setValue("config.level" + i, (long) i);
+            builder.setValue("config.testl", (long) i);
+            chain[i].apply(builder.finalise(), ValueMerger.NONE);
+        }
+        assertEquals(5l, chain[0].getValue("config.testl", Long.class).longValue());
+        for (int i = 1; i < chain.length; i++) {
+            assertEquals((long) i, chain[i].getValue("config.testl", Long.class).longValue());
+            for (int j = 1; j < chain.length; j++) {
+                Long level = chain[i].getValue("config.level" + j, Long.class);
+                if (j <= i) {
+                    assertEquals(Long.valueOf(j), level);
+                } else {
+                    assertTrue(level == null);
+                }
+            }
+        }
+    }
+
+    private static final ConfigKey<Long> TESTL = ConfigKey.of("config.testl", Long.class);
+    private static final ConfigKey<Integer> TESTL_INT = ConfigKey.of("config.testl", 1);
+    private static final ConfigKey<Long> TEST_AS_LONG = ConfigKey.of("config.test", 1l);
+    private static final ConfigKey<Long> MISSING = ConfigKey.of("config.missing", Long.class);
+
+    @Test
+    public void configKeyTest() {
+        Config.Impl conf = (Config.Impl) TypesafeConfig.load();
+        assertEquals(Long.valueOf(5), TESTL.get(conf));
+        assertEquals(Integer.valueOf(5), TESTL_INT.get(conf));
+        assertEquals(Long.valueOf(1), TEST_AS_LONG.get(conf)); // falls back to the default
+        assertTrue(MISSING.get(conf) == null);
+        try {
+            Long l = ConfigKey.of("config.test", Long.class).get(conf);
+            fail("Value " + l + " is not actually a long");
+        } catch (ClassCastException ex) {
+            // expected
+        }
+        // updates are visible through keys that were read before
+        Config.Builder builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.testl", "7");
+        builder.setValue("config.missing", 3);
+        conf.apply(builder.finalise(), ValueMerger.NONE);
+        assertEquals(Long.valueOf(7), TESTL.get(conf));
+        assertEquals(Integer.valueOf(7), TESTL_INT.get(conf));
+        assertEquals(Long.valueOf(3), MISSING.get(conf));
+        assertEquals(7l, conf.getValue("config.testl", Long.class).longValue());
+    }
+
+    @Test
+    public void coalesceTest() {
+        Config.Impl conf = (Config.Impl) TypesafeConfig.load();
+        Config.Builder b1 = conf.modify(UUID.randomUUID());
+        b1.setValue("config.testl", 10l);
+        b1.setValue("config.a", "a");
+        ConfigUpdate u1 = b1.finalise();
+        Config.Builder b2 = conf.modify(UUID.randomUUID());
+        b2.setValue("config.testl", 20l);
+        ConfigUpdate u2 = b2.finalise();
+        ConfigUpdate merged = u1.coalesce(u2);
+        assertNotNull(merged);
+        Config.Impl copy = (Config.Impl) conf.copy(false);
+        copy.apply(merged, ValueMerger.NONE);
+        conf.apply(u1, ValueMerger.NONE);
+        conf.apply(u2, ValueMerger.NONE);
+        assertEquals(conf.getValue("config.testl", Long.class), copy.getValue("config.testl", Long.class));
+        assertEquals("a", copy.getValue("config.a", String.class));
+        // appending isn't order insensitive
+        Config.Builder b3 = conf.modify(UUID.randomUUID());
+        b3.setValue("config.testl", 30l, ValueOptions.usingMerger(ValueMerger.APPEND));
+        assertTrue(u2.coalesce(b3.finalise()) == null);
+    }
 }
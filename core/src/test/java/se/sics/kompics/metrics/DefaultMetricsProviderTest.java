@@ -0,0 +1,253 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+import se.sics.kompics.Started;
+import se.sics.kompics.Stop;
+import se.sics.kompics.Stopped;
+
+@RunWith(JUnit4.class)
+public class DefaultMetricsProviderTest {
+
+    private static final int ROUNDS = 1000;
+    private static final Semaphore done = new Semaphore(0);
+    private static final Semaphore destroyed = new Semaphore(0);
+
+    @Test
+    public void histogramPercentiles() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(1000, h.count());
+        long p50 = h.percentile(0.5);
+        Assert.assertTrue("p50 was " + p50, (p50 >= 256) && (p50 < 1024));
+        long p99 = h.percentile(0.99);
+        Assert.assertTrue("p99 was " + p99, (p99 >= 512) && (p99 < 2048));
+        Assert.assertTrue(h.percentile(0.0) <= p50);
+    }
+
+    @Test
+    public void stripedCounter() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals(400000, counter.sum());
+    }
+
+    @Test
+    public void countsEvents() throws Exception {
+        DefaultMetricsProvider metrics = new DefaultMetricsProvider(1);
+        Metrics.setProvider(metrics);
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            Assert.assertTrue(done.tryAcquire(10, TimeUnit.SECONDS));
+            Assert.assertSame(Kompics.getScheduler(), metrics.getScheduler());
+            Assert.assertEquals(3, metrics.getComponents().size());
+            // every ping and pong plus the lifecycle events on the control ports
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((metrics.getEventsHandled() != metrics.getEventsEnqueued()) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(metrics.getEventsEnqueued(), metrics.getEventsHandled());
+            Assert.assertTrue(metrics.getEventsHandled() >= 2 * ROUNDS + 3);
+            Assert.assertEquals(0, metrics.getQueuedEvents());
+            Assert.assertEquals(0, metrics.getFaults());
+            Assert.assertTrue(metrics.getHandlerTime(0.5) > 0);
+        } finally {
+            Kompics.shutdown();
+        }
+        Assert.assertNull(metrics.getScheduler());
+    }
+
+    @Test
+    public void releasesDestroyedSubtrees() throws Exception {
+        DefaultMetricsProvider metrics = new DefaultMetricsProvider(1);
+        Metrics.setProvider(metrics);
+        Kompics.createAndStart(TreeRoot.class, 1);
+        try {
+            Assert.assertTrue(destroyed.tryAcquire(10, TimeUnit.SECONDS));
+            // only the root is left, not the destroyed child's child
+            Assert.assertEquals(1, metrics.getComponents().size());
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    static class Ping implements KompicsEvent {
+
+        final int round;
+
+        Ping(int round) {
+            this.round = round;
+        }
+    }
+
+    static class Pong implements KompicsEvent {
+
+        final int round;
+
+        Pong(int round) {
+            this.round = round;
+        }
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        public Root() {
+            Component pinger = create(Pinger.class, Init.NONE);
+            Component ponger = create(Ponger.class, Init.NONE);
+            connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+        }
+    }
+
+    /**
+     * Creates a child with a child of its own and destroys it again.
+     */
+    public static class TreeRoot extends ComponentDefinition {
+
+        private Component child;
+
+        public TreeRoot() {
+            subscribe(startHandler, control);
+            subscribe(startedHandler, control);
+            subscribe(stoppedHandler, control);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                child = create(Parent.class, Init.NONE);
+                trigger(Start.event, child.control());
+            }
+        };
+        final Handler<Started> startedHandler = new Handler<Started>() {
+
+            @Override
+            public void handle(Started event) {
+                trigger(Stop.event, child.control());
+            }
+        };
+        final Handler<Stopped> stoppedHandler = new Handler<Stopped>() {
+
+            @Override
+            public void handle(Stopped event) {
+                destroy(child);
+                destroyed.release();
+            }
+        };
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        public Parent() {
+            create(Leaf.class, Init.NONE);
+        }
+    }
+
+    public static class Leaf extends ComponentDefinition {
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        final Positive<PingPongPort> port = requires(PingPongPort.class);
+
+        public Pinger() {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, port);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(0), port);
+            }
+        };
+        final Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                if (event.round + 1 < ROUNDS) {
+                    trigger(new Ping(event.round + 1), port);
+                } else {
+                    done.release();
+                }
+            }
+        };
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        final Negative<PingPongPort> port = provides(PingPongPort.class);
+
+        public Ponger() {
+            subscribe(pingHandler, port);
+        }
+
+        final Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(new Pong(event.round), port);
+            }
+        };
+    }
+}
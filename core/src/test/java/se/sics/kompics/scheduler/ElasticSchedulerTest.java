@@ -0,0 +1,101 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Start;
+
+@RunWith(JUnit4.class)
+public class ElasticSchedulerTest {
+
+    private static CountDownLatch unblock;
+    private static CountDownLatch started;
+
+    @Test
+    public void blockedHandlerDoesNotStarveOthers() throws Exception {
+        unblock = new CountDownLatch(1);
+        started = new CountDownLatch(1);
+        ElasticScheduler scheduler = new ElasticScheduler(1, 4, 20, 1000);
+        Kompics.setScheduler(scheduler);
+        Kompics.createAndStart(Root.class, 1);
+        try {
+            // the only base carrier is stuck in Blocker, so the Starter must run on a compensating one
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(scheduler.getPinnedExecutions() >= 1);
+            Assert.assertTrue(scheduler.getCompensations() >= 1);
+            Assert.assertTrue(scheduler.getPinnedCarriers() >= 1);
+        } finally {
+            unblock.countDown();
+            Kompics.shutdown();
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        public Root() {
+            create(Blocker.class, Init.NONE);
+            create(Starter.class, Init.NONE);
+        }
+    }
+
+    public static class Blocker extends ComponentDefinition {
+
+        public Blocker() {
+            subscribe(startHandler, control);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                try {
+                    unblock.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    public static class Starter extends ComponentDefinition {
+
+        public Starter() {
+            subscribe(startHandler, control);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                started.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+@RunWith(JUnit4.class)
+public class WorkStealingSchedulerTest {
+
+    private static final int PAIRS = 16;
+    private static final int ROUNDS = 1000;
+    private static final Semaphore done = new Semaphore(0);
+
+    @Test
+    public void dequeOwnerAndThieves() throws Exception {
+        final int items = 100000;
+        final WorkDeque<Integer> deque = new WorkDeque<>();
+        final AtomicIntegerArray taken = new AtomicIntegerArray(items);
+        final CountDownLatch ownerDone = new CountDownLatch(1);
+        Thread[] thieves = new Thread[3];
+        for (int t = 0; t < thieves.length; t++) {
+            thieves[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (true) {
+                        Integer i = deque.steal();
+                        if (i != null) {
+                            taken.incrementAndGet(i);
+                        } else if (ownerDone.getCount() == 0 && deque.size() == 0) {
+                            return;
+                        }
+                    }
+                }
+            });
+            thieves[t].start();
+        }
+        for (int i = 0; i < items; i++) {
+            deque.push(i);
+            if (i % 3 == 0) {
+                Integer j = deque.pop();
+                if (j != null) {
+                    taken.incrementAndGet(j);
+                }
+            }
+        }
+        Integer j;
+        while ((j = deque.pop()) != null) {
+            taken.incrementAndGet(j);
+        }
+        ownerDone.countDown();
+        for (Thread t : thieves) {
+            t.join();
+        }
+        for (int i = 0; i < items; i++) {
+            Assert.assertEquals("item " + i, 1, taken.get(i));
+        }
+    }
+
+    @Test
+    public void dequeDropsTakenElements() throws Exception {
+        WorkDeque<Object> deque = new WorkDeque<>();
+        List<WeakReference<Object>> refs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Object o = new Object();
+            refs.add(new WeakReference<>(o));
+            deque.push(o);
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(deque.steal());
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(deque.pop());
+        }
+        Object live = new Object();
+        deque.push(live); // sweeps the stolen slots
+        for (int i = 0; i < 10 && !allCleared(refs); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(allCleared(refs));
+        Assert.assertSame(live, deque.pop());
+    }
+
+    private static boolean allCleared(List<WeakReference<Object>> refs) {
+        for (WeakReference<Object> ref : refs) {
+            if (ref.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void pingPong() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(Kompics.SCHEDULER_TYPE_KEY, "workstealing");
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        Kompics.createAndStart(Root.class, 4);
+        try {
+            Assert.assertTrue(Kompics.getScheduler() instanceof WorkStealingScheduler);
+            Assert.assertTrue(done.tryAcquire(PAIRS, 10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+            Kompics.resetConfig();
+        }
+    }
+
+    static class Ping implements KompicsEvent {
+
+        final int round;
+
+        Ping(int round) {
+            this.round = round;
+        }
+    }
+
+    static class Pong implements KompicsEvent {
+
+        final int round;
+
+        Pong(int round) {
+            this.round = round;
+        }
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        public Root() {
+            for (int i = 0; i < PAIRS; i++) {
+                Component pinger = create(Pinger.class, Init.NONE);
+                Component ponger = create(Ponger.class, Init.NONE);
+                connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+            }
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        final Positive<PingPongPort> port = requires(PingPongPort.class);
+
+        public Pinger() {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, port);
+        }
+
+        final Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(0), port);
+            }
+        };
+        final Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                if (event.round + 1 < ROUNDS) {
+                    trigger(new Ping(event.round + 1), port);
+                } else {
+                    done.release();
+                }
+            }
+        };
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        final Negative<PingPongPort> port = provides(PingPongPort.class);
+
+        public Ponger() {
+            subscribe(pingHandler, port);
+        }
+
+        final Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(new Pong(event.round), port);
+            }
+        };
+    }
+}
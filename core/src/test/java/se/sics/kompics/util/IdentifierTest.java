@@ -0,0 +1,80 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Kompics;
+
+@RunWith(JUnit4.class)
+public class IdentifierTest {
+
+    @Test
+    public void sequentialIdsTest() {
+        SequentialIdentifierFactory factory = new SequentialIdentifierFactory(42);
+        Identifier last = null;
+        for (int i = 0; i < 1000; i++) {
+            Identifier id = factory.newId();
+            UUID uuid = UUIDIdentifier.toUUID(id);
+            Assert.assertEquals(42, uuid.getMostSignificantBits());
+            if (last != null) {
+                Assert.assertTrue(last.compareTo(id) < 0);
+            }
+            last = id;
+        }
+        Assert.assertEquals(1000, UUIDIdentifier.toUUID(last).getLeastSignificantBits());
+        // the UUID view round-trips to an equal identifier
+        Assert.assertEquals(last, new UUIDIdentifier(UUIDIdentifier.toUUID(last)));
+    }
+
+    @Test
+    public void distinctFactoriesTest() {
+        Set<Identifier> ids = new HashSet<>();
+        IdentifierFactory a = new SequentialIdentifierFactory();
+        IdentifierFactory b = new SequentialIdentifierFactory();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(ids.add(a.newId()));
+            Assert.assertTrue(ids.add(b.newId()));
+        }
+    }
+
+    @Test
+    public void pluggableFactoryTest() {
+        Kompics.setIdentifierFactory(UUIDIdentifier.RANDOM);
+        try {
+            Identifier id = Kompics.getIdentifierFactory().newId();
+            Assert.assertEquals(4, UUIDIdentifier.toUUID(id).version());
+        } finally {
+            Kompics.resetIdentifierFactory();
+        }
+        Assert.assertTrue(Kompics.getIdentifierFactory() instanceof SequentialIdentifierFactory);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignIdsHaveNoUUIDTest() {
+        UUIDIdentifier.toUUID(new ByteIdentifier((byte) 1));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the event types of named handler classes at compile time.
+ * <p>
+ * For every concrete class that extends <code>se.sics.kompics.Handler</code>
+ * or <code>se.sics.kompics.MatchedHandler</code> a class implementing
+ * <code>se.sics.kompics.GeneratedHandlerTypes</code> is generated next to
+ * it, so that subscribing such a handler doesn't need to reflect on its
+ * methods. Put this module on the annotation processor path of a project to
+ * enable it.
+ * <p>
+ * Anonymous and local handler classes are invisible to annotation
+ * processors. Their types are still reflected, once per class, at runtime.
+ */
+public class HandlerTypesProcessor extends AbstractProcessor {
+
+    static final String HANDLER = "se.sics.kompics.Handler";
+    static final String MATCHED_HANDLER = "se.sics.kompics.MatchedHandler";
+    static final String GENERATED_TYPES = "se.sics.kompics.GeneratedHandlerTypes";
+    static final String SUFFIX = "$$HandlerTypes";
+
+    private Elements elements;
+    private Types types;
+    private TypeElement handler;
+    private TypeElement matchedHandler;
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        handler = elements.getTypeElement(HANDLER);
+        matchedHandler = elements.getTypeElement(MATCHED_HANDLER);
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if ((handler == null) || (matchedHandler == null)) {
+            return false; // not compiling against Kompics
+        }
+        for (Element e : roundEnv.getRootElements()) {
+            scan(e);
+        }
+        return false; // never claim anything, other processors may need "*" too
+    }
+
+    private void scan(Element e) {
+        if (!e.getKind().isClass()) {
+            return;
+        }
+        TypeElement type = (TypeElement) e;
+        if (!type.getModifiers().contains(Modifier.ABSTRACT)) {
+            List<TypeMirror> params = handleParameters(type);
+            if (params != null) {
+                generate(type, params);
+            }
+        }
+        for (Element enclosed : type.getEnclosedElements()) {
+            scan(enclosed);
+        }
+    }
+
+    /**
+     * @return the erased parameter types of <code>handle</code>, or null if
+     * the type isn't a handler or they can't be referenced from generated
+     * code
+     */
+    private List<TypeMirror> handleParameters(TypeElement type) {
+        DeclaredType handlerType = findSupertype(type.asType(), handler);
+        List<TypeMirror> args = new ArrayList<TypeMirror>();
+        if (handlerType != null) {
+            args.add(handlerType.getTypeArguments().get(0));
+        } else {
+            DeclaredType matchedType = findSupertype(type.asType(), matchedHandler);
+            if (matchedType == null) {
+                return null;
+            }
+            // handle(V content, E context) of MatchedHandler<P, V, E>
+            args.add(matchedType.getTypeArguments().get(1));
+            args.add(matchedType.getTypeArguments().get(2));
+        }
+        PackageElement pkg = elements.getPackageOf(type);
+        List<TypeMirror> params = new ArrayList<TypeMirror>(args.size());
+        for (TypeMirror arg : args) {
+            TypeMirror erased = types.erasure(arg);
+            if ((erased.getKind() != TypeKind.DECLARED)
+                    || !isAccessible(((DeclaredType) erased).asElement(), pkg)) {
+                return null;
+            }
+            params.add(erased);
+        }
+        return params;
+    }
+
+    private DeclaredType findSupertype(TypeMirror type, TypeElement target) {
+        ArrayDeque<TypeMirror> queue = new ArrayDeque<TypeMirror>();
+        queue.add(type);
+        while (!queue.isEmpty()) {
+            TypeMirror t = queue.poll();
+            if ((t.getKind() == TypeKind.DECLARED)
+                    && ((DeclaredType) t).asElement().equals(target)) {
+                DeclaredType dt = (DeclaredType) t;
+                // raw subclasses leave nothing to generate
+                return dt.getTypeArguments().isEmpty() ? null : dt;
+            }
+            queue.addAll(types.directSupertypes(t));
+        }
+        return null;
+    }
+
+    private boolean isAccessible(Element e, PackageElement from) {
+        boolean samePackage = elements.getPackageOf(e).equals(from);
+        for (Element cur = e; cur.getKind() != ElementKind.PACKAGE; cur = cur.getEnclosingElement()) {
+            Set<Modifier> mods = cur.getModifiers();
+            if (mods.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!mods.contains(Modifier.PUBLIC) && !samePackage) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type, List<TypeMirror> params) {
+        PackageElement pkg = elements.getPackageOf(type);
+        String binaryName = elements.getBinaryName(type).toString();
+        String qualifiedName = binaryName + SUFFIX;
+        if (!generated.add(qualifiedName)) {
+            return;
+        }
+        String simpleName = pkg.isUnnamed() ? qualifiedName
+                : qualifiedName.substring(pkg.getQualifiedName().length() + 1);
+        try {
+            Writer w = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+            try {
+                if (!pkg.isUnnamed()) {
+                    w.write("package " + pkg.getQualifiedName() + ";\n\n");
+                }
+                w.write("/**\n * Event types of {@link " + type.getQualifiedName() + "}.\n"
+                        + " * Generated by " + getClass().getName() + ", do not edit.\n */\n");
+                w.write("public final class " + simpleName + " implements " + GENERATED_TYPES + " {\n\n");
+                w.write("    @Override\n");
+                w.write("    public Class<?>[] parameterTypes() {\n");
+                w.write("        return new Class<?>[]{");
+                for (int i = 0; i < params.size(); i++) {
+                    if (i > 0) {
+                        w.write(", ");
+                    }
+                    TypeElement param = (TypeElement) ((DeclaredType) params.get(i)).asElement();
+                    w.write(param.getQualifiedName() + ".class");
+                }
+                w.write("};\n");
+                w.write("    }\n");
+                w.write("}\n");
+            } finally {
+                w.close();
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Could not generate handler types, they will be reflected at runtime: " + ex, type);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.GeneratedHandlerTypes;
+
+@RunWith(JUnit4.class)
+public class HandlerTypesProcessorTest {
+
+    private static final String SOURCE = ""
+            + "package test;\n"
+            + "import se.sics.kompics.*;\n"
+            + "public class Handlers {\n"
+            + "    public static class Ping implements KompicsEvent {}\n"
+            + "    public static class Msg implements KompicsEvent, PatternExtractor<Class<Object>, String> {\n"
+            + "        public Class<Object> extractPattern() { return null; }\n"
+            + "        public String extractValue() { return null; }\n"
+            + "    }\n"
+            + "    static class PingHandler extends Handler<Ping> {\n"
+            + "        public void handle(Ping event) {}\n"
+            + "    }\n"
+            + "    static class Generic<E extends Ping> extends Handler<E> {\n"
+            + "        public void handle(E event) {}\n"
+            + "    }\n"
+            + "    static class MsgHandler extends ClassMatchedHandler<String, Msg> {\n"
+            + "        public void handle(String content, Msg context) {}\n"
+            + "    }\n"
+            + "    private static class Hidden implements KompicsEvent {}\n"
+            + "    static class HiddenHandler extends Handler<Hidden> {\n"
+            + "        public void handle(Hidden event) {}\n"
+            + "    }\n"
+            + "    static abstract class Base extends Handler<Ping> {}\n"
+            + "    Handler<Ping> anonymous = new Handler<Ping>() {\n"
+            + "        public void handle(Ping event) {}\n"
+            + "    };\n"
+            + "}\n";
+
+    private File dir;
+    private ClassLoader loader;
+
+    @Before
+    public void compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler); // running on a JRE
+        dir = Files.createTempDirectory("handler-processor").toFile();
+        File src = new File(dir, "Handlers.java");
+        Writer w = Files.newBufferedWriter(src.toPath(), Charset.forName("UTF-8"));
+        try {
+            w.write(SOURCE);
+        } finally {
+            w.close();
+        }
+        File core = new File(toPath(GeneratedHandlerTypes.class.getProtectionDomain().getCodeSource().getLocation()));
+        StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fm, null,
+                Arrays.asList("-d", dir.getPath(), "-s", dir.getPath(), "-cp", core.getPath()),
+                null, fm.getJavaFileObjects(src));
+        task.setProcessors(Collections.singletonList(new HandlerTypesProcessor()));
+        Assert.assertTrue(task.call());
+        fm.close();
+        loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void generatesHandlerTypes() throws Exception {
+        Assert.assertArrayEquals(new Class<?>[]{load("test.Handlers$Ping")},
+                types("test.Handlers$PingHandler"));
+        // erased to the bound
+        Assert.assertArrayEquals(new Class<?>[]{load("test.Handlers$Ping")},
+                types("test.Handlers$Generic"));
+        Assert.assertArrayEquals(new Class<?>[]{String.class, load("test.Handlers$Msg")},
+                types("test.Handlers$MsgHandler"));
+    }
+
+    @Test
+    public void skipsWhatItCannotReference() throws Exception {
+        Assert.assertFalse(generated("test.Handlers$HiddenHandler"));
+        Assert.assertFalse(generated("test.Handlers$Base"));
+        Assert.assertFalse(generated("test.Handlers$1"));
+    }
+
+    private Class<?>[] types(String handler) throws Exception {
+        Class<?> c = load(handler + HandlerTypesProcessor.SUFFIX);
+        return ((GeneratedHandlerTypes) c.newInstance()).parameterTypes();
+    }
+
+    private boolean generated(String handler) {
+        return new File(dir, handler.replace('.', File.separatorChar) + HandlerTypesProcessor.SUFFIX + ".java").exists();
+    }
+
+    private Class<?> load(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, loader);
+    }
+
+    private static String toPath(URL url) {
+        try {
+            return url.toURI().getPath();
+        } catch (Exception ex) {
+            return url.getPath();
+        }
+    }
+}